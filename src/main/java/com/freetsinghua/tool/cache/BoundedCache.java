@@ -0,0 +1,952 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.anotation.NotNull;
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.common.CommonConstant;
+import com.freetsinghua.tool.task.ListenableFuture;
+import com.freetsinghua.tool.task.ListenableFutureCallback;
+import com.freetsinghua.tool.task.SettableListenableFuture;
+import com.freetsinghua.tool.task.TaskExecutor;
+import com.freetsinghua.tool.util.Assert;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 有界缓存，使用W-TinyLFU淘汰策略
+ *
+ * <li>新条目先进入占总容量1%的LRU窗口区，窗口溢出的条目作为候选者进入主区
+ * <li>主区是分段LRU：试用段和占主区80%的保护段，试用段中被再次访问的条目晋升到保护段
+ * <li>主区满时，由{@link FrequencySketch}比较候选者和试用段中最久未访问条目的访问频率，频率低者被淘汰
+ * <li>因容量被淘汰的条目通过{@link EvictEventListener}通知，写入后过期的条目通过{@link ExpireEventListener}通知，
+ *     监听器在共享的事件线程中异步调用，不会阻塞写入线程或时间轮
+ * <li>读操作不加锁，访问记录在竞争时会被丢弃，只影响命中率估计而不影响正确性
+ * <li>设置了写入后刷新时，超过刷新间隔的条目被读取时仍返回旧值，同时在后台重新加载，加载完成后原子地替换旧值
+ * <li>开启统计后，命中率、加载耗时、淘汰和过期数量可以通过{@link #stats()}或者JMX读取
+ *
+ * @author z.tsinghua
+ * @date 2019/2/19
+ */
+@Slf4j
+public class BoundedCache<K, V> implements Cache<K, V> {
+    private static final double PERCENT_MAIN = 0.99d;
+    private static final double PERCENT_MAIN_PROTECTED = 0.80d;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch<K> sketch;
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maximum;
+    private final boolean weighted;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expireAfterWriteNanos;
+    private final long refreshAfterWriteNanos;
+    @Nullable private final CacheLoader<K, V> cacheLoader;
+    private final TaskExecutor refreshExecutor;
+    private final ConcurrentHashMap<K, ListenableFuture<V>> refreshes = new ConcurrentHashMap<>();
+    @Nullable private final EvictEventListener<V> evictEventListener;
+    @Nullable private final ExpireEventListener<V> expireEventListener;
+    private final TimingWheel timingWheel = TimingWheel.getDefault();
+    private final SingleFlight<K, V> loadingFlights = new SingleFlight<>();
+    @Nullable private ConcurrentMap<K, V> mapView;
+    private final StatsCounter statsCounter;
+    @Nullable private final ObjectName objectName;
+
+    /** 以下字段只能在持有{@link #evictionLock}时访问 */
+    private final AccessOrderDeque<K, V> windowDeque = new AccessOrderDeque<>();
+
+    private final AccessOrderDeque<K, V> probationDeque = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> protectedDeque = new AccessOrderDeque<>();
+    private long weightedSize;
+    private long windowWeightedSize;
+    private long protectedWeightedSize;
+
+    private BoundedCache(Builder<K, V> builder) {
+        this.maximum = builder.maximum;
+        this.weigher = builder.weigher;
+        this.windowMaximum = Math.max(1L, this.maximum - (long) (PERCENT_MAIN * this.maximum));
+        this.protectedMaximum =
+                (long) (PERCENT_MAIN_PROTECTED * (this.maximum - this.windowMaximum));
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+        this.cacheLoader = builder.cacheLoader;
+        this.refreshExecutor =
+                builder.refreshExecutor != null
+                        ? builder.refreshExecutor
+                        : DefaultRefreshExecutor.INSTANCE::execute;
+        this.evictEventListener = builder.evictEventListener;
+        this.expireEventListener = builder.expireEventListener;
+        this.data =
+                new ConcurrentHashMap<>(
+                        (int) Math.min(builder.initialCapacity, Integer.MAX_VALUE >>> 1));
+        this.weighted = builder.weighted;
+        // 有权重时maximum是总权重而不是条目数，从初始容量开始，随条目数增长
+        this.sketch =
+                new FrequencySketch<>(
+                        this.weighted
+                                ? Math.min(builder.initialCapacity, this.maximum)
+                                : this.maximum);
+        this.statsCounter =
+                builder.recordStats ? new ConcurrentStatsCounter() : StatsCounter.disabled();
+        this.objectName = builder.jmxEnabled ? CacheStatsMBean.register(builder.jmxName, this) : null;
+    }
+
+    @Override
+    @Nullable
+    public V getIfPresent(K key) {
+        Node<K, V> node = this.data.get(key);
+        if (node == null) {
+            this.statsCounter.recordMisses(1);
+            return null;
+        }
+
+        this.statsCounter.recordHits(1);
+        afterRead(node);
+        if (this.refreshAfterWriteNanos > 0
+                && System.nanoTime() - node.refreshTime >= this.refreshAfterWriteNanos) {
+            refresh(key);
+        }
+        return node.value;
+    }
+
+    /**
+     * 返回{@code key}关联的值，不存在时使用构建时设置的{@link CacheLoader}加载
+     *
+     * @param key 键
+     * @return 结果
+     * @throws CacheLoaderException 如果加载失败
+     */
+    @Nullable
+    public V get(K key) {
+        CacheLoader<K, V> loader = this.cacheLoader;
+        Assert.state(loader != null, "No CacheLoader configured");
+        return get(key, () -> loader.load(key));
+    }
+
+    /**
+     * 在后台重新加载{@code key}，加载期间读操作仍返回旧值
+     *
+     * <li>同一个键同时只会有一次刷新，重复调用返回同一个{@link ListenableFuture}
+     * <li>加载成功后，只有当缓存中仍是发起刷新时的条目才会被替换，避免覆盖期间的写入
+     * <li>加载失败或者返回{@code null}时保留旧值
+     * <li>执行器拒绝时返回的{@link ListenableFuture}以{@link RejectedExecutionException}失败，读操作不会因此阻塞
+     * <li>被拒绝、加载失败或者返回{@code null}时，这个条目要再过一个刷新间隔才会因为读取再次触发刷新
+     *
+     * @param key 键
+     * @return 可以用于观察刷新结果，若键不存在则返回{@code null}
+     */
+    @Nullable
+    public ListenableFuture<V> refresh(K key) {
+        CacheLoader<K, V> loader = this.cacheLoader;
+        Assert.state(loader != null, "No CacheLoader configured");
+
+        ListenableFuture<V> existing = this.refreshes.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        Node<K, V> node = this.data.get(key);
+        if (node == null) {
+            return null;
+        }
+
+        SettableListenableFuture<V> future = new SettableListenableFuture<>();
+        existing = this.refreshes.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        future.addCallback(
+                new ListenableFutureCallback<V>() {
+                    @Override
+                    public void onSuccess(V obj) {
+                        refreshes.remove(key, future);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable thr) {
+                        node.refreshTime = System.nanoTime();
+                        refreshes.remove(key, future);
+                        if (thr instanceof RejectedExecutionException) {
+                            // 执行器饱和时每个过期的键都会被拒绝，不逐个打印堆栈
+                            if (log.isDebugEnabled()) {
+                                log.debug("Refresh of key {} rejected: {}", key, thr.getMessage());
+                            }
+                        } else if (log.isWarnEnabled()) {
+                            log.warn("Failed to refresh value for key {}", key, thr);
+                        }
+                    }
+                });
+
+        try {
+            this.refreshExecutor.execute(
+                    () -> {
+                        long start = System.nanoTime();
+                        V value;
+                        try {
+                            value = loader.reload(key, node.value);
+                        } catch (Throwable thr) {
+                            this.statsCounter.recordLoadFailure(System.nanoTime() - start);
+                            future.setException(thr);
+                            return;
+                        }
+
+                        if (value == null) {
+                            this.statsCounter.recordLoadFailure(System.nanoTime() - start);
+                            node.refreshTime = System.nanoTime();
+                        } else {
+                            this.statsCounter.recordLoadSuccess(System.nanoTime() - start);
+                            replace(node, value);
+                        }
+                        future.set(value);
+                    });
+        } catch (RejectedExecutionException e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    @Override
+    @Nullable
+    public V get(K key, Callable<? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null || loader == null) {
+            return value;
+        }
+
+        return this.loadingFlights.load(
+                key,
+                () -> {
+                    Node<K, V> present = this.data.get(key);
+                    if (present != null) {
+                        return present.value;
+                    }
+
+                    long start = System.nanoTime();
+                    V loaded;
+                    try {
+                        loaded = loader.call();
+                    } catch (Throwable thr) {
+                        this.statsCounter.recordLoadFailure(System.nanoTime() - start);
+                        throw thr;
+                    }
+
+                    if (loaded == null) {
+                        this.statsCounter.recordLoadFailure(System.nanoTime() - start);
+                    } else {
+                        this.statsCounter.recordLoadSuccess(System.nanoTime() - start);
+                        put(key, loaded);
+                    }
+                    return loaded;
+                });
+    }
+
+    @Override
+    public Map<K, V> getAllPresent(Iterable<K> keys) {
+        Map<K, V> map = new HashMap<>();
+
+        keys.forEach(
+                key -> {
+                    V value = getIfPresent(key);
+                    if (value != null) {
+                        map.put(key, value);
+                    }
+                });
+
+        return map;
+    }
+
+    @Override
+    public void put(@NotNull K key, @NotNull V value) {
+        Assert.notNull(key, "key must not be null");
+        Assert.notNull(value, "value must not be null");
+
+        Node<K, V> node = newNode(key, value);
+        Node<K, V> prior = this.data.put(key, node);
+        onWrite(node, prior);
+    }
+
+    /** 只有当键仍然映射到{@code prior}时才写入新值 */
+    private void replace(Node<K, V> prior, V value) {
+        Node<K, V> node = newNode(prior.key, value);
+        if (this.data.replace(prior.key, prior, node)) {
+            onWrite(node, prior);
+        }
+    }
+
+    private Node<K, V> newNode(K key, V value) {
+        int weight = this.weigher.weigh(key, value);
+        Assert.state(weight >= 0, "weight must not be negative");
+        long writeTime = this.refreshAfterWriteNanos > 0 ? System.nanoTime() : 0L;
+        return new Node<>(key, value, weight, writeTime);
+    }
+
+    private void onWrite(Node<K, V> node, @Nullable Node<K, V> prior) {
+        List<Node<K, V>> evicted;
+        this.evictionLock.lock();
+        try {
+            if (prior != null) {
+                retire(prior);
+            }
+            evicted = afterWrite(node);
+        } finally {
+            this.evictionLock.unlock();
+        }
+
+        scheduleExpire(node);
+        notifyEvicted(evicted);
+    }
+
+    /** 批量写入只获取一次淘汰锁；每个条目单独登记过期，被淘汰或删除的条目不会被过期登记继续引用 */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        if (map.isEmpty()) {
+            return;
+        }
+
+        List<Node<K, V>> nodes = new ArrayList<>(map.size());
+        List<Node<K, V>> priors = new ArrayList<>(map.size());
+        map.forEach(
+                (key, value) -> {
+                    Assert.notNull(key, "key must not be null");
+                    Assert.notNull(value, "value must not be null");
+                    Node<K, V> node = newNode(key, value);
+                    nodes.add(node);
+                    priors.add(this.data.put(key, node));
+                });
+
+        List<Node<K, V>> evicted = new ArrayList<>();
+        this.evictionLock.lock();
+        try {
+            for (int i = 0; i < nodes.size(); i++) {
+                Node<K, V> prior = priors.get(i);
+                if (prior != null) {
+                    retire(prior);
+                }
+                evicted.addAll(afterWrite(nodes.get(i)));
+            }
+        } finally {
+            this.evictionLock.unlock();
+        }
+
+        for (Node<K, V> node : nodes) {
+            scheduleExpire(node);
+        }
+        notifyEvicted(evicted);
+    }
+
+    @Override
+    public void invalidate(K key) {
+        Node<K, V> node = this.data.remove(key);
+        if (node != null) {
+            this.evictionLock.lock();
+            try {
+                retire(node);
+            } finally {
+                this.evictionLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll(Iterable<K> keys) {
+        keys.forEach(this::invalidate);
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (K key : this.data.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public long size() {
+        return this.data.size();
+    }
+
+    /** 返回当前的总权重，未设置{@link Weigher}时等于条目数 */
+    public long weightedSize() {
+        this.evictionLock.lock();
+        try {
+            return this.weightedSize;
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return this.statsCounter.snapshot();
+    }
+
+    /** 注销构建时注册的{@link CacheStatsMXBean}，未开启JMX时不做任何处理 */
+    public void unregisterMBean() {
+        if (this.objectName != null) {
+            CacheStatsMBean.unregister(this.objectName);
+        }
+    }
+
+    /** 返回的视图直接作用于缓存，写入和删除同样会更新淘汰策略并登记过期时间 */
+    @Override
+    public ConcurrentMap<K, V> asMap() {
+        ConcurrentMap<K, V> view = this.mapView;
+        if (view == null) {
+            view = new MapView();
+            this.mapView = view;
+        }
+        return view;
+    }
+
+    /** 读操作只尝试加锁，获取不到锁时丢弃这次访问记录 */
+    private void afterRead(Node<K, V> node) {
+        if (this.evictionLock.tryLock()) {
+            try {
+                onAccess(node);
+            } finally {
+                this.evictionLock.unlock();
+            }
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (node.retired || node.queueType == null) {
+            // 已被移除，或者写入尚未被策略记录
+            return;
+        }
+
+        this.sketch.increment(node.key);
+        switch (node.queueType) {
+            case WINDOW:
+                this.windowDeque.moveToBack(node);
+                break;
+            case PROBATION:
+                this.probationDeque.remove(node);
+                node.queueType = QueueType.PROTECTED;
+                this.protectedDeque.addLast(node);
+                this.protectedWeightedSize += node.weight;
+                demoteFromProtected();
+                break;
+            case PROTECTED:
+                this.protectedDeque.moveToBack(node);
+                break;
+            default:
+                throw new IllegalStateException("Unknown queue type: " + node.queueType);
+        }
+    }
+
+    /** 保护段溢出时，将最久未访问的条目降级到试用段 */
+    private void demoteFromProtected() {
+        while (this.protectedWeightedSize > this.protectedMaximum) {
+            Node<K, V> demoted = this.protectedDeque.first();
+            if (demoted == null) {
+                break;
+            }
+            this.protectedDeque.remove(demoted);
+            this.protectedWeightedSize -= demoted.weight;
+            demoted.queueType = QueueType.PROBATION;
+            this.probationDeque.addLast(demoted);
+        }
+    }
+
+    private List<Node<K, V>> afterWrite(Node<K, V> node) {
+        if (node.retired) {
+            // 并发写入时，该节点可能已经被更新的写入替换
+            return Collections.emptyList();
+        }
+
+        if (this.weighted) {
+            this.sketch.ensureCapacity(this.data.size());
+        }
+        this.sketch.increment(node.key);
+        node.queueType = QueueType.WINDOW;
+        this.windowDeque.addLast(node);
+        this.windowWeightedSize += node.weight;
+        this.weightedSize += node.weight;
+
+        return evictEntries();
+    }
+
+    private List<Node<K, V>> evictEntries() {
+        Node<K, V> candidate = evictFromWindow();
+        if (this.weightedSize <= this.maximum) {
+            return Collections.emptyList();
+        }
+        return evictFromMain(candidate);
+    }
+
+    /**
+     * 将窗口区溢出的条目移入试用段末尾
+     *
+     * @return 第一个被移入的候选者，没有则返回{@code null}
+     */
+    @Nullable
+    private Node<K, V> evictFromWindow() {
+        Node<K, V> first = null;
+        while (this.windowWeightedSize > this.windowMaximum) {
+            Node<K, V> node = this.windowDeque.first();
+            if (node == null) {
+                break;
+            }
+
+            this.windowDeque.remove(node);
+            this.windowWeightedSize -= node.weight;
+            node.queueType = QueueType.PROBATION;
+            this.probationDeque.addLast(node);
+            if (first == null) {
+                first = node;
+            }
+        }
+        return first;
+    }
+
+    /** 在候选者和试用段头部的受害者之间比较频率，淘汰频率低者，直到总权重不超过上限 */
+    private List<Node<K, V>> evictFromMain(@Nullable Node<K, V> candidate) {
+        List<Node<K, V>> evicted = new ArrayList<>(2);
+        Node<K, V> victim = this.probationDeque.first();
+
+        while (this.weightedSize > this.maximum) {
+            if (victim == candidate) {
+                // 受害者已经走到候选者区域，剩下的只在候选者之间淘汰
+                victim = null;
+            }
+
+            Node<K, V> target;
+            if (victim == null && candidate == null) {
+                target = this.protectedDeque.first();
+                if (target == null) {
+                    target = this.windowDeque.first();
+                }
+                if (target == null) {
+                    break;
+                }
+            } else if (victim == null) {
+                target = candidate;
+                candidate = candidate.next;
+            } else if (candidate == null) {
+                target = victim;
+                victim = victim.next;
+            } else if (admit(candidate.key, victim.key)) {
+                target = victim;
+                victim = victim.next;
+            } else {
+                target = candidate;
+                candidate = candidate.next;
+            }
+
+            evict(target, evicted);
+        }
+        return evicted;
+    }
+
+    private boolean admit(K candidateKey, K victimKey) {
+        return this.sketch.frequency(candidateKey) > this.sketch.frequency(victimKey);
+    }
+
+    private void evict(Node<K, V> node, List<Node<K, V>> evicted) {
+        retire(node);
+        if (this.data.remove(node.key, node)) {
+            evicted.add(node);
+        }
+    }
+
+    /** 将节点从淘汰策略中移除，必须持有{@link #evictionLock} */
+    private void retire(Node<K, V> node) {
+        if (node.retired) {
+            return;
+        }
+        node.retired = true;
+
+        TimingWheel.Timeout timeout = node.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+
+        if (node.queueType == null) {
+            // 写入尚未被策略记录
+            return;
+        }
+
+        switch (node.queueType) {
+            case WINDOW:
+                this.windowDeque.remove(node);
+                this.windowWeightedSize -= node.weight;
+                break;
+            case PROBATION:
+                this.probationDeque.remove(node);
+                break;
+            case PROTECTED:
+                this.protectedDeque.remove(node);
+                this.protectedWeightedSize -= node.weight;
+                break;
+            default:
+                throw new IllegalStateException("Unknown queue type: " + node.queueType);
+        }
+        this.weightedSize -= node.weight;
+    }
+
+    private void notifyEvicted(List<Node<K, V>> evicted) {
+        if (evicted.isEmpty()) {
+            return;
+        }
+        List<V> values = new ArrayList<>(evicted.size());
+        for (Node<K, V> node : evicted) {
+            this.statsCounter.recordEviction();
+            values.add(node.value);
+        }
+        if (this.evictEventListener != null) {
+            EventDispatcher.dispatch(this.evictEventListener, values);
+        }
+    }
+
+    private void scheduleExpire(Node<K, V> node) {
+        if (this.expireAfterWriteNanos <= 0 || node.retired) {
+            return;
+        }
+        TimingWheel.Timeout timeout =
+                this.timingWheel.newTimeout(
+                        () -> expire(node), this.expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+        node.timeout = timeout;
+        // 登记期间被淘汰或删除时，retire()可能没有看到这次登记
+        if (node.retired) {
+            timeout.cancel();
+        }
+    }
+
+    private void expire(Node<K, V> node) {
+        if (!this.data.remove(node.key, node)) {
+            return;
+        }
+
+        this.evictionLock.lock();
+        try {
+            retire(node);
+        } finally {
+            this.evictionLock.unlock();
+        }
+
+        this.statsCounter.recordExpire();
+        if (this.expireEventListener != null) {
+            EventDispatcher.dispatch(this.expireEventListener, node.value);
+        }
+    }
+
+    private final class MapView extends NodeMapView<K, V, Node<K, V>> {
+        MapView() {
+            super(data);
+        }
+
+        @Override
+        V valueOf(Node<K, V> node) {
+            return node.value;
+        }
+
+        @Override
+        Node<K, V> newNode(K key, V value) {
+            return BoundedCache.this.newNode(key, value);
+        }
+
+        @Override
+        void afterWrite(K key, Node<K, V> node, @Nullable Node<K, V> prior) {
+            onWrite(node, prior);
+        }
+
+        @Override
+        void afterRemove(K key, Node<K, V> prior) {
+            evictionLock.lock();
+            try {
+                retire(prior);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+
+        @Override
+        void afterRead(Node<K, V> node) {
+            BoundedCache.this.afterRead(node);
+        }
+    }
+
+    private enum QueueType {
+        WINDOW,
+        PROBATION,
+        PROTECTED
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final int weight;
+        /** 刷新间隔的起点，即写入时间；刷新失败后推迟到失败的时间，避免每次读取都重新触发 */
+        private volatile long refreshTime;
+        @Nullable private volatile TimingWheel.Timeout timeout;
+        /** 只在持有淘汰锁时修改，登记过期时不加锁读取 */
+        private volatile boolean retired;
+
+        /** 以下字段只能在持有淘汰锁时访问 */
+        @Nullable private QueueType queueType;
+
+        @Nullable private Node<K, V> prev;
+        @Nullable private Node<K, V> next;
+
+        Node(K key, V value, int weight, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.refreshTime = writeTime;
+        }
+    }
+
+    /** 按访问顺序排列的双向链表，头部是最久未访问的条目 */
+    private static final class AccessOrderDeque<K, V> {
+        @Nullable private Node<K, V> head;
+        @Nullable private Node<K, V> tail;
+
+        @Nullable
+        Node<K, V> first() {
+            return this.head;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = this.tail;
+            node.next = null;
+            if (this.tail == null) {
+                this.head = node;
+            } else {
+                this.tail.next = node;
+            }
+            this.tail = node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                this.head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+
+            if (node.next == null) {
+                this.tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != this.tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    public static final class Builder<K, V> {
+        private long maximum = -1L;
+        private boolean weighted;
+        private boolean customWeigher;
+        private Weigher<? super K, ? super V> weigher = (key, value) -> 1;
+        private long initialCapacity = CommonConstant.K;
+        private long expireAfterWriteNanos;
+        private long refreshAfterWriteNanos;
+        @Nullable private CacheLoader<K, V> cacheLoader;
+        @Nullable private TaskExecutor refreshExecutor;
+        @Nullable private EvictEventListener<V> evictEventListener;
+        @Nullable private ExpireEventListener<V> expireEventListener;
+        private boolean recordStats;
+        private boolean jmxEnabled;
+        @Nullable private String jmxName;
+
+        /**
+         * 设置最大条目数，不能和{@link #setMaximumWeight(long)}同时使用
+         *
+         * @param maximumSize 最大条目数
+         */
+        public Builder<K, V> setMaximumSize(long maximumSize) {
+            Assert.state(!this.weighted, "maximumWeight was already set");
+            Assert.isTrue(maximumSize >= 0, "maximumSize must not be negative");
+            this.maximum = maximumSize;
+            return this;
+        }
+
+        /**
+         * 设置最大总权重，需要同时设置{@link #setWeigher(Weigher)}
+         *
+         * @param maximumWeight 最大总权重
+         */
+        public Builder<K, V> setMaximumWeight(long maximumWeight) {
+            Assert.state(this.maximum < 0 || this.weighted, "maximumSize was already set");
+            Assert.isTrue(maximumWeight >= 0, "maximumWeight must not be negative");
+            this.maximum = maximumWeight;
+            this.weighted = true;
+            return this;
+        }
+
+        /**
+         * 设置权重计算方法
+         *
+         * @param weigher 权重计算方法
+         */
+        public Builder<K, V> setWeigher(Weigher<? super K, ? super V> weigher) {
+            Assert.notNull(weigher, "weigher must not be null");
+            this.weigher = weigher;
+            this.customWeigher = true;
+            return this;
+        }
+
+        /**
+         * 设置底层哈希表的初始容量
+         *
+         * @param initialCapacity 初始容量
+         */
+        public Builder<K, V> setInitialCapacity(long initialCapacity) {
+            Assert.isTrue(initialCapacity >= 0, "initialCapacity must not be negative");
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * 设置写入后的过期时间
+         *
+         * @param duration 时长，小于等于0表示永不过期
+         * @param unit 时间单位
+         */
+        public Builder<K, V> setExpireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 设置写入后刷新的间隔，需要同时设置{@link #setCacheLoader(CacheLoader)}
+         *
+         * @param duration 时长，小于等于0表示不刷新
+         * @param unit 时间单位
+         */
+        public Builder<K, V> setRefreshAfterWrite(long duration, TimeUnit unit) {
+            this.refreshAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 设置加载方法，用于{@link BoundedCache#get(Object)}和后台刷新
+         *
+         * @param cacheLoader 加载方法
+         */
+        public Builder<K, V> setCacheLoader(CacheLoader<K, V> cacheLoader) {
+            this.cacheLoader = cacheLoader;
+            return this;
+        }
+
+        /**
+         * 设置执行后台刷新的执行器，默认使用所有缓存共享的刷新线程，队列满时拒绝而不在读取的线程中加载
+         *
+         * @param refreshExecutor 执行器
+         */
+        public Builder<K, V> setRefreshExecutor(TaskExecutor refreshExecutor) {
+            this.refreshExecutor = refreshExecutor;
+            return this;
+        }
+
+        /**
+         * 设置容量淘汰监听器
+         *
+         * @param evictEventListener 监听器
+         */
+        public Builder<K, V> setEvictEventListener(EvictEventListener<V> evictEventListener) {
+            this.evictEventListener = evictEventListener;
+            return this;
+        }
+
+        /**
+         * 设置过期监听器
+         *
+         * @param expireEventListener 监听器
+         */
+        public Builder<K, V> setExpireEventListener(ExpireEventListener<V> expireEventListener) {
+            this.expireEventListener = expireEventListener;
+            return this;
+        }
+
+        /**
+         * 设置是否记录{@link BoundedCache#stats()}，默认不记录
+         *
+         * @param recordStats 是否记录
+         */
+        public Builder<K, V> setRecordStats(boolean recordStats) {
+            this.recordStats = recordStats;
+            return this;
+        }
+
+        /**
+         * 设置是否把统计注册为{@link CacheStatsMXBean}，开启时同时开启统计记录
+         *
+         * @param jmxEnabled 是否注册
+         */
+        public Builder<K, V> setJmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+            return this;
+        }
+
+        /**
+         * 设置注册JMX时使用的名称，默认自动生成
+         *
+         * @param jmxName 名称
+         */
+        public Builder<K, V> setJmxName(String jmxName) {
+            this.jmxName = jmxName;
+            return this;
+        }
+
+        public BoundedCache<K, V> build() {
+            Assert.state(this.maximum >= 0, "maximumSize or maximumWeight must be set");
+            Assert.state(
+                    this.weighted == this.customWeigher,
+                    "maximumWeight requires a weigher, and a weigher requires maximumWeight");
+            Assert.state(
+                    this.refreshAfterWriteNanos <= 0 || this.cacheLoader != null,
+                    "refreshAfterWrite requires a CacheLoader");
+            this.recordStats |= this.jmxEnabled;
+            return new BoundedCache<>(this);
+        }
+    }
+
+    /** 默认的刷新执行器，在第一次使用时创建；队列满时抛出{@link RejectedExecutionException}，不会让读取的线程执行加载 */
+    private static final class DefaultRefreshExecutor {
+        private static final ThreadPoolExecutor INSTANCE = create();
+
+        private static ThreadPoolExecutor create() {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(
+                            threads,
+                            threads,
+                            60L,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(CommonConstant.K),
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat("cache-refresh-%d")
+                                    .setDaemon(true)
+                                    .build());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
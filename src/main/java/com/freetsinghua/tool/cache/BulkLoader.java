@@ -0,0 +1,23 @@
+package com.freetsinghua.tool.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 批量加载缓存值，例如用一次{@code IN}查询代替多次单键查询
+ *
+ * @author z.tsinghua
+ * @date 2019/2/22
+ */
+@FunctionalInterface
+public interface BulkLoader<K, V> {
+
+    /**
+     * 加载{@code keys}对应的值
+     *
+     * @param keys 缓存中缺失的键，不可修改
+     * @return 加载结果，不存在的键可以不包含在结果中，结果中多出的键也会被写入缓存
+     * @throws Exception 加载失败
+     */
+    Map<K, V> loadAll(Set<K> keys) throws Exception;
+}
@@ -3,7 +3,11 @@ package com.freetsinghua.tool.cache;
 import com.freetsinghua.tool.anotation.NotNull;
 import com.freetsinghua.tool.anotation.Nullable;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
 
@@ -22,11 +26,14 @@ public interface Cache<K, V> {
     V getIfPresent(K key);
 
     /**
-     * 返回与此缓存中的{@code key}关联的值，如果需要，从{@code * loader}获取该值。
+     * 返回与此缓存中的{@code key}关联的值，如果需要，从{@code loader}获取该值并写入缓存。
+     *
+     * <p>对同一个键的并发加载会被合并，只有一个线程执行{@code loader}，其他线程等待并共享其结果。
      *
      * @param key 键
-     * @param loader 加载方法
+     * @param loader 加载方法，返回{@code null}时不会写入缓存
      * @return 结果
+     * @throws CacheLoaderException 如果{@code loader}抛出异常
      */
     V get(K key, Callable<? extends V> loader);
 
@@ -38,6 +45,65 @@ public interface Cache<K, V> {
      */
     Map<K, V> getAllPresent(Iterable<K> keys);
 
+    /**
+     * 返回与{@code keys}关联的值的映射，缓存中缺失的键通过一次{@code bulkLoader}调用批量加载，并写入缓存。
+     *
+     * @param keys 键集合
+     * @param bulkLoader 批量加载方法，只有存在缺失的键时才会调用
+     * @return 结果，只包含存在或者加载到值的键，按照{@code keys}的顺序
+     * @throws CacheLoaderException 如果{@code bulkLoader}抛出异常
+     */
+    default Map<K, V> getAll(Iterable<K> keys, BulkLoader<K, V> bulkLoader) {
+        Map<K, V> result = new LinkedHashMap<>();
+        Set<K> order = new LinkedHashSet<>();
+        Set<K> missing = new LinkedHashSet<>();
+        for (K key : keys) {
+            V value = getIfPresent(key);
+            if (value != null) {
+                result.put(key, value);
+            } else {
+                missing.add(key);
+            }
+            order.add(key);
+        }
+
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<K, V> loaded;
+        try {
+            loaded = bulkLoader.loadAll(Collections.unmodifiableSet(missing));
+        } catch (Exception e) {
+            throw new CacheLoaderException("Failed to load values for keys " + missing, e);
+        }
+        if (loaded == null || loaded.isEmpty()) {
+            return result;
+        }
+
+        Map<K, V> present = new LinkedHashMap<>(loaded.size());
+        loaded.forEach(
+                (key, value) -> {
+                    if (key != null && value != null) {
+                        present.put(key, value);
+                    }
+                });
+        putAll(present);
+
+        // 按keys的顺序合并命中和加载的结果
+        Map<K, V> merged = new LinkedHashMap<>(result.size() + present.size());
+        for (K key : order) {
+            V value = result.get(key);
+            if (value == null) {
+                value = present.get(key);
+            }
+            if (value != null) {
+                merged.put(key, value);
+            }
+        }
+        return merged;
+    }
+
     /**
      * 在此缓存中将{@code value}与{@code key}关联。如果缓存先前包含与{@code key}关联的值，则旧值将被替换为{@code value}。
      *
@@ -67,6 +133,18 @@ public interface Cache<K, V> {
     /** 返回此缓存中的近似条目数 */
     long size();
 
-    /** 返回存储在此缓存中的条目视图作为线程安全的映射。对map所做的修改会直接不会影响缓存。 */
+    /**
+     * 返回此缓存的统计快照
+     *
+     * @return 结果，未开启统计的缓存返回{@link CacheStats#empty()}
+     */
+    default CacheStats stats() {
+        return CacheStats.empty();
+    }
+
+    /**
+     * 返回存储在此缓存中的条目视图作为线程安全的映射。视图不拷贝条目，对map所做的修改会直接影响缓存，
+     * 包括{@code compute}、{@code merge}等原子操作；迭代器是弱一致的
+     */
     ConcurrentMap<K, V> asMap();
 }
@@ -0,0 +1,32 @@
+package com.freetsinghua.tool.cache;
+
+/**
+ * 按键加载缓存值，用于自动加载和后台刷新
+ *
+ * @author z.tsinghua
+ * @date 2019/2/21
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+
+    /**
+     * 加载{@code key}对应的值
+     *
+     * @param key 键
+     * @return 值，返回{@code null}表示不存在
+     * @throws Exception 加载失败
+     */
+    V load(K key) throws Exception;
+
+    /**
+     * 重新加载已经缓存的值，默认直接调用{@link #load(Object)}
+     *
+     * @param key 键
+     * @param oldValue 当前缓存的旧值
+     * @return 新值，返回{@code null}时保留旧值
+     * @throws Exception 加载失败，此时保留旧值
+     */
+    default V reload(K key, V oldValue) throws Exception {
+        return load(key);
+    }
+}
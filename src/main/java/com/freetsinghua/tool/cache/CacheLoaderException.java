@@ -0,0 +1,19 @@
+package com.freetsinghua.tool.cache;
+
+/**
+ * 加载缓存值失败时抛出，{@link #getCause()}为加载方法抛出的原始异常
+ *
+ * @author z.tsinghua
+ * @date 2019/2/20
+ */
+public class CacheLoaderException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CacheLoaderException(String message) {
+        super(message);
+    }
+
+    public CacheLoaderException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,427 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.common.CommonConstant;
+import com.freetsinghua.tool.util.Assert;
+import com.freetsinghua.tool.util.ThreadPool;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 把{@link SimpleCache}的条目连同剩余的过期时间保存到本地文件，重启后恢复
+ *
+ * <li>快照遍历缓存时不加锁，读写不受影响；先写入临时文件，刷盘后原子地替换旧快照
+ * <li>恢复时把文件整个读入堆内存后立即关闭，先顺序扫描记录的位置并校验CRC32，再分段并行反序列化写入缓存；
+ *     不使用内存映射，因为映射要等到被回收才释放，期间Windows上无法用新快照替换这个文件
+ * <li>恢复时扣除快照之后经过的时间，已经过期的条目不会恢复；缓存中已有的键不会被覆盖
+ * <li>单个快照文件不能超过2GB
+ *
+ * <p>文件格式，整数均为大端：
+ *
+ * <pre>
+ * int magic, int version, long 快照时刻（毫秒）
+ * 重复：int 键长度, 键, int 值长度, 值, long 剩余过期时间（毫秒，0表示永不过期）
+ * int -1, long 条目数, long 之前所有字节的CRC32
+ * </pre>
+ *
+ * @author z.tsinghua
+ * @date 2019/2/26
+ */
+@Slf4j
+public class CacheSnapshotter<K, V> implements Closeable {
+    private static final int MAGIC = 0x43534e50;
+    private static final int VERSION = 1;
+    private static final int END_OF_ENTRIES = -1;
+    private static final int HEADER_LENGTH = 16;
+    private static final int FOOTER_LENGTH = 20;
+    private static final int BUFFER_SIZE = 64 * CommonConstant.K;
+
+    private final SimpleCache<K, V> cache;
+    private final Path file;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final long intervalMillis;
+    private final int restoreParallelism;
+    private final boolean snapshotOnClose;
+    private final Object snapshotMonitor = new Object();
+    @Nullable private volatile ScheduledFuture<?> scheduledSnapshot;
+
+    private CacheSnapshotter(Builder<K, V> builder) {
+        this.cache = builder.cache;
+        this.file = builder.file;
+        this.keySerializer = builder.keySerializer;
+        this.valueSerializer = builder.valueSerializer;
+        this.intervalMillis = builder.intervalMillis;
+        this.restoreParallelism = builder.restoreParallelism;
+        this.snapshotOnClose = builder.snapshotOnClose;
+    }
+
+    /**
+     * 立即保存一次快照，并发的调用会依次执行
+     *
+     * @return 保存的条目数
+     * @throws IOException 如果写入失败，此时旧快照保持不变
+     */
+    public long snapshot() throws IOException {
+        synchronized (this.snapshotMonitor) {
+            Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+            long count;
+            try (FileChannel channel =
+                    FileChannel.open(
+                            temp,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out =
+                        new DataOutputStream(
+                                new CheckedOutputStream(
+                                        new BufferedOutputStream(
+                                                Channels.newOutputStream(channel), BUFFER_SIZE),
+                                        crc));
+                count = writeSnapshot(out);
+                out.flush();
+                out.writeLong(crc.getValue());
+                out.flush();
+                channel.force(true);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+
+            try {
+                Files.move(
+                        temp,
+                        this.file,
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return count;
+        }
+    }
+
+    private long writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+
+        long[] count = new long[1];
+        try {
+            this.cache.forEachEntry(
+                    (key, value, remainingMillis) -> {
+                        byte[] keyBytes = this.keySerializer.serialize(key);
+                        byte[] valueBytes = this.valueSerializer.serialize(value);
+                        try {
+                            out.writeInt(keyBytes.length);
+                            out.write(keyBytes);
+                            out.writeInt(valueBytes.length);
+                            out.write(valueBytes);
+                            out.writeLong(remainingMillis);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        count[0]++;
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        out.writeInt(END_OF_ENTRIES);
+        out.writeLong(count[0]);
+        return count[0];
+    }
+
+    /**
+     * 从快照文件恢复条目
+     *
+     * @return 恢复的条目数，快照文件不存在时为0
+     * @throws IOException 如果文件损坏、读取失败或者反序列化失败；文件损坏时不会写入任何条目
+     */
+    public long restore() throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + this.file + " is larger than 2GB");
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw corrupted();
+                }
+            }
+            buffer.flip();
+        } catch (NoSuchFileException e) {
+            return 0L;
+        }
+
+        int[] offsets = scan(buffer);
+        if (offsets.length == 0) {
+            return 0L;
+        }
+
+        long elapsed = Math.max(0L, System.currentTimeMillis() - buffer.getLong(8));
+        int parallelism = Math.min(this.restoreParallelism, offsets.length);
+        int batchSize = (offsets.length + parallelism - 1) / parallelism;
+
+        List<Future<Long>> futures = new ArrayList<>(parallelism);
+        for (int from = 0; from < offsets.length; from += batchSize) {
+            int start = from;
+            int end = Math.min(from + batchSize, offsets.length);
+            ByteBuffer batch = buffer.asReadOnlyBuffer();
+            futures.add(
+                    ThreadPool.getInstance().submit(() -> restore(batch, offsets, start, end, elapsed)));
+        }
+
+        long restored = 0L;
+        boolean interrupted = false;
+        for (Future<Long> future : futures) {
+            for (; ; ) {
+                try {
+                    restored += future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to restore snapshot " + this.file, e.getCause());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return restored;
+    }
+
+    /** 校验文件并返回每条记录的起始位置 */
+    private int[] scan(ByteBuffer buffer) throws IOException {
+        int limit = buffer.limit();
+        if (limit < HEADER_LENGTH + FOOTER_LENGTH
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            throw corrupted();
+        }
+
+        int[] offsets = new int[16];
+        int count = 0;
+        int position = HEADER_LENGTH;
+        for (; ; ) {
+            if (position > limit - FOOTER_LENGTH) {
+                throw corrupted();
+            }
+            int keyLength = buffer.getInt(position);
+            if (keyLength == END_OF_ENTRIES) {
+                break;
+            }
+
+            int record = position;
+            position = skip(buffer, position, keyLength);
+            if (position > limit - FOOTER_LENGTH) {
+                throw corrupted();
+            }
+            position = skip(buffer, position, buffer.getInt(position)) + CommonConstant.BYTES_LONG;
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count << 1);
+            }
+            offsets[count++] = record;
+        }
+
+        if (position + FOOTER_LENGTH != limit || buffer.getLong(position + 4) != count) {
+            throw corrupted();
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = buffer.duplicate();
+        checked.position(0).limit(limit - CommonConstant.BYTES_LONG);
+        crc.update(checked);
+        if (crc.getValue() != buffer.getLong(limit - CommonConstant.BYTES_LONG)) {
+            throw corrupted();
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /** 跳过长度为{@code length}的字段，返回其后的位置 */
+    private int skip(ByteBuffer buffer, int position, int length) throws IOException {
+        if (length < 0 || (long) position + 4 + length > buffer.limit()) {
+            throw corrupted();
+        }
+        return position + 4 + length;
+    }
+
+    private long restore(ByteBuffer buffer, int[] offsets, int from, int to, long elapsed) {
+        long restored = 0L;
+        for (int i = from; i < to; i++) {
+            int position = offsets[i];
+            int keyLength = buffer.getInt(position);
+            K key = this.keySerializer.deserialize(slice(buffer, position + 4, keyLength));
+            position += 4 + keyLength;
+            int valueLength = buffer.getInt(position);
+            V value = this.valueSerializer.deserialize(slice(buffer, position + 4, valueLength));
+            position += 4 + valueLength;
+
+            long remainingMillis = buffer.getLong(position);
+            if (remainingMillis > 0L) {
+                remainingMillis -= elapsed;
+                if (remainingMillis <= 0L) {
+                    continue;
+                }
+            }
+            if (this.cache.putIfAbsent(key, value, remainingMillis)) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(position + length).position(position);
+        return slice.slice();
+    }
+
+    private IOException corrupted() {
+        return new IOException("Snapshot " + this.file + " is corrupted");
+    }
+
+    /** 按照构建时设置的间隔定期保存快照，重复调用不会重复调度 */
+    public synchronized void start() {
+        Assert.state(this.intervalMillis > 0, "interval must be set");
+        if (this.scheduledSnapshot != null) {
+            return;
+        }
+        this.scheduledSnapshot =
+                ThreadPool.getInstance()
+                        .scheduleWithFixedDelay(
+                                () -> {
+                                    try {
+                                        snapshot();
+                                    } catch (IOException | RuntimeException e) {
+                                        if (log.isWarnEnabled()) {
+                                            log.warn("Failed to write cache snapshot {}", this.file, e);
+                                        }
+                                    }
+                                },
+                                this.intervalMillis);
+    }
+
+    /** 停止定期快照，若构建时开启了关闭时快照，则再保存一次 */
+    @Override
+    public synchronized void close() throws IOException {
+        ScheduledFuture<?> scheduled = this.scheduledSnapshot;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            this.scheduledSnapshot = null;
+        }
+        if (this.snapshotOnClose) {
+            snapshot();
+        }
+    }
+
+    public static final class Builder<K, V> {
+        @Nullable private SimpleCache<K, V> cache;
+        @Nullable private Path file;
+        @Nullable private Serializer<K> keySerializer;
+        @Nullable private Serializer<V> valueSerializer;
+        private long intervalMillis;
+        private int restoreParallelism = CommonConstant.AVAILABLE_PROCESSORS;
+        private boolean snapshotOnClose;
+
+        /**
+         * 设置要保存和恢复的缓存
+         *
+         * @param cache 缓存
+         */
+        public Builder<K, V> setCache(SimpleCache<K, V> cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * 设置快照文件，同一目录下会创建以{@code .tmp}结尾的临时文件
+         *
+         * @param file 文件路径
+         */
+        public Builder<K, V> setFile(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        public Builder<K, V> setKeySerializer(Serializer<K> keySerializer) {
+            this.keySerializer = keySerializer;
+            return this;
+        }
+
+        public Builder<K, V> setValueSerializer(Serializer<V> valueSerializer) {
+            this.valueSerializer = valueSerializer;
+            return this;
+        }
+
+        /**
+         * 设置{@link CacheSnapshotter#start()}之后定期保存快照的间隔
+         *
+         * @param interval 间隔
+         * @param unit 时间单位
+         */
+        public Builder<K, V> setInterval(long interval, TimeUnit unit) {
+            Assert.isTrue(interval > 0, "interval must be positive");
+            this.intervalMillis = Math.max(1L, unit.toMillis(interval));
+            return this;
+        }
+
+        /**
+         * 设置恢复时并行反序列化的任务数，默认等于处理器数
+         *
+         * @param restoreParallelism 任务数
+         */
+        public Builder<K, V> setRestoreParallelism(int restoreParallelism) {
+            Assert.isTrue(restoreParallelism > 0, "restoreParallelism must be positive");
+            this.restoreParallelism = restoreParallelism;
+            return this;
+        }
+
+        /**
+         * 设置{@link CacheSnapshotter#close()}时是否再保存一次快照
+         *
+         * @param snapshotOnClose 是否保存
+         */
+        public Builder<K, V> setSnapshotOnClose(boolean snapshotOnClose) {
+            this.snapshotOnClose = snapshotOnClose;
+            return this;
+        }
+
+        public CacheSnapshotter<K, V> build() {
+            Assert.state(this.cache != null, "cache must be set");
+            Assert.state(this.file != null, "file must be set");
+            Assert.state(this.keySerializer != null, "keySerializer must be set");
+            Assert.state(this.valueSerializer != null, "valueSerializer must be set");
+            return new CacheSnapshotter<>(this);
+        }
+    }
+}
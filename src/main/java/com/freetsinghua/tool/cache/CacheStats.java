@@ -0,0 +1,153 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.util.LatencyHistogram;
+
+/**
+ * 缓存统计的不可变快照，由{@link Cache#stats()}返回
+ *
+ * <li>命中和未命中只由读操作记录，{@link Cache#get(Object, java.util.concurrent.Callable)}的未命中同时记录一次加载
+ * <li>加载返回{@code null}或者抛出异常都记为加载失败
+ * <li>耗时单位均为纳秒
+ *
+ * @author z.tsinghua
+ * @date 2019/2/25
+ */
+public final class CacheStats {
+    private static final CacheStats EMPTY =
+            new CacheStats(0L, 0L, 0L, 0L, 0L, 0L, 0L, LatencyHistogram.Snapshot.empty());
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long evictionCount;
+    private final long expireCount;
+    private final LatencyHistogram.Snapshot loadLatency;
+
+    public CacheStats(
+            long hitCount,
+            long missCount,
+            long loadSuccessCount,
+            long loadFailureCount,
+            long totalLoadTime,
+            long evictionCount,
+            long expireCount,
+            LatencyHistogram.Snapshot loadLatency) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.expireCount = expireCount;
+        this.loadLatency = loadLatency;
+    }
+
+    /** 返回全部为0的统计，用于未开启统计的缓存 */
+    public static CacheStats empty() {
+        return EMPTY;
+    }
+
+    public long hitCount() {
+        return this.hitCount;
+    }
+
+    public long missCount() {
+        return this.missCount;
+    }
+
+    /** 返回读操作的总次数 */
+    public long requestCount() {
+        return this.hitCount + this.missCount;
+    }
+
+    /** 返回命中率，没有读操作时为1.0 */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return requestCount == 0L ? 1.0d : (double) this.hitCount / requestCount;
+    }
+
+    /** 返回未命中率，没有读操作时为0.0 */
+    public double missRate() {
+        long requestCount = requestCount();
+        return requestCount == 0L ? 0.0d : (double) this.missCount / requestCount;
+    }
+
+    public long loadSuccessCount() {
+        return this.loadSuccessCount;
+    }
+
+    public long loadFailureCount() {
+        return this.loadFailureCount;
+    }
+
+    public long loadCount() {
+        return this.loadSuccessCount + this.loadFailureCount;
+    }
+
+    /** 返回加载的总耗时 */
+    public long totalLoadTime() {
+        return this.totalLoadTime;
+    }
+
+    /** 返回每次加载的平均耗时，没有加载时为0 */
+    public double averageLoadPenalty() {
+        long loadCount = loadCount();
+        return loadCount == 0L ? 0.0d : (double) this.totalLoadTime / loadCount;
+    }
+
+    /** 返回因容量被淘汰的条目数 */
+    public long evictionCount() {
+        return this.evictionCount;
+    }
+
+    /** 返回过期的条目数 */
+    public long expireCount() {
+        return this.expireCount;
+    }
+
+    /** 返回加载耗时的分布 */
+    public LatencyHistogram.Snapshot loadLatency() {
+        return this.loadLatency;
+    }
+
+    /**
+     * 返回两个快照之间的增量，用于计算一段时间内的统计
+     *
+     * @param previous 较早的快照
+     * @return 结果，计数不会小于0
+     */
+    public CacheStats minus(CacheStats previous) {
+        return new CacheStats(
+                Math.max(0L, this.hitCount - previous.hitCount),
+                Math.max(0L, this.missCount - previous.missCount),
+                Math.max(0L, this.loadSuccessCount - previous.loadSuccessCount),
+                Math.max(0L, this.loadFailureCount - previous.loadFailureCount),
+                Math.max(0L, this.totalLoadTime - previous.totalLoadTime),
+                Math.max(0L, this.evictionCount - previous.evictionCount),
+                Math.max(0L, this.expireCount - previous.expireCount),
+                this.loadLatency.minus(previous.loadLatency));
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount="
+                + this.hitCount
+                + ", missCount="
+                + this.missCount
+                + ", loadSuccessCount="
+                + this.loadSuccessCount
+                + ", loadFailureCount="
+                + this.loadFailureCount
+                + ", totalLoadTime="
+                + this.totalLoadTime
+                + ", evictionCount="
+                + this.evictionCount
+                + ", expireCount="
+                + this.expireCount
+                + ", loadLatency="
+                + this.loadLatency
+                + '}';
+    }
+}
@@ -0,0 +1,128 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.LatencyHistogram;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link CacheStatsMXBean}的实现，每次读取属性时从缓存获取最新的统计快照
+ *
+ * @author z.tsinghua
+ * @date 2019/2/25
+ */
+@Slf4j
+final class CacheStatsMBean implements CacheStatsMXBean {
+    private static final String DOMAIN = "com.freetsinghua.tool.cache";
+    private static final AtomicInteger NAME_SEQUENCE = new AtomicInteger();
+
+    private final Cache<?, ?> cache;
+
+    private CacheStatsMBean(Cache<?, ?> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 把缓存的统计注册到平台MBeanServer
+     *
+     * @param name 名称，为{@code null}时自动生成
+     * @param cache 缓存
+     * @return 注册使用的{@link ObjectName}
+     * @throws IllegalStateException 如果名称不合法或者已经被注册
+     */
+    static ObjectName register(@Nullable String name, Cache<?, ?> cache) {
+        String cacheName = name != null ? name : "cache" + NAME_SEQUENCE.incrementAndGet();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName =
+                    new ObjectName(DOMAIN + ":type=Cache,name=" + ObjectName.quote(cacheName));
+            server.registerMBean(new CacheStatsMBean(cache), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register cache MBean " + cacheName, e);
+        }
+    }
+
+    static void unregister(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // 已经被注销
+        } catch (JMException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Failed to unregister cache MBean {}", objectName, e);
+            }
+        }
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return this.cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.cache.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.cache.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return this.cache.stats().hitRate();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return this.cache.stats().loadSuccessCount();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return this.cache.stats().loadFailureCount();
+    }
+
+    @Override
+    public double getAverageLoadPenalty() {
+        return this.cache.stats().averageLoadPenalty();
+    }
+
+    @Override
+    public long getLoadLatency50thPercentile() {
+        return loadLatency().getPercentile(50.0d);
+    }
+
+    @Override
+    public long getLoadLatency99thPercentile() {
+        return loadLatency().getPercentile(99.0d);
+    }
+
+    @Override
+    public long getLoadLatencyMax() {
+        return loadLatency().getMax();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return this.cache.stats().evictionCount();
+    }
+
+    @Override
+    public long getExpireCount() {
+        return this.cache.stats().expireCount();
+    }
+
+    private LatencyHistogram.Snapshot loadLatency() {
+        return this.cache.stats().loadLatency();
+    }
+}
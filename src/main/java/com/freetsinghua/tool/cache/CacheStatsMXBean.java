@@ -0,0 +1,34 @@
+package com.freetsinghua.tool.cache;
+
+/**
+ * 通过JMX暴露的缓存统计，时间单位为纳秒
+ *
+ * @author z.tsinghua
+ * @date 2019/2/25
+ */
+public interface CacheStatsMXBean {
+
+    long getEstimatedSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    double getAverageLoadPenalty();
+
+    long getLoadLatency50thPercentile();
+
+    long getLoadLatency99thPercentile();
+
+    long getLoadLatencyMax();
+
+    long getEvictionCount();
+
+    long getExpireCount();
+}
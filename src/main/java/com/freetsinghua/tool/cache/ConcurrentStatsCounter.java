@@ -0,0 +1,69 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于{@link LongAdder}的{@link StatsCounter}，多线程同时记录时没有竞争
+ *
+ * @author z.tsinghua
+ * @date 2019/2/25
+ */
+public final class ConcurrentStatsCounter implements StatsCounter {
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expireCount = new LongAdder();
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    @Override
+    public void recordHits(int count) {
+        this.hitCount.add(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        this.missCount.add(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        this.loadSuccessCount.increment();
+        this.totalLoadTime.add(loadTime);
+        this.loadLatency.record(loadTime);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        this.loadFailureCount.increment();
+        this.totalLoadTime.add(loadTime);
+        this.loadLatency.record(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        this.evictionCount.increment();
+    }
+
+    @Override
+    public void recordExpire() {
+        this.expireCount.increment();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return new CacheStats(
+                this.hitCount.sum(),
+                this.missCount.sum(),
+                this.loadSuccessCount.sum(),
+                this.loadFailureCount.sum(),
+                this.totalLoadTime.sum(),
+                this.evictionCount.sum(),
+                this.expireCount.sum(),
+                this.loadLatency.snapshot());
+    }
+}
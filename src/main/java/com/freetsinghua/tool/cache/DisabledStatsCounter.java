@@ -0,0 +1,34 @@
+package com.freetsinghua.tool.cache;
+
+/**
+ * 不做任何记录的{@link StatsCounter}
+ *
+ * @author z.tsinghua
+ * @date 2019/2/25
+ */
+enum DisabledStatsCounter implements StatsCounter {
+    INSTANCE;
+
+    @Override
+    public void recordHits(int count) {}
+
+    @Override
+    public void recordMisses(int count) {}
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {}
+
+    @Override
+    public void recordLoadFailure(long loadTime) {}
+
+    @Override
+    public void recordEviction() {}
+
+    @Override
+    public void recordExpire() {}
+
+    @Override
+    public CacheStats snapshot() {
+        return CacheStats.empty();
+    }
+}
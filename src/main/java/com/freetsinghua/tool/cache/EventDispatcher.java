@@ -0,0 +1,57 @@
+package com.freetsinghua.tool.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 在所有缓存共享的一个守护线程中调用{@link EventListener}
+ *
+ * <li>过期在{@link TimingWheel}的tick线程中发生，监听器如果在tick线程中执行，一个慢的监听器会推迟所有缓存的过期和所有基于时间轮的超时
+ * <li>同一个线程按提交顺序调用，事件之间的顺序不变；监听器抛出的异常记录日志后忽略
+ * <li>队列没有上限，监听器长期慢于事件产生的速度时事件会积压
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+@Slf4j
+final class EventDispatcher {
+    private static final ExecutorService EXECUTOR =
+            Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("cache-event-listener-%d")
+                            .setDaemon(true)
+                            .build());
+
+    private EventDispatcher() {}
+
+    static <V> void dispatch(EventListener<V> listener, V value) {
+        EXECUTOR.execute(() -> invoke(listener, value));
+    }
+
+    static <V> void dispatch(EventListener<V> listener, List<V> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        EXECUTOR.execute(
+                () -> {
+                    for (V value : values) {
+                        invoke(listener, value);
+                    }
+                });
+    }
+
+    private static <V> void invoke(EventListener<V> listener, V value) {
+        try {
+            listener.onEvent(value);
+        } catch (Throwable t) {
+            if (log.isWarnEnabled()) {
+                log.warn("Cache event listener {} failed", listener, t);
+            }
+        }
+    }
+}
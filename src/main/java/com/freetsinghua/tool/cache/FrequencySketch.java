@@ -0,0 +1,112 @@
+package com.freetsinghua.tool.cache;
+
+/**
+ * 4位计数的Count-Min Sketch，用于估算键的访问频率
+ *
+ * <li>每个long保存16个4位计数器，每个键映射到4个计数器，取最小值作为频率
+ * <li>累计增加次数达到采样数后，所有计数器减半，使历史热点逐渐老化
+ * <li>表的大小按条目数计算，可以通过{@link #ensureCapacity(long)}随条目数增长，扩容时丢弃已有的计数
+ * <li>非线程安全，调用方需要自行加锁
+ *
+ * @author z.tsinghua
+ * @date 2019/2/19
+ */
+final class FrequencySketch<E> {
+    private static final long[] SEED = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAXIMUM_CAPACITY = Integer.MAX_VALUE >>> 1;
+
+    private int sampleSize;
+    private int tableMask;
+    private long[] table;
+    private int size;
+
+    /** @param expectedSize 缓存预计容纳的条目数 */
+    FrequencySketch(long expectedSize) {
+        ensureCapacity(expectedSize);
+    }
+
+    /**
+     * 保证表的大小足以容纳{@code expectedSize}个条目，需要扩容时重新分配表并清空计数
+     *
+     * @param expectedSize 预计的条目数
+     */
+    void ensureCapacity(long expectedSize) {
+        int maximum = (int) Math.min(Math.max(expectedSize, 1L), MAXIMUM_CAPACITY);
+        if (this.table != null && this.table.length >= maximum) {
+            return;
+        }
+
+        int capacity = Math.max(ceilingPowerOfTwo(maximum), 8);
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = (int) Math.min(10L * maximum, Integer.MAX_VALUE);
+        this.size = 0;
+    }
+
+    /** 返回{@code e}的估算频率，最大为15 */
+    int frequency(E e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /** 增加{@code e}的频率，达到采样数后整体老化 */
+    void increment(E e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && (++this.size == this.sampleSize)) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((this.table[i] & mask) != mask) {
+            this.table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < this.table.length; i++) {
+            count += Long.bitCount(this.table[i] & ONE_MASK);
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.size = (this.size >>> 1) - (count >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & this.tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
@@ -0,0 +1,39 @@
+package com.freetsinghua.tool.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的{@link InvalidationTransport}，在发送线程上同步地把消息交给所有监听器
+ *
+ * <p>多个{@link NearCache}共享同一个实例即可模拟多节点部署，用于测试或者单进程内的多个缓存
+ *
+ * @author z.tsinghua
+ * @date 2019/2/27
+ */
+public class InProcessInvalidationTransport implements InvalidationTransport {
+    private final List<Consumer<InvalidationMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void send(InvalidationMessage message) {
+        for (Consumer<InvalidationMessage> listener : this.listeners) {
+            listener.accept(message);
+        }
+    }
+
+    @Override
+    public void addListener(Consumer<InvalidationMessage> listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Consumer<InvalidationMessage> listener) {
+        this.listeners.remove(listener);
+    }
+
+    @Override
+    public void close() {
+        this.listeners.clear();
+    }
+}
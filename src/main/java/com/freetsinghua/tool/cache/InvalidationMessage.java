@@ -0,0 +1,131 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.util.Assert;
+import com.freetsinghua.tool.util.StandardCharsets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一批缓存失效消息，由{@link NearCache}通过{@link InvalidationTransport}发送
+ *
+ * @author z.tsinghua
+ * @date 2019/2/27
+ */
+public final class InvalidationMessage {
+    private static final int MAGIC = 0x4e43494d;
+    private static final int VERSION = 1;
+
+    private final String sourceId;
+    private final String cacheName;
+    private final boolean invalidateAll;
+    private final List<byte[]> keys;
+
+    /**
+     * @param sourceId 发送方的标识，用于忽略自己发出的消息
+     * @param cacheName 缓存名称，只有同名的缓存会处理
+     * @param invalidateAll 是否清空整个缓存，为{@code true}时忽略{@code keys}
+     * @param keys 序列化后的键
+     */
+    public InvalidationMessage(
+            String sourceId, String cacheName, boolean invalidateAll, List<byte[]> keys) {
+        Assert.notNull(sourceId, "sourceId must not be null");
+        Assert.notNull(cacheName, "cacheName must not be null");
+        Assert.notNull(keys, "keys must not be null");
+        this.sourceId = sourceId;
+        this.cacheName = cacheName;
+        this.invalidateAll = invalidateAll;
+        this.keys = Collections.unmodifiableList(keys);
+    }
+
+    public String getSourceId() {
+        return this.sourceId;
+    }
+
+    public String getCacheName() {
+        return this.cacheName;
+    }
+
+    public boolean isInvalidateAll() {
+        return this.invalidateAll;
+    }
+
+    public List<byte[]> getKeys() {
+        return this.keys;
+    }
+
+    /** 编码为二进制，用于跨进程的传输 */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + this.keys.size() * 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, this.sourceId);
+            writeString(out, this.cacheName);
+            out.writeBoolean(this.invalidateAll);
+            out.writeInt(this.keys.size());
+            for (byte[] key : this.keys) {
+                out.writeInt(key.length);
+                out.write(key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 从{@link #encode()}的结果解码
+     *
+     * @param buffer 缓冲区的剩余部分是一条完整的消息
+     * @return 结果
+     * @throws IllegalArgumentException 如果不是合法的消息
+     */
+    public static InvalidationMessage decode(ByteBuffer buffer) {
+        try {
+            Assert.isTrue(
+                    buffer.getInt() == MAGIC && buffer.getInt() == VERSION,
+                    "Not an invalidation message");
+            String sourceId = readString(buffer);
+            String cacheName = readString(buffer);
+            boolean invalidateAll = buffer.get() != 0;
+            int count = buffer.getInt();
+            Assert.isTrue(
+                    count >= 0 && count <= buffer.remaining() / 4, "Malformed invalidation message");
+
+            List<byte[]> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(readBytes(buffer));
+            }
+            return new InvalidationMessage(sourceId, cacheName, invalidateAll, keys);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated invalidation message", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        Assert.isTrue(
+                length >= 0 && length <= buffer.remaining(), "Malformed invalidation message");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
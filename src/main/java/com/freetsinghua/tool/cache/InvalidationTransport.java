@@ -0,0 +1,31 @@
+package com.freetsinghua.tool.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * 在多个进程的{@link NearCache}之间传递{@link InvalidationMessage}
+ *
+ * <li>传输可以是不可靠的，丢失的消息由近端缓存的过期时间兜底
+ * <li>实现必须是线程安全的，监听器可能在任意线程被回调，不能长时间阻塞
+ *
+ * @author z.tsinghua
+ * @date 2019/2/27
+ */
+public interface InvalidationTransport extends Closeable {
+
+    /**
+     * 把消息发送给所有节点，发送方自己是否收到由实现决定
+     *
+     * @param message 消息
+     * @throws IOException 如果发送失败
+     */
+    void send(InvalidationMessage message) throws IOException;
+
+    /** 注册消息监听器 */
+    void addListener(Consumer<InvalidationMessage> listener);
+
+    /** 移除消息监听器 */
+    void removeListener(Consumer<InvalidationMessage> listener);
+}
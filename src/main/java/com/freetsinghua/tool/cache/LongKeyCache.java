@@ -0,0 +1,495 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.anotation.NotNull;
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.common.CommonConstant;
+import com.freetsinghua.tool.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+/**
+ * 以{@code long}为键的缓存，读写都不装箱
+ *
+ * <li>按键的哈希分段，每段是一个线性探测的开放寻址表，键、值和过期时刻分别保存在{@code long[]}、
+ *     {@code Object[]}和{@code long[]}中，每个条目除了值本身没有额外的对象
+ * <li>读操作使用{@link StampedLock}的乐观读，没有写入竞争时不加锁；写操作只锁住所在的段
+ * <li>过期语义和{@link SimpleCache}一致：过期的条目立即不可读，由{@link TimingWheel}驱动的清理任务
+ *     每秒移除一次并通知{@link EventListener}
+ * <li>每段记录最早的过期时刻，没有条目到期的段不加锁、不扫描；到期的段分片扫描，
+ *     每次持有写锁最多检查{@value #SWEEP_SLICE}个槽位
+ *
+ * @author z.tsinghua
+ * @date 2019/2/28
+ */
+public class LongKeyCache<V> {
+    /** 已删除的槽位，探测时需要跳过 */
+    private static final Object TOMBSTONE = new Object();
+
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+    private static final long SWEEP_INTERVAL_MILLIS = 1000L;
+    private static final int SWEEP_SLICE = 1024;
+
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+    private final TimingWheel timingWheel = TimingWheel.getDefault();
+    private final AtomicBoolean sweepScheduled = new AtomicBoolean();
+    private final SingleFlight<Long, V> loadingFlights = new SingleFlight<>();
+    @Nullable private final EventListener<V> mEventListener;
+    private final long expireTime;
+
+    public LongKeyCache() {
+        this(null, 0L);
+    }
+
+    public LongKeyCache(EventListener<V> mEventListener) {
+        this(mEventListener, 0L);
+    }
+
+    /**
+     * @param mEventListener 过期监听器，可以为{@code null}
+     * @param expireTime 默认过期时间，单位毫秒，小于等于0表示永不过期
+     */
+    public LongKeyCache(@Nullable EventListener<V> mEventListener, long expireTime) {
+        this.mEventListener = mEventListener;
+        this.expireTime = expireTime;
+
+        int segmentCount =
+                Integer.highestOneBit(Math.max(CommonConstant.AVAILABLE_PROCESSORS * 4 - 1, 1)) << 1;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Segment<V>[] segments = (Segment<V>[]) new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>();
+        }
+        this.segments = segments;
+        this.segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(segmentCount);
+    }
+
+    /**
+     * 返回和{@code key}关联的值
+     *
+     * @param key 键
+     * @return 结果，不存在或者已经过期时返回{@code null}
+     */
+    @Nullable
+    public V get(long key) {
+        long hash = mix(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    public V getOrDefault(long key, V def) {
+        V value = get(key);
+        return value == null ? def : value;
+    }
+
+    /**
+     * 返回和{@code key}关联的值，不存在时使用{@code loader}加载并写入缓存，并发的加载会被合并
+     *
+     * @param key 键
+     * @param loader 加载方法，返回{@code null}时不会写入缓存
+     * @return 结果
+     * @throws CacheLoaderException 如果{@code loader}抛出异常
+     */
+    @Nullable
+    public V get(long key, LongFunction<? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        return this.loadingFlights.load(
+                key,
+                () -> {
+                    // 可能在等待期间已经被其他线程写入
+                    V present = get(key);
+                    if (present != null) {
+                        return present;
+                    }
+
+                    V loaded = loader.apply(key);
+                    if (loaded != null) {
+                        put(key, loaded);
+                    }
+                    return loaded;
+                });
+    }
+
+    public void put(long key, @NotNull V value) {
+        put(key, value, this.expireTime);
+    }
+
+    /**
+     * 放入缓存，并在{@code expireTime}毫秒之后过期
+     *
+     * @param key 键
+     * @param value 值
+     * @param expireTime 过期时间，单位毫秒，小于等于0表示永不过期
+     */
+    public void put(long key, @NotNull V value, long expireTime) {
+        Assert.notNull(value, "value must not be null");
+
+        long deadline = 0L;
+        if (expireTime > 0) {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(expireTime);
+            // 0保留给永不过期
+            deadline = deadline == 0L ? 1L : deadline;
+        }
+
+        long hash = mix(key);
+        segmentFor(hash).put(key, hash, value, deadline);
+        if (deadline != 0L) {
+            scheduleSweep();
+        }
+    }
+
+    /** 丢弃键{@code key}的缓存值 */
+    public void invalidate(long key) {
+        long hash = mix(key);
+        segmentFor(hash).remove(key, hash);
+    }
+
+    /** 清空缓存 */
+    public void invalidateAll() {
+        for (Segment<V> segment : this.segments) {
+            segment.clear();
+        }
+    }
+
+    /** 返回近似的条目数，包括已过期但尚未清理的条目 */
+    public long size() {
+        long size = 0L;
+        for (Segment<V> segment : this.segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return this.segments[(int) (hash >>> this.segmentShift)];
+    }
+
+    private void scheduleSweep() {
+        if (this.sweepScheduled.compareAndSet(false, true)) {
+            this.timingWheel.newTimeout(this::sweep, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** 移除所有过期条目，仍有会过期的条目时再次调度 */
+    private void sweep() {
+        long now = System.nanoTime();
+        List<V> expired = new ArrayList<>();
+        boolean pending = false;
+        for (Segment<V> segment : this.segments) {
+            if (segment.isDue(now)) {
+                // 分片扫描完整个表，每片之间释放写锁
+                while (!segment.removeExpired(now, expired)) {
+                    // 继续下一片
+                }
+            }
+            pending |= segment.expiring > 0;
+        }
+
+        this.sweepScheduled.set(false);
+        if (pending) {
+            scheduleSweep();
+        }
+
+        if (this.mEventListener != null) {
+            EventDispatcher.dispatch(this.mEventListener, expired);
+        }
+    }
+
+    /** 64位哈希混合，高位用于选择段，低位用于段内寻址 */
+    private static long mix(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        h ^= h >>> 32;
+        h *= 0xbf58476d1ce4e5b9L;
+        return h ^ (h >>> 29);
+    }
+
+    /** 键、值和过期时刻，作为一个整体替换，使乐观读总能看到长度一致的数组 */
+    private static final class Table {
+        private final long[] keys;
+        private final Object[] values;
+        private final long[] deadlines;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.deadlines = new long[capacity];
+        }
+    }
+
+    private static final class Segment<V> {
+        private final StampedLock lock = new StampedLock();
+        private volatile Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+
+        /** 以下字段只能在持有写锁时修改 */
+        private volatile int size;
+
+        /** 已使用的槽位数，包括删除标记 */
+        private int used;
+
+        /** 会过期的条目数 */
+        private volatile int expiring;
+
+        /** 会过期的条目中最早的过期时刻的下界，只在{@link #expiring}大于0时有效 */
+        private volatile long earliestDeadline;
+
+        /** 分片扫描的位置，以及本轮扫描中见到的最早过期时刻 */
+        private int sweepCursor;
+
+        private long cycleEarliest;
+        private boolean cycleHasDeadline;
+
+        /** 是否可能有条目已经过期，不加锁 */
+        boolean isDue(long now) {
+            return this.expiring > 0 && this.earliestDeadline - now <= 0L;
+        }
+
+        @Nullable
+        V get(long key, long hash) {
+            long stamp = this.lock.tryOptimisticRead();
+            if (stamp != 0L) {
+                Object value = find(this.table, key, hash);
+                if (this.lock.validate(stamp)) {
+                    return unwrap(value);
+                }
+            }
+
+            stamp = this.lock.readLock();
+            try {
+                return unwrap(find(this.table, key, hash));
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+
+        /** 返回值或者{@code null}，过期的条目返回{@code null} */
+        @Nullable
+        private static Object find(Table table, long key, long hash) {
+            long[] keys = table.keys;
+            Object[] values = table.values;
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            for (int probes = 0; probes < keys.length; probes++) {
+                Object value = values[index];
+                if (value == null) {
+                    return null;
+                }
+                if (value != TOMBSTONE && keys[index] == key) {
+                    long deadline = table.deadlines[index];
+                    if (deadline != 0L && deadline - System.nanoTime() <= 0L) {
+                        return null;
+                    }
+                    return value;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Nullable
+        private V unwrap(@Nullable Object value) {
+            return (V) value;
+        }
+
+        void put(long key, long hash, V value, long deadline) {
+            long stamp = this.lock.writeLock();
+            try {
+                Table table = this.table;
+                int index = indexOf(table, key, hash);
+                if (index >= 0) {
+                    if (table.deadlines[index] != 0L) {
+                        this.expiring--;
+                    }
+                    table.values[index] = value;
+                    table.deadlines[index] = deadline;
+                    if (deadline != 0L) {
+                        recordDeadline(deadline);
+                        this.expiring++;
+                    }
+                    return;
+                }
+
+                if (this.used + 1 > (table.keys.length >>> 2) * 3) {
+                    table = rehash(table);
+                }
+                insert(table, key, hash, value, deadline);
+                this.size++;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        void remove(long key, long hash) {
+            long stamp = this.lock.writeLock();
+            try {
+                Table table = this.table;
+                int index = indexOf(table, key, hash);
+                if (index >= 0) {
+                    removeAt(table, index);
+                }
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = this.lock.writeLock();
+            try {
+                this.table = new Table(INITIAL_SEGMENT_CAPACITY);
+                this.size = 0;
+                this.used = 0;
+                this.expiring = 0;
+                this.sweepCursor = 0;
+                this.cycleHasDeadline = false;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * 从上次的位置开始，在一片槽位中移除过期的条目；扫描完整个表时用本轮见到的最早过期时刻更新{@link #earliestDeadline}
+         *
+         * @param now 当前时刻
+         * @param expired 接收被移除的值
+         * @return 是否已经扫描到表的末尾
+         */
+        @SuppressWarnings("unchecked")
+        boolean removeExpired(long now, List<V> expired) {
+            long stamp = this.lock.writeLock();
+            try {
+                Table table = this.table;
+                int end = Math.min(this.sweepCursor + SWEEP_SLICE, table.values.length);
+                for (int i = this.sweepCursor; i < end; i++) {
+                    Object value = table.values[i];
+                    long deadline = table.deadlines[i];
+                    if (value == null || value == TOMBSTONE || deadline == 0L) {
+                        continue;
+                    }
+                    if (deadline - now <= 0L) {
+                        expired.add((V) value);
+                        removeAt(table, i);
+                    } else {
+                        trackCycleDeadline(deadline);
+                    }
+                }
+
+                if (end < table.values.length) {
+                    this.sweepCursor = end;
+                    return false;
+                }
+                if (this.cycleHasDeadline) {
+                    this.earliestDeadline = this.cycleEarliest;
+                }
+                this.sweepCursor = 0;
+                this.cycleHasDeadline = false;
+                return true;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        /** 写入会过期的条目时调用，必须在增加{@link #expiring}之前、持有写锁时调用 */
+        private void recordDeadline(long deadline) {
+            if (this.expiring == 0 || deadline - this.earliestDeadline < 0L) {
+                this.earliestDeadline = deadline;
+            }
+            // 写入位置可能在扫描位置之前，本轮扫描看不到它
+            trackCycleDeadline(deadline);
+        }
+
+        private void trackCycleDeadline(long deadline) {
+            if (!this.cycleHasDeadline || deadline - this.cycleEarliest < 0L) {
+                this.cycleEarliest = deadline;
+                this.cycleHasDeadline = true;
+            }
+        }
+
+        /** 返回键所在的槽位，不存在时返回-1，必须持有写锁 */
+        private static int indexOf(Table table, long key, long hash) {
+            long[] keys = table.keys;
+            Object[] values = table.values;
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            for (int probes = 0; probes < keys.length; probes++) {
+                Object value = values[index];
+                if (value == null) {
+                    return -1;
+                }
+                if (value != TOMBSTONE && keys[index] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        /** 插入一个不存在的键，优先复用删除标记，必须持有写锁 */
+        private void insert(Table table, long key, long hash, Object value, long deadline) {
+            int mask = table.keys.length - 1;
+            int index = (int) hash & mask;
+            while (table.values[index] != null && table.values[index] != TOMBSTONE) {
+                index = (index + 1) & mask;
+            }
+            if (table.values[index] == null) {
+                this.used++;
+            }
+            table.keys[index] = key;
+            table.deadlines[index] = deadline;
+            table.values[index] = value;
+            if (deadline != 0L) {
+                recordDeadline(deadline);
+                this.expiring++;
+            }
+        }
+
+        private void removeAt(Table table, int index) {
+            if (table.deadlines[index] != 0L) {
+                this.expiring--;
+            }
+            table.values[index] = TOMBSTONE;
+            table.deadlines[index] = 0L;
+            this.size--;
+        }
+
+        /** 删除标记较多时原地整理，否则扩容一倍，必须持有写锁 */
+        private Table rehash(Table old) {
+            int capacity = old.keys.length;
+            if (this.size + 1 > (capacity >>> 1)) {
+                capacity <<= 1;
+            }
+
+            Table table = new Table(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < old.values.length; i++) {
+                Object value = old.values[i];
+                if (value == null || value == TOMBSTONE) {
+                    continue;
+                }
+                long key = old.keys[i];
+                int index = (int) mix(key) & mask;
+                while (table.values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                table.keys[index] = key;
+                table.values[index] = value;
+                table.deadlines[index] = old.deadlines[i];
+            }
+
+            this.used = this.size;
+            this.table = table;
+            // 槽位都变了，重新开始一轮扫描；earliestDeadline仍然是有效的下界
+            this.sweepCursor = 0;
+            this.cycleHasDeadline = false;
+            return table;
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.anotation.NotNull;
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.Assert;
+import com.freetsinghua.tool.util.IdUtils;
+import com.freetsinghua.tool.util.ThreadPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 两级缓存：进程内的近端缓存加上被包装的后端缓存，写入时通过{@link InvalidationTransport}通知其他节点丢弃近端副本
+ *
+ * <li>读操作先查近端缓存，未命中时读取后端缓存并填充近端缓存，命中时没有任何远程调用
+ * <li>写入和删除同时作用于后端缓存和近端缓存，并把键放入待发送集合；同一个键在一个批次内只发送一次，
+ *     批次在延迟到期或者达到上限时发送
+ * <li>填充近端缓存前后比较失效代数，读取期间收到失效消息时丢弃刚填充的值，避免旧值覆盖失效
+ * <li>失效消息可能丢失，近端缓存的过期时间是陈旧程度的上限
+ * <li>{@link #stats()}返回近端缓存的统计
+ *
+ * @author z.tsinghua
+ * @date 2019/2/27
+ */
+@Slf4j
+public class NearCache<K, V> implements Cache<K, V>, Closeable {
+    private final String name;
+    private final String sourceId = IdUtils.fastUUID();
+    private final Cache<K, V> local;
+    private final Cache<K, V> backing;
+    private final Serializer<K> keySerializer;
+    private final InvalidationTransport transport;
+    private final Consumer<InvalidationMessage> listener = this::onMessage;
+    private final long batchDelayMillis;
+    private final int maxBatchSize;
+    private final Set<K> pendingKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /** 每次失效或者写入都会增加，用于发现填充近端缓存期间发生的变化 */
+    private final AtomicLong generation = new AtomicLong();
+    @Nullable private ConcurrentMap<K, V> mapView;
+
+    private NearCache(Builder<K, V> builder) {
+        this.name = builder.name;
+        this.backing = builder.backing;
+        this.keySerializer = builder.keySerializer;
+        this.transport = builder.transport;
+        this.batchDelayMillis = builder.batchDelayMillis;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.local =
+                builder.local != null
+                        ? builder.local
+                        : new BoundedCache.Builder<K, V>()
+                                .setMaximumSize(builder.localMaximumSize)
+                                .setExpireAfterWrite(builder.maxStalenessNanos, TimeUnit.NANOSECONDS)
+                                .setRecordStats(true)
+                                .build();
+        this.transport.addListener(this.listener);
+    }
+
+    @Override
+    @Nullable
+    public V getIfPresent(K key) {
+        V value = this.local.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+
+        long observed = this.generation.get();
+        value = this.backing.getIfPresent(key);
+        if (value != null) {
+            populate(key, value, observed);
+        }
+        return value;
+    }
+
+    @Override
+    @Nullable
+    public V get(K key, Callable<? extends V> loader) {
+        V value = this.local.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+
+        long observed = this.generation.get();
+        value = this.backing.get(key, loader);
+        if (value != null) {
+            populate(key, value, observed);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<K, V> getAllPresent(Iterable<K> keys) {
+        Map<K, V> result = new HashMap<>(this.local.getAllPresent(keys));
+        Set<K> missing = new LinkedHashSet<>();
+        for (K key : keys) {
+            if (!result.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        long observed = this.generation.get();
+        Map<K, V> loaded = this.backing.getAllPresent(missing);
+        if (!loaded.isEmpty()) {
+            this.local.putAll(loaded);
+            if (this.generation.get() != observed) {
+                this.local.invalidateAll(loaded.keySet());
+            }
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    /** 把从后端读到的值放入近端缓存，期间发生过失效或者写入时撤销 */
+    private void populate(K key, V value, long observed) {
+        this.local.put(key, value);
+        if (this.generation.get() != observed) {
+            this.local.invalidate(key);
+        }
+    }
+
+    @Override
+    public void put(@NotNull K key, @NotNull V value) {
+        this.backing.put(key, value);
+        this.generation.incrementAndGet();
+        this.local.put(key, value);
+        publish(key);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        if (map.isEmpty()) {
+            return;
+        }
+        this.backing.putAll(map);
+        this.generation.incrementAndGet();
+        this.local.putAll(map);
+        map.keySet().forEach(this::publish);
+    }
+
+    @Override
+    public void invalidate(K key) {
+        this.backing.invalidate(key);
+        invalidateLocal(key);
+    }
+
+    @Override
+    public void invalidateAll(Iterable<K> keys) {
+        this.backing.invalidateAll(keys);
+        keys.forEach(this::invalidateLocal);
+    }
+
+    @Override
+    public void invalidateAll() {
+        this.backing.invalidateAll();
+        this.generation.incrementAndGet();
+        this.local.invalidateAll();
+        this.pendingKeys.clear();
+        send(new InvalidationMessage(this.sourceId, this.name, true, Collections.emptyList()));
+    }
+
+    /** 后端缓存已经修改，丢弃近端副本并通知其他节点 */
+    private void invalidateLocal(K key) {
+        this.generation.incrementAndGet();
+        this.local.invalidate(key);
+        publish(key);
+    }
+
+    /** 返回后端缓存的条目数 */
+    @Override
+    public long size() {
+        return this.backing.size();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return this.local.stats();
+    }
+
+    /** 返回的视图读取时经过近端缓存，修改作用于后端缓存并通知其他节点 */
+    @Override
+    public ConcurrentMap<K, V> asMap() {
+        ConcurrentMap<K, V> view = this.mapView;
+        if (view == null) {
+            view = new MapView();
+            this.mapView = view;
+        }
+        return view;
+    }
+
+    /** 立即发送所有待发送的失效消息 */
+    public void flush() {
+        if (this.pendingKeys.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> keys = new ArrayList<>(Math.min(this.pendingKeys.size(), this.maxBatchSize));
+        for (Iterator<K> iterator = this.pendingKeys.iterator(); iterator.hasNext(); ) {
+            K key = iterator.next();
+            iterator.remove();
+            keys.add(this.keySerializer.serialize(key));
+            if (keys.size() == this.maxBatchSize) {
+                send(new InvalidationMessage(this.sourceId, this.name, false, keys));
+                keys = new ArrayList<>(this.maxBatchSize);
+            }
+        }
+        if (!keys.isEmpty()) {
+            send(new InvalidationMessage(this.sourceId, this.name, false, keys));
+        }
+    }
+
+    /** 发送剩余的失效消息并停止接收，不会关闭{@link InvalidationTransport} */
+    @Override
+    public void close() {
+        this.transport.removeListener(this.listener);
+        flush();
+    }
+
+    private void publish(K key) {
+        this.pendingKeys.add(key);
+        if (this.pendingKeys.size() >= this.maxBatchSize) {
+            flush();
+        } else if (this.flushScheduled.compareAndSet(false, true)) {
+            ThreadPool.getInstance().schedule(this::scheduledFlush, this.batchDelayMillis);
+        }
+    }
+
+    private void scheduledFlush() {
+        // 先复位再发送，发送期间加入的键会触发下一次调度
+        this.flushScheduled.set(false);
+        flush();
+    }
+
+    private void send(InvalidationMessage message) {
+        try {
+            this.transport.send(message);
+        } catch (IOException | RuntimeException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Failed to publish invalidations of cache {}", this.name, e);
+            }
+        }
+    }
+
+    private void onMessage(InvalidationMessage message) {
+        if (this.sourceId.equals(message.getSourceId())
+                || !this.name.equals(message.getCacheName())) {
+            return;
+        }
+
+        this.generation.incrementAndGet();
+        if (message.isInvalidateAll()) {
+            this.local.invalidateAll();
+            return;
+        }
+        for (byte[] key : message.getKeys()) {
+            this.local.invalidate(
+                    this.keySerializer.deserialize(ByteBuffer.wrap(key).asReadOnlyBuffer()));
+        }
+    }
+
+    private final class MapView extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+        private final ConcurrentMap<K, V> delegate = backing.asMap();
+        @Nullable private Set<Map.Entry<K, V>> entrySet;
+
+        @Override
+        public int size() {
+            return this.delegate.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.delegate.containsKey(key);
+        }
+
+        @Override
+        @Nullable
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            return key == null ? null : getIfPresent((K) key);
+        }
+
+        @Override
+        @Nullable
+        public V put(K key, V value) {
+            V prior = this.delegate.put(key, value);
+            invalidateLocal(key);
+            return prior;
+        }
+
+        @Override
+        @Nullable
+        public V putIfAbsent(K key, V value) {
+            V prior = this.delegate.putIfAbsent(key, value);
+            if (prior == null) {
+                invalidateLocal(key);
+            }
+            return prior;
+        }
+
+        @Override
+        @Nullable
+        public V replace(K key, V value) {
+            V prior = this.delegate.replace(key, value);
+            if (prior != null) {
+                invalidateLocal(key);
+            }
+            return prior;
+        }
+
+        @Override
+        public boolean replace(K key, V oldValue, V newValue) {
+            if (this.delegate.replace(key, oldValue, newValue)) {
+                invalidateLocal(key);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        @Nullable
+        @SuppressWarnings("unchecked")
+        public V remove(Object key) {
+            V prior = this.delegate.remove(key);
+            if (prior != null) {
+                invalidateLocal((K) key);
+            }
+            return prior;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object key, Object value) {
+            if (this.delegate.remove(key, value)) {
+                invalidateLocal((K) key);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void clear() {
+            invalidateAll();
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            Set<Map.Entry<K, V>> es = this.entrySet;
+            if (es == null) {
+                es = new EntrySetView();
+                this.entrySet = es;
+            }
+            return es;
+        }
+
+        /** 条目不可修改，迭代器的删除会通知其他节点 */
+        private final class EntrySetView extends AbstractSet<Map.Entry<K, V>> {
+            @Override
+            public int size() {
+                return delegate.size();
+            }
+
+            @Override
+            public void clear() {
+                invalidateAll();
+            }
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                Iterator<Map.Entry<K, V>> iterator = delegate.entrySet().iterator();
+                return new Iterator<Map.Entry<K, V>>() {
+                    @Nullable private K lastKey;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        Map.Entry<K, V> entry = iterator.next();
+                        this.lastKey = entry.getKey();
+                        return new SimpleImmutableEntry<>(entry);
+                    }
+
+                    @Override
+                    public void remove() {
+                        Assert.state(this.lastKey != null, "next() has not been called");
+                        NearCache.this.invalidate(this.lastKey);
+                        this.lastKey = null;
+                    }
+                };
+            }
+        }
+    }
+
+    public static final class Builder<K, V> {
+        private String name = "default";
+        @Nullable private Cache<K, V> local;
+        @Nullable private Cache<K, V> backing;
+        @Nullable private Serializer<K> keySerializer;
+        @Nullable private InvalidationTransport transport;
+        private long localMaximumSize = 10_000L;
+        private long maxStalenessNanos = TimeUnit.MINUTES.toNanos(1L);
+        private long batchDelayMillis = 10L;
+        private int maxBatchSize = 512;
+
+        /**
+         * 设置缓存名称，同一个传输上只有同名的缓存之间互相失效
+         *
+         * @param name 名称
+         */
+        public Builder<K, V> setName(String name) {
+            Assert.hasText(name, "name must not be empty");
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * 设置被包装的后端缓存
+         *
+         * @param backing 后端缓存
+         */
+        public Builder<K, V> setBackingCache(Cache<K, V> backing) {
+            this.backing = backing;
+            return this;
+        }
+
+        /**
+         * 设置近端缓存，应当设置过期时间以限制失效消息丢失时的陈旧程度；
+         * 不设置时使用{@link BoundedCache}，容量和过期时间分别由{@link #setLocalMaximumSize(long)}
+         * 和{@link #setMaxStaleness(long, TimeUnit)}决定
+         *
+         * @param local 近端缓存
+         */
+        public Builder<K, V> setLocalCache(Cache<K, V> local) {
+            this.local = local;
+            return this;
+        }
+
+        /**
+         * 设置默认近端缓存的最大条目数，默认10000
+         *
+         * @param localMaximumSize 最大条目数
+         */
+        public Builder<K, V> setLocalMaximumSize(long localMaximumSize) {
+            Assert.isTrue(localMaximumSize >= 0, "localMaximumSize must not be negative");
+            this.localMaximumSize = localMaximumSize;
+            return this;
+        }
+
+        /**
+         * 设置默认近端缓存的写入后过期时间，默认1分钟
+         *
+         * @param duration 时长
+         * @param unit 时间单位
+         */
+        public Builder<K, V> setMaxStaleness(long duration, TimeUnit unit) {
+            Assert.isTrue(duration > 0, "maxStaleness must be positive");
+            this.maxStalenessNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 设置键的序列化方法，用于在失效消息中传递键
+         *
+         * @param keySerializer 序列化方法
+         */
+        public Builder<K, V> setKeySerializer(Serializer<K> keySerializer) {
+            this.keySerializer = keySerializer;
+            return this;
+        }
+
+        /**
+         * 设置失效消息的传输方式，可以被多个缓存共享
+         *
+         * @param transport 传输方式
+         */
+        public Builder<K, V> setTransport(InvalidationTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * 设置失效消息的合并延迟，默认10毫秒
+         *
+         * @param delay 延迟
+         * @param unit 时间单位
+         */
+        public Builder<K, V> setBatchDelay(long delay, TimeUnit unit) {
+            Assert.isTrue(delay >= 0, "batchDelay must not be negative");
+            this.batchDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * 设置一条失效消息包含的最大键数，待发送的键达到此数目时立即发送，默认512
+         *
+         * @param maxBatchSize 最大键数
+         */
+        public Builder<K, V> setMaxBatchSize(int maxBatchSize) {
+            Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public NearCache<K, V> build() {
+            Assert.state(this.backing != null, "backingCache must be set");
+            Assert.state(this.keySerializer != null, "keySerializer must be set");
+            Assert.state(this.transport != null, "transport must be set");
+            return new NearCache<>(this);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.Assert;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 缓存的{@link ConcurrentMap}视图，直接作用于缓存底层的节点表，不做任何拷贝
+ *
+ * <li>读写都直接转发到底层的{@link ConcurrentHashMap}，迭代器是弱一致的
+ * <li>每次写入或删除都会回调{@link #afterWrite(Object, Object, Object)}和{@link #afterRemove(Object, Object)}，
+ *     由缓存完成过期登记和淘汰记录
+ * <li>{@code compute}、{@code merge}等方法基于底层表的原子操作实现
+ *
+ * @param <N> 缓存内部的节点类型
+ * @author z.tsinghua
+ * @date 2019/2/23
+ */
+abstract class NodeMapView<K, V, N> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+    private final ConcurrentHashMap<K, N> data;
+    @Nullable private Set<Map.Entry<K, V>> entrySet;
+
+    NodeMapView(ConcurrentHashMap<K, N> data) {
+        this.data = data;
+    }
+
+    /** 返回节点中的值，不记录访问 */
+    abstract V valueOf(N node);
+
+    /** 为写入创建新节点 */
+    abstract N newNode(K key, V value);
+
+    /** 节点{@code node}已经写入，{@code prior}为被替换的节点 */
+    abstract void afterWrite(K key, N node, @Nullable N prior);
+
+    /** 节点{@code prior}已经被删除 */
+    abstract void afterRemove(K key, N prior);
+
+    /** 读取命中时调用，默认不做任何处理 */
+    void afterRead(N node) {}
+
+    @Override
+    public int size() {
+        return this.data.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.data.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.data.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        Assert.notNull(value, "value must not be null");
+        for (N node : this.data.values()) {
+            if (value.equals(valueOf(node))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @Nullable
+    public V get(Object key) {
+        N node = this.data.get(key);
+        if (node == null) {
+            return null;
+        }
+        afterRead(node);
+        return valueOf(node);
+    }
+
+    @Override
+    @Nullable
+    public V put(K key, V value) {
+        Assert.notNull(key, "key must not be null");
+        Assert.notNull(value, "value must not be null");
+
+        N node = newNode(key, value);
+        N prior = this.data.put(key, node);
+        afterWrite(key, node, prior);
+        return prior == null ? null : valueOf(prior);
+    }
+
+    @Override
+    @Nullable
+    public V putIfAbsent(K key, V value) {
+        Assert.notNull(key, "key must not be null");
+        Assert.notNull(value, "value must not be null");
+
+        N node = newNode(key, value);
+        N prior = this.data.putIfAbsent(key, node);
+        if (prior == null) {
+            afterWrite(key, node, null);
+            return null;
+        }
+        return valueOf(prior);
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        N prior = this.data.remove(key);
+        if (prior == null) {
+            return null;
+        }
+        afterRemove((K) key, prior);
+        return valueOf(prior);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object key, Object value) {
+        if (key == null || value == null) {
+            return false;
+        }
+
+        for (; ; ) {
+            N node = this.data.get(key);
+            if (node == null || !value.equals(valueOf(node))) {
+                return false;
+            }
+            if (this.data.remove(key, node)) {
+                afterRemove((K) key, node);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public V replace(K key, V value) {
+        Assert.notNull(value, "value must not be null");
+
+        for (; ; ) {
+            N prior = this.data.get(key);
+            if (prior == null) {
+                return null;
+            }
+            N node = newNode(key, value);
+            if (this.data.replace(key, prior, node)) {
+                afterWrite(key, node, prior);
+                return valueOf(prior);
+            }
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Assert.notNull(oldValue, "oldValue must not be null");
+        Assert.notNull(newValue, "newValue must not be null");
+
+        for (; ; ) {
+            N prior = this.data.get(key);
+            if (prior == null || !oldValue.equals(valueOf(prior))) {
+                return false;
+            }
+            N node = newNode(key, newValue);
+            if (this.data.replace(key, prior, node)) {
+                afterWrite(key, node, prior);
+                return true;
+            }
+        }
+    }
+
+    /** 函数返回同一个值对象时视为未修改，不会重新登记过期 */
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V compute(
+            K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Assert.notNull(remappingFunction, "remappingFunction must not be null");
+
+        Object[] prior = new Object[1];
+        N result =
+                this.data.compute(
+                        key,
+                        (k, node) -> {
+                            prior[0] = node;
+                            V oldValue = node == null ? null : valueOf(node);
+                            V newValue = remappingFunction.apply(k, oldValue);
+                            if (newValue == null) {
+                                return null;
+                            }
+                            return newValue == oldValue ? node : newNode(k, newValue);
+                        });
+
+        N priorNode = (N) prior[0];
+        if (result != priorNode) {
+            if (result == null) {
+                afterRemove(key, priorNode);
+            } else {
+                afterWrite(key, result, priorNode);
+            }
+        }
+        return result == null ? null : valueOf(result);
+    }
+
+    @Override
+    @Nullable
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Assert.notNull(mappingFunction, "mappingFunction must not be null");
+
+        N node = this.data.get(key);
+        if (node != null) {
+            afterRead(node);
+            return valueOf(node);
+        }
+        return compute(key, (k, oldValue) -> oldValue != null ? oldValue : mappingFunction.apply(k));
+    }
+
+    @Override
+    @Nullable
+    public V computeIfPresent(
+            K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Assert.notNull(remappingFunction, "remappingFunction must not be null");
+
+        if (!this.data.containsKey(key)) {
+            return null;
+        }
+        return compute(
+                key, (k, oldValue) -> oldValue == null ? null : remappingFunction.apply(k, oldValue));
+    }
+
+    @Override
+    @Nullable
+    public V merge(
+            K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Assert.notNull(value, "value must not be null");
+        Assert.notNull(remappingFunction, "remappingFunction must not be null");
+
+        return compute(
+                key,
+                (k, oldValue) ->
+                        oldValue == null ? value : remappingFunction.apply(oldValue, value));
+    }
+
+    @Override
+    public void clear() {
+        for (K key : this.data.keySet()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = this.entrySet;
+        if (es == null) {
+            es = new EntrySetView();
+            this.entrySet = es;
+        }
+        return es;
+    }
+
+    private final class EntrySetView extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return NodeMapView.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            N node = data.get(entry.getKey());
+            return node != null && valueOf(node).equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return NodeMapView.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            NodeMapView.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator(data.entrySet().iterator());
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Iterator<Map.Entry<K, N>> iterator;
+        @Nullable private K lastKey;
+
+        EntryIterator(Iterator<Map.Entry<K, N>> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Map.Entry<K, N> entry = this.iterator.next();
+            this.lastKey = entry.getKey();
+            return new WriteThroughEntry(entry.getKey(), valueOf(entry.getValue()));
+        }
+
+        @Override
+        public void remove() {
+            Assert.state(this.lastKey != null, "next() has not been called");
+            NodeMapView.this.remove(this.lastKey);
+            this.lastKey = null;
+        }
+    }
+
+    /** {@link #setValue(Object)}会写回缓存 */
+    private final class WriteThroughEntry extends SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        WriteThroughEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,996 @@
+package com.freetsinghua.tool.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.freetsinghua.tool.anotation.NotNull;
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.common.CommonConstant;
+import com.freetsinghua.tool.util.Assert;
+import com.freetsinghua.tool.util.JsonUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 堆外字节数组缓存，值保存在直接内存或者内存映射文件中，堆上只保留索引
+ *
+ * <li>内存按固定大小的页分配，每页切分为同样大小的块，块大小从64字节起按2的幂递增到页大小，值放入能容纳它的最小块
+ * <li>总内存达到上限后，在同一块大小内按CLOCK算法（近似LRU）淘汰；某个块大小还没有页时，从页最多的块大小回收一页
+ * <li>{@link #read(Object, Function)}把值的只读{@link ByteBuffer}视图交给调用方，不拷贝到堆上
+ * <li>读操作持有读锁，写操作持有写锁；在{@link #read(Object, Function)}的回调中不能写入本缓存
+ * <li>过期的条目在时间轮的tick线程中只做标记并放入队列，之后不再能读到，由下一次写操作或者能立即拿到写锁的读操作归还内存
+ * <li>内存映射文件只作为存储空间使用，重启后不会恢复其中的数据
+ * <li>开启统计后可以通过{@link #stats()}或者JMX读取，{@link #close()}时注销JMX
+ *
+ * @author z.tsinghua
+ * @date 2019/2/24
+ */
+@Slf4j
+public class OffHeapCache<K> implements Cache<K, byte[]>, Closeable {
+    /** 最小块为64字节 */
+    private static final int MIN_CHUNK_SHIFT = 6;
+
+    private final ConcurrentHashMap<K, Slot<K>> index;
+    private final StampedLock lock = new StampedLock();
+    private final int pageSize;
+    private final int maxPages;
+    private final long expireAfterWriteNanos;
+    @Nullable private final FileChannel channel;
+    private final TimingWheel timingWheel = TimingWheel.getDefault();
+    private final SingleFlight<K, byte[]> loadingFlights = new SingleFlight<>();
+    private final Queue<Slot<K>> expiredSlots = new ConcurrentLinkedQueue<>();
+    @Nullable private ConcurrentMap<K, byte[]> mapView;
+    private final StatsCounter statsCounter;
+    @Nullable private final ObjectName objectName;
+
+    /** 以下字段只能在持有写锁时访问 */
+    private final SlabClass<K>[] slabClasses;
+
+    private int allocatedPages;
+    private long usedBytes;
+    private boolean closed;
+
+    private OffHeapCache(Builder<K> builder, @Nullable FileChannel channel) {
+        this.pageSize = builder.pageSize;
+        this.maxPages = (int) Math.min(builder.maximumMemory / builder.pageSize, Integer.MAX_VALUE);
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.channel = channel;
+        this.index =
+                new ConcurrentHashMap<>(
+                        (int) Math.min(builder.initialCapacity, Integer.MAX_VALUE >>> 1));
+
+        int classCount = Integer.numberOfTrailingZeros(this.pageSize) - MIN_CHUNK_SHIFT + 1;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        SlabClass<K>[] slabClasses = (SlabClass<K>[]) new SlabClass[classCount];
+        for (int i = 0; i < classCount; i++) {
+            slabClasses[i] = new SlabClass<>(i, 1 << (MIN_CHUNK_SHIFT + i), this.pageSize);
+        }
+        this.slabClasses = slabClasses;
+        this.statsCounter =
+                builder.recordStats ? new ConcurrentStatsCounter() : StatsCounter.disabled();
+        this.objectName = builder.jmxEnabled ? CacheStatsMBean.register(builder.jmxName, this) : null;
+    }
+
+    /**
+     * 在读锁内把值的只读视图交给{@code reader}，视图只在回调期间有效，不能保存
+     *
+     * @param key 键
+     * @param reader 读取方法，不能写入本缓存
+     * @return {@code reader}的结果，键不存在时返回{@code null}
+     */
+    @Nullable
+    public <R> R read(K key, Function<? super ByteBuffer, ? extends R> reader) {
+        return read(key, reader, true);
+    }
+
+    @Nullable
+    private <R> R read(K key, Function<? super ByteBuffer, ? extends R> reader, boolean recordStats) {
+        Assert.notNull(reader, "reader must not be null");
+        tryDrainExpired();
+
+        long stamp = this.lock.readLock();
+        try {
+            Slot<K> slot = this.index.get(key);
+            if (slot == null || slot.expired) {
+                if (recordStats) {
+                    this.statsCounter.recordMisses(1);
+                }
+                return null;
+            }
+            if (recordStats) {
+                this.statsCounter.recordHits(1);
+            }
+            slot.referenced = true;
+            return reader.apply(view(slot));
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    @Nullable
+    public byte[] getIfPresent(K key) {
+        return read(key, OffHeapCache::toBytes);
+    }
+
+    /**
+     * 把值作为json反序列化，字节直接从堆外读取
+     *
+     * @param key 键
+     * @param clazz 要解析的类型
+     * @return 结果，键不存在或者解析失败时为空
+     */
+    public <T> Optional<T> getObject(K key, Class<T> clazz) {
+        return Optional.ofNullable(
+                read(
+                        key,
+                        buffer -> {
+                            try {
+                                return JsonUtils.getObjectMapper()
+                                        .readValue(new ByteBufferBackedInputStream(buffer), clazz);
+                            } catch (IOException e) {
+                                if (log.isWarnEnabled()) {
+                                    log.warn("Failed to read value of key {} as {}", key, clazz, e);
+                                }
+                                return null;
+                            }
+                        }));
+    }
+
+    @Override
+    @Nullable
+    public byte[] get(K key, Callable<? extends byte[]> loader) {
+        byte[] value = getIfPresent(key);
+        if (value != null || loader == null) {
+            return value;
+        }
+
+        return this.loadingFlights.load(
+                key,
+                () -> {
+                    // 可能在等待期间已经被其他线程写入
+                    byte[] present = read(key, OffHeapCache::toBytes, false);
+                    if (present != null) {
+                        return present;
+                    }
+
+                    long start = System.nanoTime();
+                    byte[] loaded;
+                    try {
+                        loaded = loader.call();
+                    } catch (Throwable thr) {
+                        this.statsCounter.recordLoadFailure(System.nanoTime() - start);
+                        throw thr;
+                    }
+
+                    if (loaded == null) {
+                        this.statsCounter.recordLoadFailure(System.nanoTime() - start);
+                    } else {
+                        this.statsCounter.recordLoadSuccess(System.nanoTime() - start);
+                        put(key, loaded);
+                    }
+                    return loaded;
+                });
+    }
+
+    @Override
+    public Map<K, byte[]> getAllPresent(Iterable<K> keys) {
+        Map<K, byte[]> map = new HashMap<>();
+
+        keys.forEach(
+                key -> {
+                    byte[] value = getIfPresent(key);
+                    if (value != null) {
+                        map.put(key, value);
+                    }
+                });
+
+        return map;
+    }
+
+    @Override
+    public void put(@NotNull K key, @NotNull byte[] value) {
+        Assert.notNull(value, "value must not be null");
+        put(key, ByteBuffer.wrap(value));
+    }
+
+    /**
+     * 把{@code value}中剩余的字节写入缓存，不改变{@code value}的位置
+     *
+     * @param key 键
+     * @param value 值，长度不能超过页大小
+     */
+    public void put(@NotNull K key, @NotNull ByteBuffer value) {
+        Assert.notNull(key, "key must not be null");
+        Assert.notNull(value, "value must not be null");
+        checkLength(value.remaining());
+
+        long stamp = this.lock.writeLock();
+        try {
+            checkOpen();
+            drainExpired();
+            Slot<K> prior = this.index.get(key);
+            if (prior != null) {
+                release(prior);
+            }
+            this.index.put(key, store(key, value));
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 把对象序列化为json写入缓存
+     *
+     * @param key 键
+     * @param value 对象
+     * @return 序列化失败时返回{@code false}
+     */
+    public boolean putObject(@NotNull K key, @NotNull Object value) {
+        byte[] bytes;
+        try {
+            bytes = JsonUtils.getObjectMapper().writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Failed to write value of key {} as json", key, e);
+            }
+            return false;
+        }
+
+        put(key, bytes);
+        return true;
+    }
+
+    /** 批量写入只获取一次写锁 */
+    @Override
+    public void putAll(Map<? extends K, ? extends byte[]> map) {
+        if (map.isEmpty()) {
+            return;
+        }
+        map.forEach(
+                (key, value) -> {
+                    Assert.notNull(key, "key must not be null");
+                    Assert.notNull(value, "value must not be null");
+                    checkLength(value.length);
+                });
+
+        long stamp = this.lock.writeLock();
+        try {
+            checkOpen();
+            drainExpired();
+            map.forEach(
+                    (key, value) -> {
+                        Slot<K> prior = this.index.get(key);
+                        if (prior != null) {
+                            release(prior);
+                        }
+                        this.index.put(key, store(key, ByteBuffer.wrap(value)));
+                    });
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void invalidate(K key) {
+        long stamp = this.lock.writeLock();
+        try {
+            drainExpired();
+            Slot<K> prior = this.index.remove(key);
+            if (prior != null) {
+                release(prior);
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void invalidateAll(Iterable<K> keys) {
+        keys.forEach(this::invalidate);
+    }
+
+    @Override
+    public void invalidateAll() {
+        long stamp = this.lock.writeLock();
+        try {
+            drainExpired();
+            for (Slot<K> slot : this.index.values()) {
+                release(slot);
+            }
+            this.index.clear();
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long size() {
+        tryDrainExpired();
+        return this.index.size();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return this.statsCounter.snapshot();
+    }
+
+    /** 返回缓存值占用的字节数，不包括块内未使用的部分 */
+    public long usedBytes() {
+        long stamp = this.lock.readLock();
+        try {
+            return this.usedBytes;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /** 返回已经分配的堆外内存字节数 */
+    public long allocatedBytes() {
+        long stamp = this.lock.readLock();
+        try {
+            return (long) this.allocatedPages * this.pageSize;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 返回的视图直接作用于缓存，值是堆外数据的副本；{@code replace}、{@code remove}等条件操作按字节内容比较
+     */
+    @Override
+    public ConcurrentMap<K, byte[]> asMap() {
+        ConcurrentMap<K, byte[]> view = this.mapView;
+        if (view == null) {
+            view = new MapView();
+            this.mapView = view;
+        }
+        return view;
+    }
+
+    /** 清空缓存并释放所有页，之后的写入会抛出{@link IllegalStateException} */
+    @Override
+    public void close() throws IOException {
+        if (this.objectName != null) {
+            CacheStatsMBean.unregister(this.objectName);
+        }
+
+        long stamp = this.lock.writeLock();
+        try {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            drainExpired();
+            for (Slot<K> slot : this.index.values()) {
+                release(slot);
+            }
+            this.index.clear();
+            for (SlabClass<K> slabClass : this.slabClasses) {
+                slabClass.pages.clear();
+                slabClass.owners.clear();
+                slabClass.freeCount = 0;
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+
+        if (this.channel != null) {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * 在写锁内读取旧值，满足{@code condition}时写入{@code value}，{@code value}为{@code null}时删除
+     *
+     * @return 旧值的副本，不存在时为{@code null}
+     */
+    @Nullable
+    private byte[] update(K key, @Nullable byte[] value, Predicate<byte[]> condition) {
+        Assert.notNull(key, "key must not be null");
+        if (value != null) {
+            checkLength(value.length);
+        }
+
+        long stamp = this.lock.writeLock();
+        try {
+            drainExpired();
+            Slot<K> prior = this.index.get(key);
+            byte[] old = prior == null ? null : toBytes(view(prior));
+            if (condition.test(old)) {
+                if (prior != null) {
+                    this.index.remove(key);
+                    release(prior);
+                }
+                if (value != null) {
+                    checkOpen();
+                    this.index.put(key, store(key, ByteBuffer.wrap(value)));
+                }
+            }
+            return old;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /** 分配块并写入数据，必须持有写锁 */
+    private Slot<K> store(K key, ByteBuffer value) {
+        int length = value.remaining();
+        SlabClass<K> slabClass = slabClassFor(length);
+        int chunk = allocate(slabClass);
+
+        ByteBuffer target = chunkBuffer(slabClass, chunk);
+        target.put(value.duplicate());
+
+        Slot<K> slot = new Slot<>(key, slabClass.index, chunk, length);
+        slabClass.owners.set(chunk, slot);
+        this.usedBytes += length;
+
+        if (this.expireAfterWriteNanos > 0) {
+            slot.timeout =
+                    this.timingWheel.newTimeout(
+                            () -> onExpired(slot), this.expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+        }
+        return slot;
+    }
+
+    /** 返回一个空闲块，必要时分配新页或者淘汰条目，必须持有写锁 */
+    private int allocate(SlabClass<K> slabClass) {
+        if (slabClass.freeCount == 0) {
+            if (this.allocatedPages < this.maxPages) {
+                slabClass.addPage(newPage());
+                this.allocatedPages++;
+            } else if (slabClass.pages.isEmpty()) {
+                reassignPage(slabClass);
+            } else {
+                evictOne(slabClass);
+            }
+        }
+        return slabClass.freeChunks[--slabClass.freeCount];
+    }
+
+    private ByteBuffer newPage() {
+        if (this.channel == null) {
+            return ByteBuffer.allocateDirect(this.pageSize);
+        }
+
+        try {
+            return this.channel.map(
+                    FileChannel.MapMode.READ_WRITE,
+                    (long) this.allocatedPages * this.pageSize,
+                    this.pageSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map page " + this.allocatedPages, e);
+        }
+    }
+
+    /** 从页最多的块大小回收最后一页，转给{@code target} */
+    private void reassignPage(SlabClass<K> target) {
+        SlabClass<K> victim = null;
+        for (SlabClass<K> slabClass : this.slabClasses) {
+            if (slabClass != target
+                    && (victim == null || slabClass.pages.size() > victim.pages.size())) {
+                victim = slabClass;
+            }
+        }
+        Assert.state(victim != null && !victim.pages.isEmpty(), "No page can be reassigned");
+
+        int first = (victim.pages.size() - 1) * victim.chunksPerPage;
+        for (int chunk = first; chunk < victim.owners.size(); chunk++) {
+            Slot<K> slot = victim.owners.get(chunk);
+            if (slot != null) {
+                this.index.remove(slot.key, slot);
+                release(slot);
+                this.statsCounter.recordEviction();
+            }
+        }
+        target.addPage(victim.removeLastPage());
+    }
+
+    /** CLOCK淘汰：跳过并清除最近被访问过的条目，淘汰第一个未被访问的条目 */
+    private void evictOne(SlabClass<K> slabClass) {
+        int chunkCount = slabClass.owners.size();
+        for (; ; ) {
+            int chunk = slabClass.clockHand;
+            slabClass.clockHand = (chunk + 1) % chunkCount;
+
+            Slot<K> slot = slabClass.owners.get(chunk);
+            if (slot == null) {
+                continue;
+            }
+            if (slot.referenced) {
+                slot.referenced = false;
+            } else {
+                this.index.remove(slot.key, slot);
+                release(slot);
+                this.statsCounter.recordEviction();
+                return;
+            }
+        }
+    }
+
+    /** 归还条目占用的块，必须持有写锁 */
+    private void release(Slot<K> slot) {
+        if (slot.released) {
+            return;
+        }
+        slot.released = true;
+
+        TimingWheel.Timeout timeout = slot.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+
+        SlabClass<K> slabClass = this.slabClasses[slot.slabClass];
+        slabClass.owners.set(slot.chunk, null);
+        slabClass.push(slot.chunk);
+        this.usedBytes -= slot.length;
+    }
+
+    /** 在tick线程中执行，只做标记并入队，不获取缓存的锁 */
+    private void onExpired(Slot<K> slot) {
+        slot.expired = true;
+        this.expiredSlots.offer(slot);
+    }
+
+    /** 移除已经过期的条目，必须持有写锁 */
+    private void drainExpired() {
+        Slot<K> slot;
+        while ((slot = this.expiredSlots.poll()) != null) {
+            if (this.index.remove(slot.key, slot)) {
+                release(slot);
+                this.statsCounter.recordExpire();
+            }
+        }
+    }
+
+    /** 有过期的条目并且能立即拿到写锁时移除它们，否则留给下一次写操作 */
+    private void tryDrainExpired() {
+        if (this.expiredSlots.isEmpty()) {
+            return;
+        }
+        long stamp = this.lock.tryWriteLock();
+        if (stamp == 0L) {
+            return;
+        }
+        try {
+            drainExpired();
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    private ByteBuffer view(Slot<K> slot) {
+        ByteBuffer buffer = chunkBuffer(this.slabClasses[slot.slabClass], slot.chunk);
+        buffer.limit(slot.length);
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /** 返回覆盖整个块的独立缓冲区 */
+    private static ByteBuffer chunkBuffer(SlabClass<?> slabClass, int chunk) {
+        ByteBuffer page = slabClass.pages.get(chunk / slabClass.chunksPerPage).duplicate();
+        int offset = (chunk % slabClass.chunksPerPage) * slabClass.chunkSize;
+        page.limit(offset + slabClass.chunkSize);
+        page.position(offset);
+        return page.slice();
+    }
+
+    private SlabClass<K> slabClassFor(int length) {
+        int size = Math.max(length, 1 << MIN_CHUNK_SHIFT);
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return this.slabClasses[shift - MIN_CHUNK_SHIFT];
+    }
+
+    private void checkLength(int length) {
+        Assert.isTrue(
+                length <= this.pageSize,
+                () -> "value length " + length + " exceeds page size " + this.pageSize);
+    }
+
+    private void checkOpen() {
+        Assert.state(!this.closed, "OffHeapCache has been closed");
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private final class MapView extends AbstractMap<K, byte[]>
+            implements ConcurrentMap<K, byte[]> {
+        @Nullable private Set<Map.Entry<K, byte[]>> entrySet;
+
+        @Override
+        public int size() {
+            return (int) OffHeapCache.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            Slot<K> slot = key == null ? null : index.get(key);
+            return slot != null && !slot.expired;
+        }
+
+        @Override
+        @Nullable
+        @SuppressWarnings("unchecked")
+        public byte[] get(Object key) {
+            return key == null ? null : read((K) key, OffHeapCache::toBytes, false);
+        }
+
+        @Override
+        @Nullable
+        public byte[] put(K key, byte[] value) {
+            Assert.notNull(value, "value must not be null");
+            return update(key, value, old -> true);
+        }
+
+        @Override
+        @Nullable
+        public byte[] putIfAbsent(K key, byte[] value) {
+            Assert.notNull(value, "value must not be null");
+            return update(key, value, Objects::isNull);
+        }
+
+        @Override
+        @Nullable
+        public byte[] replace(K key, byte[] value) {
+            Assert.notNull(value, "value must not be null");
+            return update(key, value, Objects::nonNull);
+        }
+
+        @Override
+        public boolean replace(K key, byte[] oldValue, byte[] newValue) {
+            Assert.notNull(oldValue, "oldValue must not be null");
+            Assert.notNull(newValue, "newValue must not be null");
+            byte[] old = update(key, newValue, current -> Arrays.equals(current, oldValue));
+            return Arrays.equals(old, oldValue);
+        }
+
+        @Override
+        @Nullable
+        @SuppressWarnings("unchecked")
+        public byte[] remove(Object key) {
+            return key == null ? null : update((K) key, null, old -> true);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object key, Object value) {
+            if (key == null || !(value instanceof byte[])) {
+                return false;
+            }
+            byte[] expected = (byte[]) value;
+            byte[] old = update((K) key, null, current -> Arrays.equals(current, expected));
+            return Arrays.equals(old, expected);
+        }
+
+        @Override
+        public void clear() {
+            invalidateAll();
+        }
+
+        @Override
+        public Set<Map.Entry<K, byte[]>> entrySet() {
+            Set<Map.Entry<K, byte[]>> es = this.entrySet;
+            if (es == null) {
+                es = new EntrySetView();
+                this.entrySet = es;
+            }
+            return es;
+        }
+
+        private final class EntrySetView extends AbstractSet<Map.Entry<K, byte[]>> {
+            @Override
+            public int size() {
+                return (int) OffHeapCache.this.size();
+            }
+
+            @Override
+            public void clear() {
+                invalidateAll();
+            }
+
+            @Override
+            public Iterator<Map.Entry<K, byte[]>> iterator() {
+                return new EntryIterator(index.keySet().iterator());
+            }
+        }
+
+        /** 跳过迭代期间被删除的键 */
+        private final class EntryIterator implements Iterator<Map.Entry<K, byte[]>> {
+            private final Iterator<K> keys;
+            @Nullable private Map.Entry<K, byte[]> next;
+            @Nullable private K lastKey;
+
+            EntryIterator(Iterator<K> keys) {
+                this.keys = keys;
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (this.next == null && this.keys.hasNext()) {
+                    K key = this.keys.next();
+                    byte[] value = read(key, OffHeapCache::toBytes, false);
+                    if (value != null) {
+                        this.next = new WriteThroughEntry(key, value);
+                    }
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public Map.Entry<K, byte[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<K, byte[]> entry = this.next;
+                this.next = null;
+                this.lastKey = entry.getKey();
+                return entry;
+            }
+
+            @Override
+            public void remove() {
+                Assert.state(this.lastKey != null, "next() has not been called");
+                invalidate(this.lastKey);
+                this.lastKey = null;
+            }
+        }
+
+        /** {@link #setValue(Object)}会写回缓存 */
+        private final class WriteThroughEntry extends SimpleEntry<K, byte[]> {
+            private static final long serialVersionUID = 1L;
+
+            WriteThroughEntry(K key, byte[] value) {
+                super(key, value);
+            }
+
+            @Override
+            public byte[] setValue(byte[] value) {
+                OffHeapCache.this.put(getKey(), value);
+                return super.setValue(value);
+            }
+        }
+    }
+
+    /** 一种块大小的所有页，以下字段只能在持有写锁时访问 */
+    private static final class SlabClass<K> {
+        private final int index;
+        private final int chunkSize;
+        private final int chunksPerPage;
+        private final List<ByteBuffer> pages = new ArrayList<>();
+        /** 每个块当前存放的条目，空闲块为{@code null} */
+        private final List<Slot<K>> owners = new ArrayList<>();
+
+        private int[] freeChunks = new int[0];
+        private int freeCount;
+        private int clockHand;
+
+        SlabClass(int index, int chunkSize, int pageSize) {
+            this.index = index;
+            this.chunkSize = chunkSize;
+            this.chunksPerPage = pageSize / chunkSize;
+        }
+
+        void addPage(ByteBuffer page) {
+            int first = this.owners.size();
+            this.pages.add(page);
+            for (int i = 0; i < this.chunksPerPage; i++) {
+                this.owners.add(null);
+            }
+            // 倒序入栈，使低地址的块先被使用
+            for (int chunk = first + this.chunksPerPage - 1; chunk >= first; chunk--) {
+                push(chunk);
+            }
+        }
+
+        /** 移除最后一页，页中的条目必须已经被释放 */
+        ByteBuffer removeLastPage() {
+            int first = (this.pages.size() - 1) * this.chunksPerPage;
+            this.owners.subList(first, this.owners.size()).clear();
+
+            int count = 0;
+            for (int i = 0; i < this.freeCount; i++) {
+                if (this.freeChunks[i] < first) {
+                    this.freeChunks[count++] = this.freeChunks[i];
+                }
+            }
+            this.freeCount = count;
+            if (this.clockHand >= first) {
+                this.clockHand = 0;
+            }
+
+            ByteBuffer page = this.pages.remove(this.pages.size() - 1);
+            page.clear();
+            return page;
+        }
+
+        void push(int chunk) {
+            if (this.freeCount == this.freeChunks.length) {
+                this.freeChunks =
+                        Arrays.copyOf(this.freeChunks, Math.max(this.freeCount << 1, 16));
+            }
+            this.freeChunks[this.freeCount++] = chunk;
+        }
+    }
+
+    private static final class Slot<K> {
+        private final K key;
+        private final int slabClass;
+        private final int chunk;
+        private final int length;
+        @Nullable private volatile TimingWheel.Timeout timeout;
+
+        /** 在tick线程中置位，之后读不到该条目 */
+        private volatile boolean expired;
+
+        /** 读锁内可能被多个读线程同时置位，丢失的置位只影响淘汰的精确度 */
+        private boolean referenced;
+
+        /** 以下字段只能在持有写锁时访问 */
+        private boolean released;
+
+        Slot(K key, int slabClass, int chunk, int length) {
+            this.key = key;
+            this.slabClass = slabClass;
+            this.chunk = chunk;
+            this.length = length;
+        }
+    }
+
+    public static final class Builder<K> {
+        private long maximumMemory = -1L;
+        private int pageSize = CommonConstant.K * CommonConstant.K;
+        private long initialCapacity = CommonConstant.K;
+        private long expireAfterWriteNanos;
+        @Nullable private Path mappedFile;
+        private boolean recordStats;
+        private boolean jmxEnabled;
+        @Nullable private String jmxName;
+
+        /**
+         * 设置堆外内存的上限，按页取整
+         *
+         * @param maximumMemory 字节数，至少为一页
+         */
+        public Builder<K> setMaximumMemory(long maximumMemory) {
+            Assert.isTrue(maximumMemory > 0, "maximumMemory must be positive");
+            this.maximumMemory = maximumMemory;
+            return this;
+        }
+
+        /**
+         * 设置页大小，默认1MB，同时也是单个值的最大长度
+         *
+         * @param pageSize 字节数，必须是2的幂，并且不小于64
+         */
+        public Builder<K> setPageSize(int pageSize) {
+            Assert.isTrue(
+                    pageSize >= (1 << MIN_CHUNK_SHIFT) && Integer.bitCount(pageSize) == 1,
+                    "pageSize must be a power of two and at least 64");
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * 设置索引的初始容量
+         *
+         * @param initialCapacity 初始容量
+         */
+        public Builder<K> setInitialCapacity(long initialCapacity) {
+            Assert.isTrue(initialCapacity >= 0, "initialCapacity must not be negative");
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * 设置写入后的过期时间
+         *
+         * @param duration 时长，小于等于0表示永不过期
+         * @param unit 时间单位
+         */
+        public Builder<K> setExpireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 使用内存映射文件代替直接内存，文件不存在时创建，已有内容会被覆盖
+         *
+         * @param mappedFile 文件路径
+         */
+        public Builder<K> setMappedFile(Path mappedFile) {
+            this.mappedFile = mappedFile;
+            return this;
+        }
+
+        /**
+         * 设置是否记录{@link OffHeapCache#stats()}，默认不记录
+         *
+         * @param recordStats 是否记录
+         */
+        public Builder<K> setRecordStats(boolean recordStats) {
+            this.recordStats = recordStats;
+            return this;
+        }
+
+        /**
+         * 设置是否把统计注册为{@link CacheStatsMXBean}，开启时同时开启统计记录
+         *
+         * @param jmxEnabled 是否注册
+         */
+        public Builder<K> setJmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+            return this;
+        }
+
+        /**
+         * 设置注册JMX时使用的名称，默认自动生成
+         *
+         * @param jmxName 名称
+         */
+        public Builder<K> setJmxName(String jmxName) {
+            this.jmxName = jmxName;
+            return this;
+        }
+
+        public OffHeapCache<K> build() {
+            Assert.state(this.maximumMemory > 0, "maximumMemory must be set");
+            Assert.state(
+                    this.maximumMemory >= this.pageSize, "maximumMemory must hold at least one page");
+
+            this.recordStats |= this.jmxEnabled;
+
+            FileChannel channel = null;
+            if (this.mappedFile != null) {
+                try {
+                    channel =
+                            FileChannel.open(
+                                    this.mappedFile,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to open " + this.mappedFile, e);
+                }
+            }
+            return new OffHeapCache<>(this, channel);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.freetsinghua.tool.cache;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.freetsinghua.tool.util.JsonUtils;
+import com.freetsinghua.tool.util.StandardCharsets;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 缓存键或者值的二进制序列化，用于{@link CacheSnapshotter}
+ *
+ * @author z.tsinghua
+ * @date 2019/2/26
+ */
+public interface Serializer<T> {
+
+    /**
+     * 序列化
+     *
+     * @param value 非{@code null}的值
+     * @return 结果
+     */
+    byte[] serialize(T value);
+
+    /**
+     * 反序列化，{@code buffer}的剩余部分恰好是一个值的字节，实现可以直接读取而不拷贝
+     *
+     * @param buffer 只读缓冲区，只在调用期间有效
+     * @return 结果
+     */
+    T deserialize(ByteBuffer buffer);
+
+    /** 原样保存字节数组 */
+    static Serializer<byte[]> ofBytes() {
+        return new Serializer<byte[]>() {
+            @Override
+            public byte[] serialize(byte[] value) {
+                return value;
+            }
+
+            @Override
+            public byte[] deserialize(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return bytes;
+            }
+        };
+    }
+
+    /** 字符串按UTF-8编码 */
+    static Serializer<String> ofString() {
+        return new Serializer<String>() {
+            @Override
+            public byte[] serialize(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String deserialize(ByteBuffer buffer) {
+                return StandardCharsets.UTF_8.decode(buffer).toString();
+            }
+        };
+    }
+
+    /**
+     * 使用{@link JsonUtils#getObjectMapper()}序列化为json
+     *
+     * @param clazz 值的类型
+     * @throws UncheckedIOException 如果序列化或者反序列化失败
+     */
+    static <T> Serializer<T> ofJson(Class<T> clazz) {
+        return new Serializer<T>() {
+            @Override
+            public byte[] serialize(T value) {
+                try {
+                    return JsonUtils.getObjectMapper().writeValueAsBytes(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public T deserialize(ByteBuffer buffer) {
+                try {
+                    return JsonUtils.getObjectMapper()
+                            .readValue(new ByteBufferBackedInputStream(buffer), clazz);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
@@ -3,7 +3,7 @@ package com.freetsinghua.tool.cache;
 import com.freetsinghua.tool.anotation.NotNull;
 import com.freetsinghua.tool.anotation.Nullable;
 import com.freetsinghua.tool.common.CommonConstant;
-import com.freetsinghua.tool.util.ThreadPool;
+import com.freetsinghua.tool.util.Assert;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -11,105 +11,194 @@ import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
 
 /**
  * 简单缓存
  * <li>若是需要监听过期事件，或者驱逐事件，则需要传入监听器
+ * <li>监听器在所有缓存共享的事件线程中异步调用，不在时间轮的tick线程中执行
  * <li>若是需要设置过期时间，则调用相应的构造器，或者方法
+ * <li>过期由共享的{@link TimingWheel}驱动，不会为每个键单独提交调度任务
+ * <li>开启统计后可以通过{@link #stats()}读取，或者调用{@link #registerMBean(String)}通过JMX读取
  *
  * @author z.tsinghua
  * @date 2019/1/28
  */
 public class SimpleCache<K, V> implements Cache<K, V> {
 
-    private final ConcurrentHashMap<K, V> cache = new ConcurrentHashMap<>(CommonConstant.K);
+    private final ConcurrentHashMap<K, Node<V>> cache = new ConcurrentHashMap<>(CommonConstant.K);
+    private final TimingWheel timingWheel = TimingWheel.getDefault();
+    private final SingleFlight<K, V> loadingFlights = new SingleFlight<>();
     private EventListener<V> mEventListener;
     private long expireTime;
+    @Nullable private ConcurrentMap<K, V> mapView;
+    private final StatsCounter statsCounter;
+    @Nullable private ObjectName objectName;
 
     public SimpleCache() {
-        mEventListener = null;
-        expireTime = 0L;
+        this(null, 0L, false);
     }
 
     public SimpleCache(EventListener<V> mEventListener) {
-        this.mEventListener = mEventListener;
-        this.expireTime = 0L;
+        this(mEventListener, 0L, false);
     }
 
     public SimpleCache(EventListener<V> mEventListener, long expireTime) {
+        this(mEventListener, expireTime, false);
+    }
+
+    /**
+     * @param mEventListener 过期监听器，可以为{@code null}
+     * @param expireTime 默认过期时间，单位毫秒，小于等于0表示永不过期
+     * @param recordStats 是否记录{@link #stats()}
+     */
+    public SimpleCache(EventListener<V> mEventListener, long expireTime, boolean recordStats) {
         this.mEventListener = mEventListener;
         this.expireTime = expireTime;
+        this.statsCounter =
+                recordStats ? new ConcurrentStatsCounter() : StatsCounter.disabled();
     }
 
+    /**
+     * 放入缓存，并在{@code expireTime}毫秒之后过期
+     *
+     * @param key 键
+     * @param value 值
+     * @param expireTime 过期时间，单位毫秒，小于等于0表示永不过期
+     */
     public void put(@NotNull K key, @NotNull V value, long expireTime) {
-        cache.put(key, value);
-        if (mEventListener != null) {
-            ThreadPool.getInstance()
-                    .scheduleWithFixedDelay(
-                            () -> {
-                                if (cache.containsKey(key)) {
-                                    cache.remove(key);
-                                    mEventListener.onEvent(value);
-                                }
-                            },
-                            expireTime);
+        Node<V> node = new Node<>(value, deadlineOf(expireTime));
+        cancelExpire(cache.put(key, node));
+        scheduleExpire(key, node, expireTime);
+    }
+
+    /**
+     * 键不存在时放入缓存，并在{@code expireTime}毫秒之后过期
+     *
+     * @param key 键
+     * @param value 值
+     * @param expireTime 过期时间，单位毫秒，小于等于0表示永不过期
+     * @return 是否写入
+     */
+    public boolean putIfAbsent(@NotNull K key, @NotNull V value, long expireTime) {
+        Node<V> node = new Node<>(value, deadlineOf(expireTime));
+        if (cache.putIfAbsent(key, node) != null) {
+            return false;
         }
+        scheduleExpire(key, node, expireTime);
+        return true;
     }
 
     @Override
     public void put(@NotNull K key, @NotNull V value) {
-        cache.put(key, value);
-        if (mEventListener != null) {
-            ThreadPool.getInstance()
-                    .scheduleWithFixedDelay(
-                            () -> {
-                                if (cache.containsKey(key)) {
-                                    cache.remove(key);
-                                    mEventListener.onEvent(value);
-                                }
-                            },
-                            this.expireTime);
-        }
+        put(key, value, this.expireTime);
     }
 
     @Override
-    public void putAll(Map<? extends K, ? extends V> map) {}
+    public void putAll(Map<? extends K, ? extends V> map) {
+        putAll(map, this.expireTime);
+    }
+
+    /**
+     * 批量放入缓存，整批条目共享一次过期登记，在{@code expireTime}毫秒之后一起过期；
+     * 过期登记只引用键，到期时只移除仍是这一批写入的条目，被覆盖或删除的值不会因此被继续引用
+     *
+     * @param map 键值对
+     * @param expireTime 过期时间，单位毫秒，小于等于0表示永不过期
+     */
+    @SuppressWarnings("unchecked")
+    public void putAll(Map<? extends K, ? extends V> map, long expireTime) {
+        if (map.isEmpty()) {
+            return;
+        }
+
+        long expireAt = deadlineOf(expireTime);
+        int size = map.size();
+        Object[] keys = new Object[size];
+        int i = 0;
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            if (i == size) {
+                // map在迭代过程中被修改
+                break;
+            }
+            cancelExpire(cache.put(entry.getKey(), new Node<>(entry.getValue(), expireAt)));
+            keys[i++] = entry.getKey();
+        }
+
+        if (expireTime > 0) {
+            int count = i;
+            // 批量条目没有单独的过期句柄，到期时按过期时刻识别仍是这一批写入的条目
+            timingWheel.newTimeout(
+                    () -> {
+                        for (int j = 0; j < count; j++) {
+                            K key = (K) keys[j];
+                            Node<V> node = cache.get(key);
+                            if (node != null && node.expireAt == expireAt) {
+                                expire(key, node);
+                            }
+                        }
+                    },
+                    expireTime,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
 
     public V get(K key) {
-        return cache.get(key);
+        return getIfPresent(key);
     }
 
     public V getOrDefault(K key, V def) {
-        return cache.getOrDefault(key, def);
+        V value = getIfPresent(key);
+        return value == null ? def : value;
     }
 
     @Override
     @Nullable
     public V getIfPresent(K key) {
-        if (cache.containsKey(key)) {
-            return cache.get(key);
+        Node<V> node = cache.get(key);
+        if (node == null) {
+            statsCounter.recordMisses(1);
+            return null;
         }
-
-        return null;
+        statsCounter.recordHits(1);
+        return node.value;
     }
 
     @Override
     @Nullable
     public V get(K key, Callable<? extends V> loader) {
-
-        if (cache.containsKey(key)) {
-            return cache.get(key);
+        V value = getIfPresent(key);
+        if (value != null || loader == null) {
+            return value;
         }
 
-        if (loader != null) {
-            try {
-                return loader.call();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
+        return loadingFlights.load(
+                key,
+                () -> {
+                    // 可能在等待期间已经被其他线程写入
+                    Node<V> present = cache.get(key);
+                    if (present != null) {
+                        return present.value;
+                    }
 
-        return null;
+                    long start = System.nanoTime();
+                    V loaded;
+                    try {
+                        loaded = loader.call();
+                    } catch (Throwable thr) {
+                        statsCounter.recordLoadFailure(System.nanoTime() - start);
+                        throw thr;
+                    }
+
+                    if (loaded == null) {
+                        statsCounter.recordLoadFailure(System.nanoTime() - start);
+                    } else {
+                        statsCounter.recordLoadSuccess(System.nanoTime() - start);
+                        put(key, loaded);
+                    }
+                    return loaded;
+                });
     }
 
     @Override
@@ -129,17 +218,19 @@ public class SimpleCache<K, V> implements Cache<K, V> {
 
     @Override
     public void invalidate(K key) {
-        cache.remove(key);
+        cancelExpire(cache.remove(key));
     }
 
     @Override
     public void invalidateAll(Iterable<K> keys) {
-        keys.forEach(cache::remove);
+        keys.forEach(this::invalidate);
     }
 
     @Override
     public void invalidateAll() {
-        cache.clear();
+        for (K key : cache.keySet()) {
+            invalidate(key);
+        }
     }
 
     @Override
@@ -147,13 +238,141 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         return cache.size();
     }
 
+    /** 返回的视图直接作用于缓存，写入同样会登记过期时间 */
     @Override
     public ConcurrentMap<K, V> asMap() {
-        ConcurrentMap<K, V> map = new ConcurrentHashMap<>();
-        for (Map.Entry<K, V> entry : cache.entrySet()) {
-            map.put(entry.getKey(), entry.getValue());
+        ConcurrentMap<K, V> view = mapView;
+        if (view == null) {
+            view = new MapView();
+            mapView = view;
         }
+        return view;
+    }
 
-        return map;
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    /**
+     * 把{@link #stats()}注册为{@link CacheStatsMXBean}，未开启统计时只有估计大小有意义
+     *
+     * @param name 名称，为{@code null}时自动生成
+     * @throws IllegalStateException 如果已经注册，或者名称不合法、已经被其他缓存使用
+     */
+    public synchronized void registerMBean(@Nullable String name) {
+        Assert.state(this.objectName == null, "SimpleCache MBean has already been registered");
+        this.objectName = CacheStatsMBean.register(name, this);
+    }
+
+    /** 注销{@link #registerMBean(String)}注册的{@link CacheStatsMXBean}，未注册时不做任何处理 */
+    public synchronized void unregisterMBean() {
+        if (this.objectName != null) {
+            CacheStatsMBean.unregister(this.objectName);
+            this.objectName = null;
+        }
+    }
+
+    /**
+     * 遍历所有未过期的条目，不加锁，与并发的写入之间是弱一致的
+     *
+     * @param visitor 接收键、值和剩余的过期时间（毫秒，0表示永不过期）
+     */
+    void forEachEntry(EntryVisitor<K, V> visitor) {
+        long now = System.nanoTime();
+        for (Map.Entry<K, Node<V>> entry : cache.entrySet()) {
+            Node<V> node = entry.getValue();
+            long remaining = 0L;
+            if (node.expireAt != 0L) {
+                long remainingNanos = node.expireAt - now;
+                if (remainingNanos <= 0L) {
+                    continue;
+                }
+                // 向上取整，避免剩余不足1毫秒的条目被当作永不过期
+                remaining = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remainingNanos + 999_999L));
+            }
+            visitor.visit(entry.getKey(), node.value, remaining);
+        }
+    }
+
+    private static long deadlineOf(long expireTime) {
+        if (expireTime <= 0) {
+            return 0L;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(expireTime);
+        // 0保留给永不过期
+        return deadline == 0L ? 1L : deadline;
+    }
+
+    private void scheduleExpire(K key, Node<V> node, long expireTime) {
+        if (expireTime > 0) {
+            node.timeout =
+                    timingWheel.newTimeout(() -> expire(key, node), expireTime, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cancelExpire(@Nullable Node<V> node) {
+        if (node != null && node.timeout != null) {
+            node.timeout.cancel();
+        }
+    }
+
+    /** 只有当{@code key}仍然映射到{@code node}时才会移除，避免误删被覆盖后的新值 */
+    private void expire(K key, Node<V> node) {
+        if (!cache.remove(key, node)) {
+            return;
+        }
+
+        statsCounter.recordExpire();
+        if (mEventListener != null) {
+            // 过期发生在时间轮的tick线程中，监听器交给事件线程调用
+            EventDispatcher.dispatch(mEventListener, node.value);
+        }
+    }
+
+    private final class MapView extends NodeMapView<K, V, Node<V>> {
+        MapView() {
+            super(cache);
+        }
+
+        @Override
+        V valueOf(Node<V> node) {
+            return node.value;
+        }
+
+        @Override
+        Node<V> newNode(K key, V value) {
+            return new Node<>(value, deadlineOf(expireTime));
+        }
+
+        @Override
+        void afterWrite(K key, Node<V> node, @Nullable Node<V> prior) {
+            cancelExpire(prior);
+            scheduleExpire(key, node, expireTime);
+        }
+
+        @Override
+        void afterRemove(K key, Node<V> prior) {
+            cancelExpire(prior);
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryVisitor<K, V> {
+        void visit(K key, V value, long remainingMillis);
+    }
+
+    /** 缓存条目，以对象标识区分同一个键的不同写入 */
+    private static final class Node<V> {
+        private final V value;
+        /** 过期时刻，基于{@link System#nanoTime()}，0表示永不过期 */
+        private final long expireAt;
+
+        @Nullable private volatile TimingWheel.Timeout timeout;
+
+        Node(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
     }
 }
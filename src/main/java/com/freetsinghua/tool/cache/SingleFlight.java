@@ -0,0 +1,91 @@
+package com.freetsinghua.tool.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 合并对同一个键的并发加载
+ *
+ * <li>同一时刻每个键只有一个线程执行加载，其他线程等待并共享这次加载的结果或异常
+ * <li>加载方法应当在返回前把结果写入缓存，这样在移除进行中的加载之前结果已经可见，不会出现重复加载的窗口
+ * <li>加载方法不能再加载同一个键，同一个线程重入时抛出{@link IllegalStateException}，而不是等待自己永远不会完成的加载
+ *
+ * @author z.tsinghua
+ * @date 2019/2/20
+ */
+final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 执行或者加入对{@code key}的加载
+     *
+     * @param key 键
+     * @param loader 加载方法
+     * @return 加载结果
+     * @throws CacheLoaderException 加载方法抛出异常时
+     * @throws IllegalStateException 如果加载方法中再次加载同一个键
+     */
+    V load(K key, Callable<? extends V> loader) {
+        Flight<V> future = new Flight<>();
+        Flight<V> existing = this.inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            if (existing.owner == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive load of key " + key);
+            }
+            return await(key, existing);
+        }
+
+        try {
+            V value = loader.call();
+            future.complete(value);
+            return value;
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw propagate(key, t);
+        } finally {
+            this.inFlight.remove(key, future);
+        }
+    }
+
+    /** 返回正在加载的键的数目 */
+    int inFlightCount() {
+        return this.inFlight.size();
+    }
+
+    /** 不可中断地等待其他线程的加载结果，等待期间的中断会在返回前恢复 */
+    private V await(K key, CompletableFuture<V> future) {
+        boolean interrupted = false;
+        try {
+            for (; ; ) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw propagate(key, e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static RuntimeException propagate(Object key, Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t instanceof CacheLoaderException) {
+            return (CacheLoaderException) t;
+        }
+        return new CacheLoaderException("Failed to load value for key " + key, t);
+    }
+
+    /** 记录执行加载的线程，用于识别重入 */
+    private static final class Flight<V> extends CompletableFuture<V> {
+        private final Thread owner = Thread.currentThread();
+    }
+}
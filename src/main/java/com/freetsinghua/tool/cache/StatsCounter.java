@@ -0,0 +1,44 @@
+package com.freetsinghua.tool.cache;
+
+/**
+ * 缓存统计的记录器，实现必须是线程安全的
+ *
+ * @author z.tsinghua
+ * @date 2019/2/25
+ */
+public interface StatsCounter {
+
+    /** 记录{@code count}次命中 */
+    void recordHits(int count);
+
+    /** 记录{@code count}次未命中 */
+    void recordMisses(int count);
+
+    /**
+     * 记录一次成功的加载
+     *
+     * @param loadTime 加载耗时，纳秒
+     */
+    void recordLoadSuccess(long loadTime);
+
+    /**
+     * 记录一次失败的加载，包括抛出异常和返回{@code null}
+     *
+     * @param loadTime 加载耗时，纳秒
+     */
+    void recordLoadFailure(long loadTime);
+
+    /** 记录一个因容量被淘汰的条目 */
+    void recordEviction();
+
+    /** 记录一个过期的条目 */
+    void recordExpire();
+
+    /** 返回当前统计的快照 */
+    CacheStats snapshot();
+
+    /** 返回不做任何记录的实例，用于未开启统计的缓存 */
+    static StatsCounter disabled() {
+        return DisabledStatsCounter.INSTANCE;
+    }
+}
@@ -0,0 +1,407 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.anotation.NotNull;
+import com.freetsinghua.tool.util.Assert;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 哈希时间轮
+ *
+ * <li>所有超时任务由一个独立的tick线程驱动，而不是每个键一个调度任务
+ * <li>{@link #newTimeout(Runnable, long, TimeUnit)}和{@link Timeout#cancel()}都是O(1)，新任务先进入无锁队列，由tick线程批量放入桶中
+ * <li>每个tick只处理一个桶，超过一圈的任务记录剩余圈数，过期处理的开销被均摊到每个tick
+ * <li>到期任务直接在tick线程中执行，因此任务本身应该足够轻量
+ *
+ * @author z.tsinghua
+ * @date 2019/2/18
+ */
+@Slf4j
+public class TimingWheel {
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_SHUTDOWN = 2;
+
+    /** 每个tick最多从队列中转移的任务数，避免新任务过多时饿死过期处理 */
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long tickDuration;
+    private final Thread workerThread;
+    private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
+    private volatile long startTime;
+
+    /**
+     * @param tickDuration 每个tick的时长
+     * @param unit 时间单位
+     * @param ticksPerWheel 时间轮的桶数，会被调整为2的幂
+     * @param threadFactory 用于创建tick线程
+     */
+    public TimingWheel(
+            long tickDuration, TimeUnit unit, int ticksPerWheel, ThreadFactory threadFactory) {
+        Assert.isTrue(tickDuration > 0, "tickDuration must be greater than 0");
+        Assert.isTrue(ticksPerWheel > 0, "ticksPerWheel must be greater than 0");
+        Assert.isTrue(ticksPerWheel <= 1 << 30, "ticksPerWheel may not be greater than 2^30");
+        Assert.notNull(unit, "unit must not be null");
+        Assert.notNull(threadFactory, "threadFactory must not be null");
+
+        this.wheel = createWheel(ticksPerWheel);
+        this.mask = this.wheel.length - 1;
+        this.tickDuration = unit.toNanos(tickDuration);
+        Assert.isTrue(
+                this.tickDuration < Long.MAX_VALUE / this.wheel.length,
+                "tickDuration is too long for the given ticksPerWheel");
+        this.workerThread = threadFactory.newThread(new Worker());
+    }
+
+    /** 返回默认的时间轮，所有缓存共享同一个tick线程 */
+    public static TimingWheel getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static Bucket[] createWheel(int ticksPerWheel) {
+        int normalized = 1;
+        while (normalized < ticksPerWheel) {
+            normalized <<= 1;
+        }
+
+        Bucket[] wheel = new Bucket[normalized];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        return wheel;
+    }
+
+    /**
+     * 在{@code delay}之后执行{@code task}
+     *
+     * @param task 到期后要执行的任务，在tick线程中执行
+     * @param delay 延迟时间
+     * @param unit 时间单位
+     * @return 可以用于取消的句柄
+     */
+    public Timeout newTimeout(@NotNull Runnable task, long delay, TimeUnit unit) {
+        Assert.notNull(task, "task must not be null");
+        Assert.notNull(unit, "unit must not be null");
+        start();
+
+        long deadline = System.nanoTime() + unit.toNanos(delay) - this.startTime;
+        // 溢出保护
+        if (delay > 0 && deadline < 0) {
+            deadline = Long.MAX_VALUE;
+        }
+
+        WheelTimeout timeout = new WheelTimeout(this, task, deadline);
+        this.pendingCount.incrementAndGet();
+        this.pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /** 返回尚未到期也未取消的任务数 */
+    public long pendingTimeouts() {
+        return this.pendingCount.get();
+    }
+
+    /** 停止tick线程，尚未到期的任务将不再执行 */
+    public void stop() {
+        Assert.state(
+                Thread.currentThread() != this.workerThread,
+                "TimingWheel.stop() can not be called from the timing wheel thread");
+
+        if (this.state.getAndSet(STATE_SHUTDOWN) != STATE_STARTED) {
+            return;
+        }
+
+        boolean interrupted = false;
+        while (this.workerThread.isAlive()) {
+            this.workerThread.interrupt();
+            try {
+                this.workerThread.join(100);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void start() {
+        switch (this.state.get()) {
+            case STATE_INIT:
+                if (this.state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+                    this.workerThread.start();
+                }
+                break;
+            case STATE_STARTED:
+                break;
+            case STATE_SHUTDOWN:
+                throw new IllegalStateException("TimingWheel has been stopped");
+            default:
+                throw new Error("Invalid TimingWheel state");
+        }
+
+        while (this.startTime == 0) {
+            try {
+                this.startTimeInitialized.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** 超时任务句柄 */
+    public interface Timeout {
+        /**
+         * 取消任务，若任务已经到期或已经取消，返回{@code false}
+         *
+         * @return 是否成功取消
+         */
+        boolean cancel();
+
+        boolean isCancelled();
+
+        boolean isExpired();
+    }
+
+    private final class Worker implements Runnable {
+        private long tick;
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            // 0作为未初始化的标志
+            startTime = now == 0 ? 1 : now;
+            startTimeInitialized.countDown();
+
+            do {
+                long deadline = waitForNextTick();
+                if (deadline > 0) {
+                    int idx = (int) (this.tick & mask);
+                    processCancelledTimeouts();
+                    transferTimeoutsToBuckets();
+                    wheel[idx].expireTimeouts(deadline);
+                    this.tick++;
+                }
+            } while (state.get() == STATE_STARTED);
+        }
+
+        private void transferTimeoutsToBuckets() {
+            for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+                WheelTimeout timeout = pendingTimeouts.poll();
+                if (timeout == null) {
+                    break;
+                }
+                if (timeout.state.get() == WheelTimeout.ST_CANCELLED) {
+                    continue;
+                }
+
+                long calculated = timeout.deadline / tickDuration;
+                timeout.remainingRounds = (calculated - this.tick) / wheel.length;
+                // 已经过期的任务放入当前桶，本次tick即可处理
+                long ticks = Math.max(calculated, this.tick);
+                wheel[(int) (ticks & mask)].add(timeout);
+            }
+        }
+
+        private void processCancelledTimeouts() {
+            WheelTimeout timeout;
+            while ((timeout = cancelledTimeouts.poll()) != null) {
+                timeout.remove();
+            }
+        }
+
+        /** 等待到下一个tick，返回相对于{@code startTime}的当前时间，若已停止返回负数 */
+        private long waitForNextTick() {
+            long deadline = tickDuration * (this.tick + 1);
+
+            for (; ; ) {
+                long currentTime = System.nanoTime() - startTime;
+                long sleepTimeMillis = (deadline - currentTime + 999999) / 1000000;
+
+                if (sleepTimeMillis <= 0) {
+                    return currentTime == Long.MIN_VALUE ? -Long.MAX_VALUE : currentTime;
+                }
+
+                try {
+                    Thread.sleep(sleepTimeMillis);
+                } catch (InterruptedException e) {
+                    if (state.get() == STATE_SHUTDOWN) {
+                        return Long.MIN_VALUE;
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class WheelTimeout implements Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final TimingWheel timingWheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        /** 以下字段只会被tick线程访问 */
+        private long remainingRounds;
+
+        private WheelTimeout next;
+        private WheelTimeout prev;
+        private Bucket bucket;
+        private boolean removed;
+
+        WheelTimeout(TimingWheel timingWheel, Runnable task, long deadline) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!this.state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            // 从桶中移除的工作交给tick线程，这里只是入队
+            this.timingWheel.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.state.get() == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return this.state.get() == ST_EXPIRED;
+        }
+
+        void remove() {
+            if (this.removed) {
+                return;
+            }
+
+            Bucket b = this.bucket;
+            if (b != null) {
+                b.remove(this);
+            } else {
+                this.removed = true;
+                this.timingWheel.pendingCount.decrementAndGet();
+            }
+        }
+
+        void expire() {
+            if (!this.state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+
+            try {
+                this.task.run();
+            } catch (Throwable t) {
+                if (log.isWarnEnabled()) {
+                    log.warn("An exception was thrown by timing wheel task: {}", this.task, t);
+                }
+            }
+        }
+    }
+
+    /** 双向链表，只会被tick线程访问 */
+    private static final class Bucket {
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        void expireTimeouts(long deadline) {
+            WheelTimeout timeout = this.head;
+
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    next = remove(timeout);
+                    if (timeout.deadline <= deadline) {
+                        timeout.expire();
+                    } else {
+                        throw new IllegalStateException(
+                                String.format(
+                                        "timeout.deadline (%d) > deadline (%d)",
+                                        timeout.deadline, deadline));
+                    }
+                } else if (timeout.isCancelled()) {
+                    next = remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        WheelTimeout remove(WheelTimeout timeout) {
+            WheelTimeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+
+            if (timeout == this.head) {
+                if (timeout == this.tail) {
+                    this.tail = null;
+                    this.head = null;
+                } else {
+                    this.head = next;
+                }
+            } else if (timeout == this.tail) {
+                this.tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            timeout.removed = true;
+            timeout.timingWheel.pendingCount.decrementAndGet();
+            return next;
+        }
+    }
+
+    private static final class DefaultHolder {
+        private static final TimingWheel INSTANCE =
+                new TimingWheel(
+                        10,
+                        TimeUnit.MILLISECONDS,
+                        512,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("timing-wheel-%d")
+                                .setDaemon(true)
+                                .build());
+    }
+}
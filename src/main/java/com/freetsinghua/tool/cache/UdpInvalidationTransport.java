@@ -0,0 +1,145 @@
+package com.freetsinghua.tool.cache;
+
+import com.freetsinghua.tool.util.Assert;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于UDP单播的{@link InvalidationTransport}，每条消息发送给所有配置的节点
+ *
+ * <li>单条消息超过一个数据报的大小时，按键拆分为多个数据报发送
+ * <li>由一个守护线程接收消息并回调监听器，无法解码的数据报会被丢弃
+ * <li>UDP不保证送达，近端缓存需要设置过期时间以限制数据的陈旧程度
+ *
+ * @author z.tsinghua
+ * @date 2019/2/27
+ */
+@Slf4j
+public class UdpInvalidationTransport implements InvalidationTransport {
+    /** IPv4下UDP数据报的最大负载 */
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private final DatagramChannel channel;
+    private final List<SocketAddress> peers;
+    private final List<Consumer<InvalidationMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 绑定本地地址并开始接收
+     *
+     * @param bindAddress 本地地址，端口为0时随机分配
+     * @param peers 接收消息的节点，可以包含自己
+     * @throws IOException 如果绑定失败
+     */
+    public UdpInvalidationTransport(
+            InetSocketAddress bindAddress, Collection<? extends SocketAddress> peers)
+            throws IOException {
+        Assert.notNull(bindAddress, "bindAddress must not be null");
+        Assert.notNull(peers, "peers must not be null");
+        this.peers = new CopyOnWriteArrayList<>(peers);
+        this.channel = DatagramChannel.open();
+        try {
+            this.channel.bind(bindAddress);
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+
+        Thread receiver = new Thread(this::receive, "udp-invalidation-" + getLocalAddress());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /** 返回实际绑定的本地地址 */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) this.channel.getLocalAddress();
+    }
+
+    /** 增加一个接收消息的节点 */
+    public void addPeer(SocketAddress peer) {
+        this.peers.add(peer);
+    }
+
+    @Override
+    public void send(InvalidationMessage message) throws IOException {
+        byte[] bytes = message.encode();
+        if (bytes.length <= MAX_DATAGRAM_SIZE) {
+            for (SocketAddress peer : this.peers) {
+                this.channel.send(ByteBuffer.wrap(bytes), peer);
+            }
+            return;
+        }
+
+        List<byte[]> keys = message.getKeys();
+        if (keys.size() < 2) {
+            throw new IOException(
+                    "Invalidation message of " + bytes.length + " bytes exceeds a UDP datagram");
+        }
+        int half = keys.size() >>> 1;
+        send(split(message, keys.subList(0, half)));
+        send(split(message, keys.subList(half, keys.size())));
+    }
+
+    private static InvalidationMessage split(InvalidationMessage message, List<byte[]> keys) {
+        return new InvalidationMessage(
+                message.getSourceId(), message.getCacheName(), false, new ArrayList<>(keys));
+    }
+
+    @Override
+    public void addListener(Consumer<InvalidationMessage> listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Consumer<InvalidationMessage> listener) {
+        this.listeners.remove(listener);
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        while (this.channel.isOpen()) {
+            buffer.clear();
+            InvalidationMessage message;
+            try {
+                this.channel.receive(buffer);
+                buffer.flip();
+                message = InvalidationMessage.decode(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Dropped an invalidation datagram", e);
+                }
+                continue;
+            }
+
+            for (Consumer<InvalidationMessage> listener : this.listeners) {
+                try {
+                    listener.accept(message);
+                } catch (RuntimeException e) {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Invalidation listener failed", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /** 关闭通道并停止接收线程 */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+        this.listeners.clear();
+    }
+}
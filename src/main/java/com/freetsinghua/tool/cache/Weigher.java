@@ -0,0 +1,20 @@
+package com.freetsinghua.tool.cache;
+
+/**
+ * 计算缓存条目的权重，用于基于权重的容量限制
+ *
+ * @author z.tsinghua
+ * @date 2019/2/19
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * 返回条目的权重，权重在写入时计算，之后不会改变
+     *
+     * @param key 键
+     * @param value 值
+     * @return 非负的权重
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,321 @@
+package com.freetsinghua.tool.task;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.freetsinghua.tool.util.Assert;
+
+/**
+ * 自适应并发限制：根据任务的往返时间（从提交到执行结束）动态调整同时在途的任务数上限，超过上限的任务立即被拒绝
+ *
+ * <li>{@link Algorithm#AIMD}：任务成功时上限加性增长（每个窗口约加1），任务被下游拒绝或往返时间超过
+ *     {@link #setRttTimeoutMillis(long)}时乘性减小
+ * <li>{@link Algorithm#VEGAS}：记录最小往返时间作为无排队时的基准，用 上限 × (1 - 最小往返时间 / 往返时间) 估算排队的任务数，
+ *     排队少于alpha时增大上限，多于beta时减小上限；每{@value #VEGAS_PROBE_INTERVAL}个样本重新测量一次基准
+ * <li>在途任务少于上限的一半时不增大上限，避免空闲时上限无限增长
+ * <li>{@link #tryAcquire()}和{@link #release(long, boolean)}只使用CAS，不加锁也不分配对象，
+ *     也可以直接用它们保护同步调用；通过执行器提交的任务在拒绝时抛出{@link TaskRejectedException}
+ *
+ * <p>与{@link java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy}不同，过载时不会让调用线程执行任务，
+ * 调用方可以立即降级或者返回错误
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+public class AdaptiveConcurrencyLimiter implements AsyncListenableTaskExecutor {
+	/** {@link #tryAcquire()}被拒绝时的返回值 */
+	public static final long REJECTED = Long.MIN_VALUE;
+
+	private static final int DEFAULT_INITIAL_LIMIT = 20;
+	private static final int DEFAULT_MIN_LIMIT = 1;
+	private static final int DEFAULT_MAX_LIMIT = 1000;
+	private static final double AIMD_BACKOFF_RATIO = 0.9d;
+	private static final long VEGAS_PROBE_INTERVAL = 1000L;
+
+	private final TaskExecutor delegate;
+	private final Algorithm algorithm;
+	private final int minLimit;
+	private final int maxLimit;
+	private final TaskExecutorAdapter adapterExecutor;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	/** 上限的double位表示，可以在CAS中表示小数部分的增长 */
+	private final AtomicLong limitBits;
+	private final AtomicLong minRttNanos = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong samples = new AtomicLong();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private volatile long rttTimeoutNanos = 0L;
+
+	public AdaptiveConcurrencyLimiter(TaskExecutor delegate, Algorithm algorithm) {
+		this(delegate, algorithm, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+	/**
+	 * @param delegate     实际执行任务的执行器
+	 * @param algorithm    调整算法
+	 * @param initialLimit 初始上限
+	 * @param minLimit     上限的最小值
+	 * @param maxLimit     上限的最大值
+	 */
+	public AdaptiveConcurrencyLimiter(TaskExecutor delegate, Algorithm algorithm, int initialLimit, int minLimit,
+			int maxLimit) {
+		Assert.notNull(delegate, "delegate must not be null");
+		Assert.notNull(algorithm, "algorithm must not be null");
+		Assert.isTrue(minLimit > 0, "minLimit must be positive");
+		Assert.isTrue(maxLimit >= minLimit, "maxLimit must not be less than minLimit");
+		Assert.isTrue(initialLimit >= minLimit && initialLimit <= maxLimit,
+				"initialLimit must be between minLimit and maxLimit");
+		this.delegate = delegate;
+		this.algorithm = algorithm;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limitBits = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+		this.adapterExecutor = new TaskExecutorAdapter(this::admit);
+	}
+
+	/**
+	 * 设置往返时间的上限，超过时和被拒绝一样减小并发上限，0表示不限制（默认）
+	 */
+	public void setRttTimeoutMillis(long rttTimeoutMillis) {
+		Assert.isTrue(rttTimeoutMillis >= 0, "rttTimeoutMillis must not be negative");
+		this.rttTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(rttTimeoutMillis);
+	}
+
+	/**
+	 * 尝试占用一个在途名额
+	 *
+	 * @return 成功时返回开始时刻，需要在结束后传给{@link #release(long, boolean)}；超过上限时返回{@link #REJECTED}
+	 */
+	public long tryAcquire() {
+		for (; ; ) {
+			int current = this.inFlight.get();
+			if (current >= getLimit()) {
+				this.rejected.increment();
+				return REJECTED;
+			}
+			if (this.inFlight.compareAndSet(current, current + 1)) {
+				return System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * 释放在途名额，并用这次的往返时间调整上限
+	 *
+	 * @param startNanos {@link #tryAcquire()}的返回值
+	 * @param didDrop    请求是否被下游丢弃或拒绝
+	 */
+	public void release(long startNanos, boolean didDrop) {
+		Assert.isTrue(startNanos != REJECTED, "cannot release a rejected acquisition");
+		int current = this.inFlight.getAndDecrement();
+		long rtt = System.nanoTime() - startNanos;
+		long timeout = this.rttTimeoutNanos;
+		if (didDrop || (timeout > 0L && rtt > timeout)) {
+			this.dropped.increment();
+			updateLimit(rtt, current, true);
+		} else {
+			updateLimit(rtt, current, false);
+		}
+	}
+
+	private void updateLimit(long rtt, int inFlightBefore, boolean didDrop) {
+		long minRtt = this.minRttNanos.get();
+		if (this.algorithm == Algorithm.VEGAS) {
+			if (this.samples.incrementAndGet() % VEGAS_PROBE_INTERVAL == 0L) {
+				// 重新测量基准，跟随下游变化
+				this.minRttNanos.set(rtt);
+				minRtt = rtt;
+			} else {
+				while (rtt < minRtt && !this.minRttNanos.compareAndSet(minRtt, rtt)) {
+					minRtt = this.minRttNanos.get();
+				}
+				minRtt = Math.min(minRtt, rtt);
+			}
+		}
+
+		for (; ; ) {
+			long bits = this.limitBits.get();
+			double limit = Double.longBitsToDouble(bits);
+			double newLimit = this.algorithm == Algorithm.AIMD ? aimd(limit, inFlightBefore, didDrop)
+					: vegas(limit, inFlightBefore, didDrop, rtt, minRtt);
+			newLimit = Math.max(this.minLimit, Math.min(this.maxLimit, newLimit));
+			if (newLimit == limit || this.limitBits.compareAndSet(bits, Double.doubleToRawLongBits(newLimit))) {
+				return;
+			}
+		}
+	}
+
+	private static double aimd(double limit, int inFlight, boolean didDrop) {
+		if (didDrop) {
+			return limit * AIMD_BACKOFF_RATIO;
+		}
+		if (inFlight * 2 < limit) {
+			return limit;
+		}
+		return limit + 1.0d / limit;
+	}
+
+	private static double vegas(double limit, int inFlight, boolean didDrop, long rtt, long minRtt) {
+		double log = Math.max(1.0d, Math.log10(limit));
+		if (didDrop) {
+			return limit - log;
+		}
+		if (rtt <= 0L || inFlight * 2 < limit) {
+			return limit;
+		}
+
+		double queued = limit * (1.0d - (double) minRtt / rtt);
+		double alpha = 3.0d * log;
+		double beta = 6.0d * log;
+		if (queued <= alpha) {
+			return limit + log;
+		} else if (queued >= beta) {
+			return limit - log;
+		}
+		return limit;
+	}
+
+	private void admit(Runnable task) {
+		long start = tryAcquire();
+		if (start == REJECTED) {
+			throw new LimitExceededException();
+		}
+		try {
+			this.delegate.execute(new LimitedTask(task, start));
+		} catch (RejectedExecutionException e) {
+			release(start, true);
+			throw e;
+		}
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		this.adapterExecutor.execute(task);
+	}
+
+	@Override
+	public void execute(Runnable task, long startTime) {
+		this.adapterExecutor.execute(task, startTime);
+	}
+
+	@Override
+	public Future<?> submit(Runnable task) {
+		return this.adapterExecutor.submit(task);
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+		return this.adapterExecutor.submit(task);
+	}
+
+	@Override
+	public ListenableFuture<?> submitListenable(Runnable task) {
+		return this.adapterExecutor.submitListenable(task);
+	}
+
+	@Override
+	public <T> ListenableFuture<T> submitListenable(Callable<T> task) {
+		return this.adapterExecutor.submitListenable(task);
+	}
+
+	/**
+	 * 返回当前的并发上限
+	 */
+	public int getLimit() {
+		return (int) Double.longBitsToDouble(this.limitBits.get());
+	}
+
+	/**
+	 * 返回在途的任务数
+	 */
+	public int getInFlight() {
+		return this.inFlight.get();
+	}
+
+	/**
+	 * 返回因为超过上限而被拒绝的次数
+	 */
+	public long getRejectedCount() {
+		return this.rejected.sum();
+	}
+
+	/**
+	 * 返回被下游拒绝或者超时的次数
+	 */
+	public long getDroppedCount() {
+		return this.dropped.sum();
+	}
+
+	/**
+	 * 返回{@link Algorithm#VEGAS}使用的最小往返时间，单位纳秒，还没有样本时返回{@link Long#MAX_VALUE}
+	 */
+	public long getMinRttNanos() {
+		return this.minRttNanos.get();
+	}
+
+	public Algorithm getAlgorithm() {
+		return this.algorithm;
+	}
+
+	@Override
+	public String toString() {
+		return "AdaptiveConcurrencyLimiter{algorithm=" + this.algorithm + ", limit=" + getLimit() + ", inFlight="
+				+ getInFlight() + ", rejected=" + getRejectedCount() + ", dropped=" + getDroppedCount() + '}';
+	}
+
+	private final class LimitedTask implements Runnable {
+		private final Runnable delegate;
+		private final long startNanos;
+
+		LimitedTask(Runnable delegate, long startNanos) {
+			this.delegate = delegate;
+			this.startNanos = startNanos;
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.delegate.run();
+			} finally {
+				release(this.startNanos, false);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.delegate.toString();
+		}
+	}
+
+	/**
+	 * 超过上限时抛出，消息固定且不填充栈，过载时拒绝的开销接近{@link #tryAcquire()}本身
+	 */
+	private static final class LimitExceededException extends TaskRejectedException {
+		private static final long serialVersionUID = 1L;
+
+		LimitExceededException() {
+			super("Concurrency limit exceeded");
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
+	/**
+	 * 调整并发上限的算法
+	 */
+	public enum Algorithm {
+		/** 加性增、乘性减，只对拒绝和超时做出反应 */
+		AIMD,
+		/** 根据往返时间相对最小值的增长估算排队，在出现拒绝之前就开始收缩 */
+		VEGAS
+	}
+}
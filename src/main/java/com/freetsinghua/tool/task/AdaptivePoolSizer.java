@@ -0,0 +1,229 @@
+package com.freetsinghua.tool.task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.freetsinghua.tool.util.Assert;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 根据负载周期性地调整{@link ThreadPoolExecutor}的核心线程数
+ *
+ * <p>每个采样周期读取队列长度、提交数和完成数，按照利特尔法则估算：
+ * <li>单个任务的执行时间 S = 平均活跃线程数 × 周期 / 完成数
+ * <li>队列等待时间 W = 队列长度 / 完成速率
+ * <li>需要的线程数 N = 到达速率 × S + 队列长度 × S / 目标等待时间，第二项用于在目标时间内消化积压
+ *
+ * <p>扩容立即生效，缩容每次最多减少四分之一，避免突发流量结束后立即回收线程又马上重建。
+ * 结果限制在[{@code minPoolSize}, {@code maxPoolSize}]之间；每次调整都会记录为{@link Decision}
+ *
+ * @author z.tsinghua
+ * @date 2019/3/3
+ */
+@Slf4j
+public class AdaptivePoolSizer {
+	private static final int MAX_DECISIONS = 64;
+
+	private final ThreadPoolExecutor executor;
+	private final int minPoolSize;
+	private final int maxPoolSize;
+	private final long intervalMillis;
+	private final double targetWaitSeconds;
+	private final ScheduledExecutorService sampler;
+	private final Deque<Decision> decisions = new ArrayDeque<>(MAX_DECISIONS);
+
+	/** 以下字段只由采样线程访问 */
+	private long lastNanos;
+	private long lastCompleted;
+	private long lastSubmitted;
+	private int lastActive;
+	private double serviceSeconds;
+
+	AdaptivePoolSizer(ThreadPoolExecutor executor, int minPoolSize, int maxPoolSize, long intervalMillis,
+			long targetWaitMillis, String threadName) {
+		Assert.isTrue(minPoolSize > 0, "minPoolSize must be positive");
+		Assert.isTrue(maxPoolSize >= minPoolSize, "maxPoolSize must not be less than minPoolSize");
+		Assert.isTrue(intervalMillis > 0, "intervalMillis must be positive");
+		Assert.isTrue(targetWaitMillis > 0, "targetWaitMillis must be positive");
+		this.executor = executor;
+		this.minPoolSize = minPoolSize;
+		this.maxPoolSize = maxPoolSize;
+		this.intervalMillis = intervalMillis;
+		this.targetWaitSeconds = targetWaitMillis / 1000.0d;
+		this.sampler = new ScheduledThreadPoolExecutor(1,
+				new ThreadFactoryBuilder().setNameFormat(threadName).setDaemon(true).build());
+	}
+
+	void start() {
+		this.lastNanos = System.nanoTime();
+		this.lastCompleted = this.executor.getCompletedTaskCount();
+		this.lastSubmitted = this.executor.getTaskCount();
+		this.sampler.scheduleWithFixedDelay(this::sample, this.intervalMillis, this.intervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	void stop() {
+		this.sampler.shutdownNow();
+	}
+
+	private void sample() {
+		try {
+			adjust();
+		} catch (RuntimeException e) {
+			if (log.isWarnEnabled()) {
+				log.warn("Adaptive pool sizing failed", e);
+			}
+		}
+	}
+
+	private void adjust() {
+		long now = System.nanoTime();
+		long completed = this.executor.getCompletedTaskCount();
+		long submitted = this.executor.getTaskCount();
+		int queueDepth = this.executor.getQueue().size();
+		int active = this.executor.getActiveCount();
+		int poolSize = this.executor.getCorePoolSize();
+
+		double seconds = Math.max((now - this.lastNanos) / 1e9d, 1e-3d);
+		long completedDelta = completed - this.lastCompleted;
+		double completionRate = completedDelta / seconds;
+		double arrivalRate = Math.max(submitted - this.lastSubmitted, 0L) / seconds;
+		if (completedDelta > 0) {
+			double busyThreads = (active + this.lastActive) / 2.0d;
+			this.serviceSeconds = Math.max(busyThreads, 1.0d) * seconds / completedDelta;
+		}
+		double waitSeconds = queueDepth == 0 ? 0.0d
+				: completionRate > 0.0d ? queueDepth / completionRate : Double.POSITIVE_INFINITY;
+
+		this.lastNanos = now;
+		this.lastCompleted = completed;
+		this.lastSubmitted = submitted;
+		this.lastActive = active;
+
+		int target;
+		String reason;
+		if (this.serviceSeconds <= 0.0d) {
+			// 还没有任务完成，无法估算执行时间，有积压就翻倍
+			target = queueDepth > 0 ? poolSize * 2 : poolSize;
+			reason = "no completions yet";
+		} else {
+			double needed = arrivalRate * this.serviceSeconds + queueDepth * this.serviceSeconds / this.targetWaitSeconds;
+			target = (int) Math.min(Math.ceil(needed), Integer.MAX_VALUE);
+			reason = waitSeconds > this.targetWaitSeconds ? "queue wait above target" : "little's law";
+		}
+
+		if (target < poolSize) {
+			target = Math.max(target, poolSize - Math.max(1, poolSize / 4));
+		}
+		target = Math.max(this.minPoolSize, Math.min(this.maxPoolSize, target));
+		if (target == poolSize) {
+			return;
+		}
+
+		this.executor.setCorePoolSize(target);
+		Decision decision = new Decision(System.currentTimeMillis(), poolSize, target, queueDepth, completionRate,
+				arrivalRate, this.serviceSeconds * 1000.0d, waitSeconds * 1000.0d, reason);
+		synchronized (this.decisions) {
+			if (this.decisions.size() == MAX_DECISIONS) {
+				this.decisions.removeFirst();
+			}
+			this.decisions.addLast(decision);
+		}
+		if (log.isInfoEnabled()) {
+			log.info("Resized pool: {}", decision);
+		}
+	}
+
+	/**
+	 * 返回最近的调整记录，按时间先后排列
+	 */
+	public List<Decision> getDecisions() {
+		synchronized (this.decisions) {
+			return new ArrayList<>(this.decisions);
+		}
+	}
+
+	/**
+	 * 一次调整的依据和结果
+	 */
+	public static final class Decision {
+		private final long timestamp;
+		private final int previousSize;
+		private final int newSize;
+		private final int queueDepth;
+		private final double completionRate;
+		private final double arrivalRate;
+		private final double serviceMillis;
+		private final double estimatedWaitMillis;
+		private final String reason;
+
+		Decision(long timestamp, int previousSize, int newSize, int queueDepth, double completionRate,
+				double arrivalRate, double serviceMillis, double estimatedWaitMillis, String reason) {
+			this.timestamp = timestamp;
+			this.previousSize = previousSize;
+			this.newSize = newSize;
+			this.queueDepth = queueDepth;
+			this.completionRate = completionRate;
+			this.arrivalRate = arrivalRate;
+			this.serviceMillis = serviceMillis;
+			this.estimatedWaitMillis = estimatedWaitMillis;
+			this.reason = reason;
+		}
+
+		/** 调整时间，毫秒 */
+		public long getTimestamp() {
+			return this.timestamp;
+		}
+
+		public int getPreviousSize() {
+			return this.previousSize;
+		}
+
+		public int getNewSize() {
+			return this.newSize;
+		}
+
+		public int getQueueDepth() {
+			return this.queueDepth;
+		}
+
+		/** 每秒完成的任务数 */
+		public double getCompletionRate() {
+			return this.completionRate;
+		}
+
+		/** 每秒提交的任务数 */
+		public double getArrivalRate() {
+			return this.arrivalRate;
+		}
+
+		/** 估算的单个任务执行时间 */
+		public double getServiceMillis() {
+			return this.serviceMillis;
+		}
+
+		/** 估算的队列等待时间，没有任务完成时为无穷大 */
+		public double getEstimatedWaitMillis() {
+			return this.estimatedWaitMillis;
+		}
+
+		public String getReason() {
+			return this.reason;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d -> %d (%s, queue=%d, arrival=%.1f/s, completion=%.1f/s, service=%.2fms, wait=%.1fms)",
+					this.previousSize, this.newSize, this.reason, this.queueDepth, this.arrivalRate,
+					this.completionRate, this.serviceMillis, this.estimatedWaitMillis);
+		}
+	}
+}
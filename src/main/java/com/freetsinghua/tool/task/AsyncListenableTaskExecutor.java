@@ -1,8 +1,18 @@
 package com.freetsinghua.tool.task;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * 可以返回{@link ListenableFuture}和{@link CompletableFuture}的执行器
+ *
+ * <p>{@code submitCompletable}系列方法返回的{@link CompletableFuture}由任务本身在完成时完成，
+ * 可以直接用{@code thenCompose}等方法组合，不需要阻塞等待；取消它会取消底层的任务
+ *
  * @author z.tsinghua
  * @date 2019/1/28
  */
@@ -24,4 +34,70 @@ public interface AsyncListenableTaskExecutor extends AsyncTaskExecutor {
      * @return 返回结果
      */
     <T> ListenableFuture<T> submitListenable(Callable<T> task);
+
+    /**
+     * 提交一个{@link Runnable}，返回在任务完成时完成的{@link CompletableFuture}
+     *
+     * @param task 任务
+     * @return 返回结果
+     * @throws TaskRejectedException 如果任务被拒绝执行
+     */
+    default CompletableFuture<Void> submitCompletable(Runnable task) {
+        return this.<Void>submitCompletable(
+                () -> {
+                    task.run();
+                    return null;
+                });
+    }
+
+    /**
+     * 提交一个{@link Callable}，返回在任务完成时完成的{@link CompletableFuture}
+     *
+     * @param task 任务
+     * @param <T> 泛型，表征返回类型
+     * @return 返回结果
+     * @throws TaskRejectedException 如果任务被拒绝执行
+     */
+    default <T> CompletableFuture<T> submitCompletable(Callable<T> task) {
+        return submitListenable(task).completable();
+    }
+
+    /**
+     * 提交一个{@link Callable}，超时后返回的{@link CompletableFuture}以{@link java.util.concurrent.TimeoutException}完成，
+     * 同时取消并中断任务
+     *
+     * @param task 任务
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @param <T> 泛型，表征返回类型
+     * @return 返回结果
+     * @throws TaskRejectedException 如果任务被拒绝执行
+     */
+    default <T> CompletableFuture<T> submitCompletable(Callable<T> task, long timeout, TimeUnit unit) {
+        ListenableFuture<T> future = submitListenable(task);
+        return CompletableFutures.orTimeout(future.completable(), timeout, unit, future);
+    }
+
+    /**
+     * 提交所有任务，所有任务都成功后以按原顺序排列的结果完成，任意一个失败时立即以它的异常完成
+     *
+     * @param tasks 任务
+     * @param <T> 泛型，表征返回类型
+     * @return 返回结果
+     * @throws TaskRejectedException 如果有任务被拒绝执行，此时已经提交的任务会被取消
+     */
+    default <T> CompletableFuture<List<T>> submitAllCompletable(Collection<? extends Callable<T>> tasks) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(submitCompletable(task));
+            }
+        } catch (TaskRejectedException e) {
+            for (CompletableFuture<T> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+        return CompletableFutures.allOf(futures);
+    }
 }
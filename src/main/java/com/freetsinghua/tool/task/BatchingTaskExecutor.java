@@ -0,0 +1,313 @@
+package com.freetsinghua.tool.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.cache.TimingWheel;
+import com.freetsinghua.tool.util.Assert;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 把大量小任务合并为批次执行的{@link TaskExecutor}包装
+ *
+ * <li>提交的元素先放入当前批次，批次达到{@code maxBatchSize}个元素，或者第一个元素等待超过{@code maxLingerMillis}时，
+ *     整个批次作为一个任务交给底层执行器，由{@link BatchHandler}一次处理；
+ *     这样每个元素不再单独入队、创建{@link java.util.concurrent.FutureTask}和唤醒工作线程，适合批量写入等场景
+ * <li>每个元素都有自己的{@link ListenableFuture}，处理成功后按顺序设置结果，处理失败时所有元素都以同一个异常失败
+ * <li>在处理之前被取消的元素不会交给{@link BatchHandler}
+ * <li>等待超时由{@link TimingWheel#getDefault()}驱动，精度为10毫秒；tick线程只把超时转交给一个共享的守护线程，
+ *     由它把批次交给底层执行器；底层执行器饱和并使用{@link java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy}时，
+ *     {@link BatchHandler}不会在tick线程或者这个共享线程中执行，批次每10毫秒重新提交一次，直到底层执行器接受
+ * <li>不同批次之间可能并发执行，不保证按提交顺序处理
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+@Slf4j
+public class BatchingTaskExecutor<T, R> {
+	/** 处理等待超时的批次，避免在时间轮的tick线程中执行底层执行器或者{@link BatchHandler} */
+	private static final Executor LINGER_DISPATCHER = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setNameFormat("batch-linger-dispatcher-%d").setDaemon(true).build());
+	private static final long RETRY_DELAY_MILLIS = 10L;
+
+	private final TaskExecutor executor;
+	private final BatchHandler<T, R> handler;
+	private final int maxBatchSize;
+	private final long maxLingerMillis;
+	private final LongAdder batchCount = new LongAdder();
+	private final LongAdder itemCount = new LongAdder();
+
+	private final Object mutex = new Object();
+	/** 以下字段由{@link #mutex}保护 */
+	private List<T> items;
+	private List<SettableListenableFuture<R>> futures;
+	@Nullable
+	private TimingWheel.Timeout lingerTimeout;
+	/** 每交出一个批次加一，用于识别过期的超时 */
+	private long generation;
+	private boolean shutdown;
+
+	/**
+	 * @param executor        执行批次的执行器
+	 * @param handler         批次处理器
+	 * @param maxBatchSize    每个批次最多的元素数
+	 * @param maxLingerMillis 批次中第一个元素最多等待的时间，单位毫秒
+	 */
+	public BatchingTaskExecutor(TaskExecutor executor, BatchHandler<T, R> handler, int maxBatchSize,
+			long maxLingerMillis) {
+		Assert.notNull(executor, "executor must not be null");
+		Assert.notNull(handler, "handler must not be null");
+		Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+		Assert.isTrue(maxLingerMillis > 0, "maxLingerMillis must be positive");
+		this.executor = executor;
+		this.handler = handler;
+		this.maxBatchSize = maxBatchSize;
+		this.maxLingerMillis = maxLingerMillis;
+		this.items = new ArrayList<>(maxBatchSize);
+		this.futures = new ArrayList<>(maxBatchSize);
+	}
+
+	/**
+	 * 提交一个元素
+	 *
+	 * @param item 元素
+	 * @return 元素的处理结果
+	 * @throws TaskRejectedException 如果已经{@link #shutdown()}
+	 */
+	public ListenableFuture<R> submit(T item) {
+		SettableListenableFuture<R> future = new SettableListenableFuture<>();
+		Batch batch = null;
+		synchronized (this.mutex) {
+			if (this.shutdown) {
+				throw new TaskRejectedException("BatchingTaskExecutor has been shut down, rejected " + item);
+			}
+
+			if (this.items.isEmpty()) {
+				long current = this.generation;
+				this.lingerTimeout = TimingWheel.getDefault().newTimeout(
+						() -> LINGER_DISPATCHER.execute(() -> lingerExpired(current)), this.maxLingerMillis,
+						TimeUnit.MILLISECONDS);
+			}
+			this.items.add(item);
+			this.futures.add(future);
+			if (this.items.size() >= this.maxBatchSize) {
+				batch = takeBatch();
+			}
+		}
+
+		if (batch != null) {
+			dispatch(batch);
+		}
+		return future;
+	}
+
+	/**
+	 * 立即交出当前批次，不等待批次填满或超时
+	 */
+	public void flush() {
+		Batch batch;
+		synchronized (this.mutex) {
+			batch = this.items.isEmpty() ? null : takeBatch();
+		}
+
+		if (batch != null) {
+			dispatch(batch);
+		}
+	}
+
+	/**
+	 * 交出当前批次，之后提交的元素都会被拒绝
+	 */
+	public void shutdown() {
+		synchronized (this.mutex) {
+			this.shutdown = true;
+		}
+		flush();
+	}
+
+	/**
+	 * 返回已经交给底层执行器的批次数
+	 */
+	public long getBatchCount() {
+		return this.batchCount.sum();
+	}
+
+	/**
+	 * 返回已经交给底层执行器的元素数
+	 */
+	public long getItemCount() {
+		return this.itemCount.sum();
+	}
+
+	/**
+	 * 返回当前批次中等待的元素数
+	 */
+	public int getPendingCount() {
+		synchronized (this.mutex) {
+			return this.items.size();
+		}
+	}
+
+	private void lingerExpired(long expectedGeneration) {
+		Batch batch;
+		synchronized (this.mutex) {
+			// 批次已经因为填满或flush被交出
+			if (expectedGeneration != this.generation || this.items.isEmpty()) {
+				return;
+			}
+			this.lingerTimeout = null;
+			batch = takeBatch();
+		}
+		count(batch);
+		dispatchLingered(batch);
+	}
+
+	/**
+	 * 必须在持有{@link #mutex}时调用
+	 */
+	private Batch takeBatch() {
+		if (this.lingerTimeout != null) {
+			this.lingerTimeout.cancel();
+			this.lingerTimeout = null;
+		}
+		Batch batch = new Batch(this.items, this.futures);
+		this.items = new ArrayList<>(this.maxBatchSize);
+		this.futures = new ArrayList<>(this.maxBatchSize);
+		this.generation++;
+		return batch;
+	}
+
+	private void dispatch(Batch batch) {
+		count(batch);
+		execute(batch);
+	}
+
+	/**
+	 * 在{@link #LINGER_DISPATCHER}中执行：底层执行器要在当前线程中执行批次时，稍后重新提交，
+	 * 一个饱和的执行器不会占住所有实例共享的这个线程
+	 */
+	private void dispatchLingered(Batch batch) {
+		batch.lingerThread = Thread.currentThread();
+		execute(batch);
+		if (batch.bounced) {
+			batch.bounced = false;
+			TimingWheel.getDefault().newTimeout(() -> LINGER_DISPATCHER.execute(() -> dispatchLingered(batch)),
+					RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void count(Batch batch) {
+		this.batchCount.increment();
+		this.itemCount.add(batch.items.size());
+	}
+
+	private void execute(Batch batch) {
+		try {
+			this.executor.execute(batch);
+		} catch (RejectedExecutionException e) {
+			if (log.isWarnEnabled()) {
+				log.warn("Executor {} rejected batch of {} items", this.executor, batch.items.size(), e);
+			}
+			batch.fail(e);
+		}
+	}
+
+	private final class Batch implements Runnable {
+		private final List<T> items;
+		private final List<SettableListenableFuture<R>> futures;
+		/** 交出批次的{@link #LINGER_DISPATCHER}线程，底层执行器在这个线程中执行批次时不处理，由它稍后重试 */
+		@Nullable
+		private Thread lingerThread;
+		private boolean bounced;
+
+		Batch(List<T> items, List<SettableListenableFuture<R>> futures) {
+			this.items = items;
+			this.futures = futures;
+		}
+
+		@Override
+		public void run() {
+			if (Thread.currentThread() == this.lingerThread) {
+				this.bounced = true;
+				return;
+			}
+
+			List<T> liveItems = this.items;
+			List<SettableListenableFuture<R>> liveFutures = this.futures;
+			for (int i = 0; i < this.futures.size(); i++) {
+				if (this.futures.get(i).isCancelled()) {
+					liveItems = new ArrayList<>(this.items.size());
+					liveFutures = new ArrayList<>(this.futures.size());
+					for (int j = 0; j < this.futures.size(); j++) {
+						if (!this.futures.get(j).isCancelled()) {
+							liveItems.add(this.items.get(j));
+							liveFutures.add(this.futures.get(j));
+						}
+					}
+					break;
+				}
+			}
+			if (liveItems.isEmpty()) {
+				return;
+			}
+
+			List<R> results;
+			try {
+				results = handler.handle(Collections.unmodifiableList(liveItems));
+			} catch (Throwable t) {
+				fail(liveFutures, t);
+				return;
+			}
+
+			if (results == null || results.size() != liveItems.size()) {
+				fail(liveFutures, new IllegalStateException("BatchHandler returned "
+						+ (results == null ? "null" : results.size() + " results") + " for " + liveItems.size()
+						+ " items"));
+				return;
+			}
+			for (int i = 0; i < liveFutures.size(); i++) {
+				liveFutures.get(i).set(results.get(i));
+			}
+		}
+
+		void fail(Throwable cause) {
+			fail(this.futures, cause);
+		}
+
+		private void fail(List<SettableListenableFuture<R>> futures, Throwable cause) {
+			for (SettableListenableFuture<R> future : futures) {
+				future.setException(cause);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Batch of " + this.items.size() + " items for " + handler;
+		}
+	}
+
+	/**
+	 * 批次处理器
+	 */
+	@FunctionalInterface
+	public interface BatchHandler<T, R> {
+
+		/**
+		 * 处理一个批次
+		 *
+		 * @param items 批次中的元素，按提交顺序排列，不可修改
+		 * @return 与{@code items}一一对应的结果
+		 * @throws Exception 处理失败时，批次中所有元素都以此异常失败
+		 */
+		List<R> handle(List<T> items) throws Exception;
+	}
+}
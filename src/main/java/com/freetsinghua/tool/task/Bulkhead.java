@@ -0,0 +1,394 @@
+package com.freetsinghua.tool.task;
+
+import java.lang.management.ManagementFactory;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.cache.TimingWheel;
+import com.freetsinghua.tool.util.Assert;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 舱壁：在共享的执行器上划出一个有并发上限和独立队列的分区，避免一类任务占满整个线程池
+ *
+ * <li>同时执行的任务不超过{@code maxConcurrent}，超出的任务进入舱壁自己的队列，队列满时抛出{@link TaskRejectedException}
+ * <li>不创建线程：任务由共享执行器执行，一个任务结束后，同一个线程接着执行舱壁队列中的下一个任务，
+ *     连续执行{@value #MAX_INLINE_TASKS}个之后释放许可，把队列中的任务重新提交到共享执行器，让出线程
+ * <li>共享执行器饱和时如果在提交的线程中直接执行任务（例如{@link java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy}），
+ *     提交的线程只执行自己的任务，不会接着执行队列中其他调用方的任务；这时队列中的任务放回队首，
+ *     {@value #RETRY_DELAY_MILLIS}毫秒后重新提交
+ * <li>每个舱壁单独统计并发、排队、拒绝等指标，可以用{@link #registerMBean()}导出到JMX
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+@Slf4j
+public class Bulkhead implements AsyncListenableTaskExecutor, BulkheadMXBean {
+	private static final String DOMAIN = "com.freetsinghua.tool.task";
+	private static final int MAX_INLINE_TASKS = 16;
+	private static final long RETRY_DELAY_MILLIS = 10L;
+
+	private final String name;
+	private final Executor delegate;
+	private final int maxConcurrent;
+	private final int queueCapacity;
+	private final TaskExecutorAdapter adapterExecutor;
+
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger peakActive = new AtomicInteger();
+	private final Deque<Runnable> waiting = new ConcurrentLinkedDeque<>();
+	private final AtomicBoolean retryScheduled = new AtomicBoolean();
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	@Nullable
+	private volatile ObjectName objectName;
+
+	/**
+	 * @param name          名称
+	 * @param delegate      实际执行任务的共享执行器
+	 * @param maxConcurrent 同时执行的任务数上限
+	 * @param queueCapacity 等待队列的容量，0表示不排队，超出并发上限立即拒绝
+	 */
+	public Bulkhead(String name, Executor delegate, int maxConcurrent, int queueCapacity) {
+		Assert.notNull(name, "name must not be null");
+		Assert.notNull(delegate, "delegate must not be null");
+		Assert.isTrue(maxConcurrent > 0, "maxConcurrent must be positive");
+		Assert.isTrue(queueCapacity >= 0, "queueCapacity must not be negative");
+		this.name = name;
+		this.delegate = delegate;
+		this.maxConcurrent = maxConcurrent;
+		this.queueCapacity = queueCapacity;
+		this.adapterExecutor = new TaskExecutorAdapter(this::admit);
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		this.adapterExecutor.execute(task);
+	}
+
+	@Override
+	public void execute(Runnable task, long startTime) {
+		this.adapterExecutor.execute(task, startTime);
+	}
+
+	@Override
+	public Future<?> submit(Runnable task) {
+		return this.adapterExecutor.submit(task);
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+		return this.adapterExecutor.submit(task);
+	}
+
+	@Override
+	public ListenableFuture<?> submitListenable(Runnable task) {
+		return this.adapterExecutor.submitListenable(task);
+	}
+
+	@Override
+	public <T> ListenableFuture<T> submitListenable(Callable<T> task) {
+		return this.adapterExecutor.submitListenable(task);
+	}
+
+	private void admit(Runnable task) {
+		this.submitted.increment();
+		if (tryAcquire()) {
+			dispatch(task, true);
+			return;
+		}
+
+		if (this.queued.incrementAndGet() > this.queueCapacity) {
+			this.queued.decrementAndGet();
+			this.rejected.increment();
+			throw new RejectedExecutionException("Bulkhead '" + this.name + "' is full (maxConcurrent="
+					+ this.maxConcurrent + ", queueCapacity=" + this.queueCapacity + ")");
+		}
+		this.waiting.offer(task);
+		// 入队前后可能有任务结束并释放了许可
+		drain();
+	}
+
+	/**
+	 * 在有空闲许可时把排队的任务交给共享执行器
+	 */
+	private void drain() {
+		while (!this.waiting.isEmpty() && tryAcquire()) {
+			Runnable next = pollWaiting();
+			if (next == null) {
+				release();
+				continue;
+			}
+			if (!dispatch(next, false)) {
+				scheduleRetry();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 必须已经持有一个许可
+	 *
+	 * @param rethrow 是否是提交线程自己的任务，是时拒绝异常抛给提交者；否则是队列中的任务
+	 * @return 队列中的任务是否被交出，{@code false}表示共享执行器要在当前线程中执行它，任务已经放回队首
+	 */
+	private boolean dispatch(Runnable task, boolean rethrow) {
+		Worker worker = new Worker(task, !rethrow);
+		try {
+			this.delegate.execute(worker);
+		} catch (RejectedExecutionException e) {
+			release();
+			this.rejected.increment();
+			if (rethrow) {
+				throw e;
+			}
+			if (log.isWarnEnabled()) {
+				log.warn("Executor rejected queued task {} of bulkhead '{}'", task, this.name, e);
+			}
+			if (task instanceof Future) {
+				((Future<?>) task).cancel(false);
+			}
+			return true;
+		}
+
+		if (worker.bounced) {
+			release();
+			this.waiting.offerFirst(task);
+			this.queued.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 共享执行器饱和时稍后再提交队列中的任务；tick线程同样不会执行队列中的任务
+	 */
+	private void scheduleRetry() {
+		if (this.retryScheduled.compareAndSet(false, true)) {
+			TimingWheel.getDefault().newTimeout(() -> {
+				this.retryScheduled.set(false);
+				drain();
+			}, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * 一个任务结束后取下一个任务，取不到时释放许可
+	 *
+	 * @return 下一个任务，此时仍然持有许可
+	 */
+	@Nullable
+	private Runnable next() {
+		Runnable next = pollWaiting();
+		if (next != null) {
+			return next;
+		}
+
+		release();
+		// 释放之前可能有任务入队，而入队的线程没有拿到许可
+		if (!this.waiting.isEmpty() && tryAcquire()) {
+			next = pollWaiting();
+			if (next == null) {
+				release();
+			}
+		}
+		return next;
+	}
+
+	@Nullable
+	private Runnable pollWaiting() {
+		Runnable next = this.waiting.poll();
+		if (next != null) {
+			this.queued.decrementAndGet();
+		}
+		return next;
+	}
+
+	private boolean tryAcquire() {
+		for (; ; ) {
+			int current = this.active.get();
+			if (current >= this.maxConcurrent) {
+				return false;
+			}
+			if (this.active.compareAndSet(current, current + 1)) {
+				int peak;
+				while ((peak = this.peakActive.get()) <= current && !this.peakActive.compareAndSet(peak, current + 1)) {
+					// 重试
+				}
+				return true;
+			}
+		}
+	}
+
+	private void release() {
+		this.active.decrementAndGet();
+	}
+
+	/**
+	 * 把指标注册到平台MBeanServer，名称为{@code com.freetsinghua.tool.task:type=Bulkhead,name=...}
+	 *
+	 * @throws IllegalStateException 如果已经被注册
+	 */
+	public void registerMBean() {
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=Bulkhead,name=" + ObjectName.quote(this.name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			this.objectName = objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("Failed to register bulkhead MBean " + this.name, e);
+		}
+	}
+
+	public void unregisterMBean() {
+		ObjectName objectName = this.objectName;
+		if (objectName == null) {
+			return;
+		}
+		this.objectName = null;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (InstanceNotFoundException e) {
+			// 已经被注销
+		} catch (JMException e) {
+			if (log.isWarnEnabled()) {
+				log.warn("Failed to unregister bulkhead MBean {}", objectName, e);
+			}
+		}
+	}
+
+	@Override
+	public int getMaxConcurrent() {
+		return this.maxConcurrent;
+	}
+
+	@Override
+	public int getQueueCapacity() {
+		return this.queueCapacity;
+	}
+
+	/** 正在执行的任务数 */
+	@Override
+	public int getActiveCount() {
+		return this.active.get();
+	}
+
+	/** 在舱壁队列中等待的任务数 */
+	@Override
+	public int getQueuedCount() {
+		return this.queued.get();
+	}
+
+	/** 同时执行的任务数的最大值 */
+	@Override
+	public int getPeakActiveCount() {
+		return this.peakActive.get();
+	}
+
+	/** 正在执行的任务数占并发上限的比例，持续为1并且有任务排队说明舱壁已经饱和 */
+	@Override
+	public double getUtilization() {
+		return (double) this.active.get() / this.maxConcurrent;
+	}
+
+	@Override
+	public long getSubmittedCount() {
+		return this.submitted.sum();
+	}
+
+	@Override
+	public long getCompletedCount() {
+		return this.completed.sum();
+	}
+
+	/** 抛出异常的任务数，通过{@code submit}提交的任务的异常由{@link Future}捕获，不计入 */
+	@Override
+	public long getFailedCount() {
+		return this.failed.sum();
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return this.rejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "Bulkhead{name=" + this.name + ", active=" + getActiveCount() + "/" + this.maxConcurrent + ", queued="
+				+ getQueuedCount() + "/" + this.queueCapacity + ", rejected=" + getRejectedCount() + '}';
+	}
+
+	/**
+	 * 持有一个许可，依次执行第一个任务和舱壁队列中的后续任务
+	 */
+	private final class Worker implements Runnable {
+		private final Runnable first;
+		/** {@link #first}是否来自舱壁队列 */
+		private final boolean queuedTask;
+		private final Thread submitter = Thread.currentThread();
+		/** 由提交的线程执行时，没有执行队列中的任务就返回 */
+		private boolean bounced;
+
+		Worker(Runnable first, boolean queuedTask) {
+			this.first = first;
+			this.queuedTask = queuedTask;
+		}
+
+		@Override
+		public void run() {
+			boolean callerRuns = Thread.currentThread() == this.submitter;
+			if (callerRuns && this.queuedTask) {
+				// 共享执行器让提交的线程执行任务，不替其他调用方执行
+				this.bounced = true;
+				return;
+			}
+
+			Runnable task = this.first;
+			int executed = 0;
+			while (task != null) {
+				try {
+					task.run();
+					completed.increment();
+				} catch (Throwable t) {
+					failed.increment();
+					// 异常交给共享执行器处理之前，把许可和队列中的任务交出去
+					release();
+					drain();
+					throw t;
+				}
+
+				if (callerRuns || ++executed >= MAX_INLINE_TASKS) {
+					// 提交的线程只执行自己的任务；连续执行太多时让出线程，剩下的任务重新提交到共享执行器
+					release();
+					drain();
+					return;
+				}
+				task = next();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.first.toString();
+		}
+	}
+}
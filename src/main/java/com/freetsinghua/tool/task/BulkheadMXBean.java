@@ -0,0 +1,30 @@
+package com.freetsinghua.tool.task;
+
+/**
+ * 通过JMX暴露的{@link Bulkhead}指标
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+public interface BulkheadMXBean {
+
+    int getMaxConcurrent();
+
+    int getQueueCapacity();
+
+    int getActiveCount();
+
+    int getQueuedCount();
+
+    int getPeakActiveCount();
+
+    double getUtilization();
+
+    long getSubmittedCount();
+
+    long getCompletedCount();
+
+    long getFailedCount();
+
+    long getRejectedCount();
+}
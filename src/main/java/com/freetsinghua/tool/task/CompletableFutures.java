@@ -0,0 +1,153 @@
+package com.freetsinghua.tool.task;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.cache.TimingWheel;
+import com.freetsinghua.tool.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link CompletableFuture}的辅助方法，补充Java 8中缺少的超时和汇总操作
+ *
+ * <p>超时由{@link TimingWheel#getDefault()}计时，精度为10毫秒。tick线程只把超时转交给执行器，
+ * 以{@link TimeoutException}完成、取消产生结果的任务以及其后的非async阶段都在这个执行器中执行，
+ * 默认和{@link CompletableFuture}的async方法一样使用{@link ForkJoinPool#commonPool()}；执行器拒绝时才在tick线程中完成
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+public abstract class CompletableFutures {
+
+    /**
+     * 在超时之后以{@link TimeoutException}完成{@code future}，它提前完成时会取消计时
+     *
+     * @param future 要限制时间的future
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @return 传入的{@code future}
+     */
+    public static <T> CompletableFuture<T> orTimeout(
+            CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        return orTimeout(future, timeout, unit, null);
+    }
+
+    /**
+     * 在超时之后以{@link TimeoutException}完成{@code future}，并取消产生结果的任务{@code source}
+     *
+     * @param future 要限制时间的future
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @param source 超时后要取消（并中断）的任务，可以为{@code null}
+     * @return 传入的{@code future}
+     */
+    public static <T> CompletableFuture<T> orTimeout(
+            CompletableFuture<T> future, long timeout, TimeUnit unit, @Nullable Future<?> source) {
+        return orTimeout(future, timeout, unit, source, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 在超时之后以{@link TimeoutException}完成{@code future}，并取消产生结果的任务{@code source}
+     *
+     * @param future 要限制时间的future
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @param source 超时后要取消（并中断）的任务，可以为{@code null}
+     * @param executor 超时后完成{@code future}、取消{@code source}的执行器，其后的非async阶段也在其中执行
+     * @return 传入的{@code future}
+     */
+    public static <T> CompletableFuture<T> orTimeout(
+            CompletableFuture<T> future,
+            long timeout,
+            TimeUnit unit,
+            @Nullable Future<?> source,
+            Executor executor) {
+        Assert.notNull(future, "future must not be null");
+        Assert.notNull(unit, "unit must not be null");
+        Assert.notNull(executor, "executor must not be null");
+        if (future.isDone()) {
+            return future;
+        }
+
+        Runnable timeoutTask =
+                () -> {
+                    if (future.completeExceptionally(
+                                    new TimeoutException("Timed out after " + timeout + " " + unit))
+                            && source != null) {
+                        source.cancel(true);
+                    }
+                };
+        TimingWheel.Timeout timer =
+                TimingWheel.getDefault()
+                        .newTimeout(
+                                () -> {
+                                    if (future.isDone()) {
+                                        return;
+                                    }
+                                    try {
+                                        executor.execute(timeoutTask);
+                                    } catch (RejectedExecutionException e) {
+                                        // 宁可在tick线程中完成，也不能让future永远不超时
+                                        timeoutTask.run();
+                                    }
+                                },
+                                timeout,
+                                unit);
+        future.whenComplete((result, ex) -> timer.cancel());
+        return future;
+    }
+
+    /**
+     * 所有{@code futures}都成功后，以按原顺序排列的结果完成；任意一个失败时，以它的异常完成，不等待其他future
+     *
+     * @param futures 要汇总的future
+     * @return 汇总的结果
+     */
+    public static <T> CompletableFuture<List<T>> allOf(
+            Collection<? extends CompletableFuture<? extends T>> futures) {
+        Assert.notNull(futures, "futures must not be null");
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CompletableFuture<? extends T>[] array = futures.toArray(new CompletableFuture[0]);
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+
+        for (CompletableFuture<? extends T> future : array) {
+            future.whenComplete(
+                    (value, ex) -> {
+                        if (ex != null) {
+                            result.completeExceptionally(ex);
+                        }
+                    });
+        }
+        CompletableFuture.allOf(array)
+                .thenRun(
+                        () -> {
+                            List<T> values = new ArrayList<>(array.length);
+                            for (CompletableFuture<? extends T> future : array) {
+                                values.add(future.join());
+                            }
+                            result.complete(values);
+                        });
+        return result;
+    }
+
+    /**
+     * 以给定异常完成的future，Java 9之前{@link CompletableFuture}没有提供这个方法
+     *
+     * @param ex 异常
+     * @return 已经失败的future
+     */
+    public static <T> CompletableFuture<T> failedFuture(Throwable ex) {
+        Assert.notNull(ex, "ex must not be null");
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+}
@@ -34,6 +34,8 @@ public class ConcurrentTaskExecutor implements AsyncListenableTaskExecutor, Sche
 
 	private Executor currentExecutor;
 	private TaskExecutorAdapter adapterExecutor;
+	@Nullable
+	private TaskDecorator taskDecorator;
 
 	public ConcurrentTaskExecutor() {
 		this.currentExecutor = Executors.newSingleThreadExecutor();
@@ -50,12 +52,28 @@ public class ConcurrentTaskExecutor implements AsyncListenableTaskExecutor, Sche
 		this.adapterExecutor = getAdapterExecutor(this.currentExecutor);
 	}
 
+	/**
+	 * 设置任务装饰器，对之后提交的所有任务生效，例如用{@link TaskMetrics}收集指标
+	 *
+	 * @param taskDecorator 装饰器
+	 */
+	public final void setTaskDecorator(TaskDecorator taskDecorator) {
+		this.taskDecorator = taskDecorator;
+		this.adapterExecutor.setTaskDecorator(taskDecorator);
+	}
+
 	private TaskExecutorAdapter getAdapterExecutor(Executor executor) {
+		TaskExecutorAdapter adapter;
 		if (managedExecutorServiceClass != null && managedExecutorServiceClass.isInstance(executor)) {
-			return new ManagedTaskExecutorAdapter(executor);
+			adapter = new ManagedTaskExecutorAdapter(executor);
+		} else {
+			adapter = new TaskExecutorAdapter(executor);
 		}
 
-		return new TaskExecutorAdapter(executor);
+		if (this.taskDecorator != null) {
+			adapter.setTaskDecorator(this.taskDecorator);
+		}
+		return adapter;
 	}
 
 	@Override
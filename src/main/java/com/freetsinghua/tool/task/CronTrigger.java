@@ -0,0 +1,325 @@
+package com.freetsinghua.tool.task;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.Assert;
+
+/**
+ * cron表达式{@link Trigger}
+ *
+ * <p>表达式由6个以空格分隔的字段组成：秒 分 时 日 月 周，例如{@code "0 0/15 9-17 * * MON-FRI"}
+ * <li>每个字段支持{@code *}、数值、范围{@code a-b}、列表{@code a,b}、步长{@code *}{@code /n}、{@code a/n}和{@code a-b/n}
+ * <li>日和周字段可以用{@code ?}表示不限制；月份和星期支持英文缩写，周字段中0和7都表示星期日
+ * <li>日和周同时限制时，两个条件都要满足
+ * <li>不支持{@code L}、{@code W}和{@code #}
+ *
+ * <p>解析后每个字段保存为一个{@code long}位图，计算下一次执行时间时用位扫描直接跳到下一个满足条件的值，
+ * 而不是逐秒或逐分钟尝试。时间按给定的时区计算，夏令时跳过的时刻顺延到跳变之后
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+public class CronTrigger implements Trigger {
+	private static final String[] MONTH_NAMES = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT",
+			"NOV", "DEC"};
+	private static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+	/** 找不到满足条件的时间时最多向后搜索的年数，例如{@code "0 0 0 30 2 ?"}永远不会触发 */
+	private static final int MAX_YEARS_AHEAD = 4;
+
+	private final String expression;
+	private final ZoneId zoneId;
+
+	/** 第i位表示值i是否满足条件 */
+	private final long seconds;
+	private final long minutes;
+	private final long hours;
+	private final long daysOfMonth;
+	private final long months;
+	private final long daysOfWeek;
+
+	public CronTrigger(String expression) {
+		this(expression, ZoneId.systemDefault());
+	}
+
+	public CronTrigger(String expression, TimeZone timeZone) {
+		this(expression, timeZone.toZoneId());
+	}
+
+	/**
+	 * @param expression cron表达式
+	 * @param zoneId     计算执行时间使用的时区
+	 * @throws IllegalArgumentException 如果表达式不合法
+	 */
+	public CronTrigger(String expression, ZoneId zoneId) {
+		Assert.notNull(expression, "expression must not be null");
+		Assert.notNull(zoneId, "zoneId must not be null");
+		String[] fields = expression.trim().split("\\s+");
+		if (fields.length != 6) {
+			throw new IllegalArgumentException(
+					"Cron expression must consist of 6 fields (found " + fields.length + " in \"" + expression + "\")");
+		}
+
+		this.expression = expression;
+		this.zoneId = zoneId;
+		this.seconds = parseField(fields[0], 0, 59, null);
+		this.minutes = parseField(fields[1], 0, 59, null);
+		this.hours = parseField(fields[2], 0, 23, null);
+		this.daysOfMonth = parseField(fields[3], 1, 31, null);
+		this.months = parseField(fields[4], 1, 12, MONTH_NAMES);
+		long dow = parseField(fields[5], 0, 7, DAY_NAMES);
+		// 7和0都表示星期日
+		this.daysOfWeek = (dow | (dow >>> 7)) & 0x7FL;
+	}
+
+	/**
+	 * 和其他{@link Trigger}实现一样，从上一次完成的时刻开始计算，如果上一次计划的时刻更晚则从计划的时刻开始，
+	 * 第一次执行从当前时刻开始
+	 */
+	@Nullable
+	@Override
+	public Date nextExecutionTime(TriggerContext triggerContext) {
+		Date date = triggerContext.lastCompletionTime();
+		if (date != null) {
+			Date scheduled = triggerContext.lastScheduledExecutionTime();
+			if (scheduled != null && date.before(scheduled)) {
+				date = scheduled;
+			}
+		} else {
+			date = new Date();
+		}
+		return next(date);
+	}
+
+	/**
+	 * 返回严格晚于{@code date}的下一个满足表达式的时刻
+	 *
+	 * @param date 起始时刻
+	 * @return 结果，在{@value #MAX_YEARS_AHEAD}年内没有满足条件的时刻时返回{@code null}
+	 */
+	@Nullable
+	public Date next(Date date) {
+		ZonedDateTime from = date.toInstant().atZone(this.zoneId);
+		LocalDateTime candidate = from.toLocalDateTime().truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+		int maxYear = candidate.getYear() + MAX_YEARS_AHEAD;
+
+		while (candidate != null) {
+			candidate = nextLocal(candidate, maxYear);
+			if (candidate == null) {
+				return null;
+			}
+
+			ZonedDateTime resolved = candidate.atZone(this.zoneId);
+			// 夏令时回拨时同一个本地时间出现两次，只接受晚于起始时刻的那一次
+			if (resolved.isAfter(from)) {
+				return Date.from(resolved.toInstant());
+			}
+			candidate = candidate.plusSeconds(1);
+		}
+		return null;
+	}
+
+	/**
+	 * 返回不早于{@code t}的第一个满足所有字段的本地时间
+	 */
+	@Nullable
+	private LocalDateTime nextLocal(LocalDateTime t, int maxYear) {
+		while (t.getYear() <= maxYear) {
+			int month = nextSetBit(this.months, t.getMonthValue());
+			if (month < 0) {
+				t = LocalDateTime.of(t.getYear() + 1, 1, 1, 0, 0);
+				continue;
+			}
+			if (month != t.getMonthValue()) {
+				t = LocalDateTime.of(t.getYear(), month, 1, 0, 0);
+			}
+
+			int day = nextSetBit(this.daysOfMonth, t.getDayOfMonth());
+			if (day < 0 || day > t.toLocalDate().lengthOfMonth()) {
+				t = t.withDayOfMonth(1).plusMonths(1).truncatedTo(ChronoUnit.DAYS);
+				continue;
+			}
+			if (day != t.getDayOfMonth()) {
+				t = t.withDayOfMonth(day).truncatedTo(ChronoUnit.DAYS);
+			}
+			if (!isSet(this.daysOfWeek, dayOfWeekBit(t.getDayOfWeek()))) {
+				t = t.plusDays(1).truncatedTo(ChronoUnit.DAYS);
+				continue;
+			}
+
+			int hour = nextSetBit(this.hours, t.getHour());
+			if (hour < 0) {
+				t = t.plusDays(1).truncatedTo(ChronoUnit.DAYS);
+				continue;
+			}
+			if (hour != t.getHour()) {
+				t = t.withHour(hour).truncatedTo(ChronoUnit.HOURS);
+			}
+
+			int minute = nextSetBit(this.minutes, t.getMinute());
+			if (minute < 0) {
+				t = t.plusHours(1).truncatedTo(ChronoUnit.HOURS);
+				continue;
+			}
+			if (minute != t.getMinute()) {
+				t = t.withMinute(minute).truncatedTo(ChronoUnit.MINUTES);
+			}
+
+			int second = nextSetBit(this.seconds, t.getSecond());
+			if (second < 0) {
+				t = t.plusMinutes(1).truncatedTo(ChronoUnit.MINUTES);
+				continue;
+			}
+			return t.withSecond(second);
+		}
+		return null;
+	}
+
+	private static int dayOfWeekBit(DayOfWeek dayOfWeek) {
+		// DayOfWeek中星期一为1、星期日为7，位图中星期日为0
+		return dayOfWeek.getValue() % 7;
+	}
+
+	private static boolean isSet(long bits, int index) {
+		return (bits & (1L << index)) != 0L;
+	}
+
+	/**
+	 * 返回不小于{@code from}的第一个被设置的位，不存在时返回-1
+	 */
+	private static int nextSetBit(long bits, int from) {
+		if (from >= Long.SIZE) {
+			return -1;
+		}
+		long remaining = bits & (-1L << from);
+		return remaining == 0L ? -1 : Long.numberOfTrailingZeros(remaining);
+	}
+
+	private long parseField(String field, int min, int max, @Nullable String[] names) {
+		if ("?".equals(field)) {
+			// 只有日（1-31）和周字段允许使用'?'
+			if (names != DAY_NAMES && max != 31) {
+				throw new IllegalArgumentException("'?' is only allowed for day-of-month and day-of-week fields in \""
+						+ this.expression + "\"");
+			}
+			return bitRange(min, max, 1);
+		}
+
+		long bits = 0L;
+		for (String part : field.split(",")) {
+			bits |= parsePart(part, min, max, names);
+		}
+		return bits;
+	}
+
+	private long parsePart(String part, int min, int max, @Nullable String[] names) {
+		int step = 1;
+		String range = part;
+		int slash = part.indexOf('/');
+		if (slash >= 0) {
+			range = part.substring(0, slash);
+			step = parseNumber(part.substring(slash + 1), 1, max, null);
+		}
+
+		int start;
+		int end;
+		if ("*".equals(range)) {
+			start = min;
+			end = max;
+		} else {
+			int dash = range.indexOf('-');
+			if (dash >= 0) {
+				start = parseNumber(range.substring(0, dash), min, max, names);
+				end = parseNumber(range.substring(dash + 1), min, max, names);
+				if (start > end) {
+					throw new IllegalArgumentException(
+							"Invalid range '" + range + "' in cron expression \"" + this.expression + "\"");
+				}
+			} else {
+				start = parseNumber(range, min, max, names);
+				// "a/n"表示从a开始直到最大值
+				end = slash >= 0 ? max : start;
+			}
+		}
+		return bitRange(start, end, step);
+	}
+
+	private int parseNumber(String value, int min, int max, @Nullable String[] names) {
+		if (names != null) {
+			String upper = value.toUpperCase(Locale.ROOT);
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equals(upper)) {
+					// 月份从1开始，星期从0开始
+					return names == MONTH_NAMES ? i + 1 : i;
+				}
+			}
+		}
+
+		int number;
+		try {
+			number = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(
+					"Invalid value '" + value + "' in cron expression \"" + this.expression + "\"", e);
+		}
+		if (number < min || number > max) {
+			throw new IllegalArgumentException("Value " + number + " out of range [" + min + ", " + max
+					+ "] in cron expression \"" + this.expression + "\"");
+		}
+		return number;
+	}
+
+	private static long bitRange(int start, int end, int step) {
+		long bits = 0L;
+		for (int i = start; i <= end; i += step) {
+			bits |= 1L << i;
+		}
+		return bits;
+	}
+
+	public String getExpression() {
+		return this.expression;
+	}
+
+	public ZoneId getZoneId() {
+		return this.zoneId;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof CronTrigger)) {
+			return false;
+		}
+		CronTrigger that = (CronTrigger) other;
+		return this.seconds == that.seconds && this.minutes == that.minutes && this.hours == that.hours
+				&& this.daysOfMonth == that.daysOfMonth && this.months == that.months
+				&& this.daysOfWeek == that.daysOfWeek && this.zoneId.equals(that.zoneId);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = Long.hashCode(this.seconds);
+		result = 31 * result + Long.hashCode(this.minutes);
+		result = 31 * result + Long.hashCode(this.hours);
+		result = 31 * result + Long.hashCode(this.daysOfMonth);
+		result = 31 * result + Long.hashCode(this.months);
+		result = 31 * result + Long.hashCode(this.daysOfWeek);
+		return 31 * result + this.zoneId.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.expression + " [" + this.zoneId + "]";
+	}
+}
@@ -0,0 +1,427 @@
+package com.freetsinghua.tool.task;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import com.freetsinghua.tool.anotation.NotNull;
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.Assert;
+import com.freetsinghua.tool.util.LatencyHistogram;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按优先级和截止时间排序的有界任务队列，用作{@link java.util.concurrent.ThreadPoolExecutor}的工作队列
+ *
+ * <li>实现了{@link PrioritizedTask}的任务按优先级从高到低出队，同一优先级按截止时间从早到晚（EDF），
+ *     其余按入队顺序；没有实现{@link PrioritizedTask}的任务使用默认优先级，没有截止时间
+ * <li>工作线程取任务时，已经超过截止时间的任务不会被返回，而是交给过期处理器，并计入{@link #getExpiredCount()}；
+ *     队列已满时会先清理所有过期的任务再决定是否拒绝
+ * <li>所有操作由一把锁保护，出队是O(log n)
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+@Slf4j
+public class DeadlineTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+	private final int capacity;
+	private final Consumer<Runnable> expiredTaskHandler;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = this.lock.newCondition();
+	private final Condition notFull = this.lock.newCondition();
+	/** 以下字段由{@link #lock}保护 */
+	private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+	private long sequence;
+
+	private final LongAdder expired = new LongAdder();
+	private final LatencyHistogram lateness = new LatencyHistogram();
+
+	/**
+	 * @param capacity           容量
+	 * @param expiredTaskHandler 处理过期任务，在取任务的工作线程中调用，不持有队列的锁
+	 */
+	public DeadlineTaskQueue(int capacity, Consumer<Runnable> expiredTaskHandler) {
+		Assert.isTrue(capacity > 0, "capacity must be positive");
+		Assert.notNull(expiredTaskHandler, "expiredTaskHandler must not be null");
+		this.capacity = capacity;
+		this.expiredTaskHandler = expiredTaskHandler;
+	}
+
+	/**
+	 * 返回因为超过截止时间而被丢弃的任务数
+	 */
+	public long getExpiredCount() {
+		return this.expired.sum();
+	}
+
+	/**
+	 * 返回被丢弃的任务在丢弃时超过截止时间多久，单位纳秒（精度为毫秒）
+	 */
+	public LatencyHistogram.Snapshot getLateness() {
+		return this.lateness.snapshot();
+	}
+
+	@Override
+	public boolean offer(@NotNull Runnable task) {
+		Assert.notNull(task, "task must not be null");
+		List<Entry> expiredEntries = null;
+		boolean offered;
+		this.lock.lock();
+		try {
+			if (this.queue.size() >= this.capacity) {
+				expiredEntries = purgeExpired(System.currentTimeMillis());
+			}
+			offered = enqueue(task);
+		} finally {
+			this.lock.unlock();
+		}
+		handleExpired(expiredEntries);
+		return offered;
+	}
+
+	@Override
+	public boolean offer(Runnable task, long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+		Assert.notNull(task, "task must not be null");
+		long nanos = unit.toNanos(timeout);
+		List<Entry> expiredEntries = null;
+		boolean offered;
+		this.lock.lockInterruptibly();
+		try {
+			if (this.queue.size() >= this.capacity) {
+				expiredEntries = purgeExpired(System.currentTimeMillis());
+			}
+			while (!(offered = enqueue(task)) && nanos > 0L) {
+				nanos = this.notFull.awaitNanos(nanos);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		handleExpired(expiredEntries);
+		return offered;
+	}
+
+	@Override
+	public void put(@NotNull Runnable task) throws InterruptedException {
+		Assert.notNull(task, "task must not be null");
+		this.lock.lockInterruptibly();
+		try {
+			while (!enqueue(task)) {
+				this.notFull.await();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Nullable
+	@Override
+	public Runnable poll() {
+		List<Entry> expiredEntries = new ArrayList<>(0);
+		Runnable task;
+		this.lock.lock();
+		try {
+			task = dequeue(System.currentTimeMillis(), expiredEntries);
+		} finally {
+			this.lock.unlock();
+		}
+		handleExpired(expiredEntries);
+		return task;
+	}
+
+	@Nullable
+	@Override
+	public Runnable poll(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final long deadline = System.nanoTime() + nanos;
+		List<Entry> expiredEntries = new ArrayList<>(0);
+		for (; ; ) {
+			Runnable task;
+			this.lock.lockInterruptibly();
+			try {
+				// 与take()相同，取出了过期任务时先去处理，再继续等待剩余的时间
+				while ((task = dequeue(System.currentTimeMillis(), expiredEntries)) == null
+						&& expiredEntries.isEmpty() && nanos > 0L) {
+					nanos = this.notEmpty.awaitNanos(nanos);
+				}
+			} finally {
+				this.lock.unlock();
+			}
+			handleExpired(expiredEntries);
+			if (task != null || expiredEntries.isEmpty()) {
+				return task;
+			}
+			expiredEntries.clear();
+			nanos = deadline - System.nanoTime();
+		}
+	}
+
+	@NotNull
+	@Override
+	public Runnable take() throws InterruptedException {
+		List<Entry> expiredEntries = new ArrayList<>(0);
+		for (; ; ) {
+			Runnable task;
+			this.lock.lockInterruptibly();
+			try {
+				// 取出了过期任务时先去处理，不让它们等到下一个任务到来
+				while ((task = dequeue(System.currentTimeMillis(), expiredEntries)) == null
+						&& expiredEntries.isEmpty()) {
+					this.notEmpty.await();
+				}
+			} finally {
+				this.lock.unlock();
+			}
+			handleExpired(expiredEntries);
+			if (task != null) {
+				return task;
+			}
+			expiredEntries.clear();
+		}
+	}
+
+	@Nullable
+	@Override
+	public Runnable peek() {
+		this.lock.lock();
+		try {
+			Entry head = this.queue.peek();
+			return head != null ? head.task : null;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.queue.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		this.lock.lock();
+		try {
+			return this.capacity - this.queue.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (o == null) {
+			return false;
+		}
+		this.lock.lock();
+		try {
+			for (Iterator<Entry> it = this.queue.iterator(); it.hasNext(); ) {
+				if (o.equals(it.next().task)) {
+					it.remove();
+					this.notFull.signal();
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(@NotNull Collection<? super Runnable> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * 按出队顺序取出任务，包括已经过期的任务
+	 */
+	@Override
+	public int drainTo(@NotNull Collection<? super Runnable> c, int maxElements) {
+		Assert.notNull(c, "collection must not be null");
+		Assert.isTrue(c != this, "collection must not be this queue");
+		this.lock.lock();
+		try {
+			int n = 0;
+			Entry entry;
+			while (n < maxElements && (entry = this.queue.poll()) != null) {
+				c.add(entry.task);
+				n++;
+			}
+			if (n > 0) {
+				this.notFull.signalAll();
+			}
+			return n;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * 返回当前任务的快照，不保证顺序，通过迭代器删除会从队列中删除对应的任务
+	 */
+	@NotNull
+	@Override
+	public Iterator<Runnable> iterator() {
+		List<Runnable> snapshot;
+		this.lock.lock();
+		try {
+			snapshot = new ArrayList<>(this.queue.size());
+			for (Entry entry : this.queue) {
+				snapshot.add(entry.task);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return new Itr(snapshot);
+	}
+
+	/**
+	 * 必须在持有{@link #lock}时调用
+	 */
+	private boolean enqueue(Runnable task) {
+		if (this.queue.size() >= this.capacity) {
+			return false;
+		}
+		int priority = PrioritizedTask.DEFAULT_PRIORITY;
+		long deadline = PrioritizedTask.NO_DEADLINE;
+		if (task instanceof PrioritizedTask) {
+			priority = ((PrioritizedTask) task).getPriority();
+			deadline = ((PrioritizedTask) task).getDeadline();
+		}
+		this.queue.add(new Entry(task, priority, deadline, this.sequence++));
+		this.notEmpty.signal();
+		return true;
+	}
+
+	/**
+	 * 取出第一个没有过期的任务，途中遇到的过期任务放入{@code expiredEntries}；必须在持有{@link #lock}时调用
+	 */
+	@Nullable
+	private Runnable dequeue(long now, List<Entry> expiredEntries) {
+		Entry entry;
+		while ((entry = this.queue.poll()) != null) {
+			this.notFull.signal();
+			if (entry.deadline < now) {
+				entry.lateMillis = now - entry.deadline;
+				expiredEntries.add(entry);
+				continue;
+			}
+			return entry.task;
+		}
+		return null;
+	}
+
+	/**
+	 * 删除所有过期的任务；必须在持有{@link #lock}时调用
+	 */
+	@Nullable
+	private List<Entry> purgeExpired(long now) {
+		List<Entry> expiredEntries = null;
+		for (Iterator<Entry> it = this.queue.iterator(); it.hasNext(); ) {
+			Entry entry = it.next();
+			if (entry.deadline < now) {
+				it.remove();
+				entry.lateMillis = now - entry.deadline;
+				if (expiredEntries == null) {
+					expiredEntries = new ArrayList<>();
+				}
+				expiredEntries.add(entry);
+			}
+		}
+		if (expiredEntries != null) {
+			this.notFull.signalAll();
+		}
+		return expiredEntries;
+	}
+
+	private void handleExpired(@Nullable List<Entry> expiredEntries) {
+		if (expiredEntries == null || expiredEntries.isEmpty()) {
+			return;
+		}
+		for (Entry entry : expiredEntries) {
+			this.expired.increment();
+			this.lateness.record(TimeUnit.MILLISECONDS.toNanos(entry.lateMillis));
+			try {
+				this.expiredTaskHandler.accept(entry.task);
+			} catch (RuntimeException e) {
+				if (log.isWarnEnabled()) {
+					log.warn("Failed to handle expired task {}", entry.task, e);
+				}
+			}
+		}
+	}
+
+	private static final class Entry implements Comparable<Entry> {
+		private final Runnable task;
+		private final int priority;
+		private final long deadline;
+		private final long sequence;
+		/** 出队时超过截止时间的毫秒数 */
+		private long lateMillis;
+
+		Entry(Runnable task, int priority, long deadline, long sequence) {
+			this.task = task;
+			this.priority = priority;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (this.priority != other.priority) {
+				return this.priority > other.priority ? -1 : 1;
+			}
+			if (this.deadline != other.deadline) {
+				return this.deadline < other.deadline ? -1 : 1;
+			}
+			return Long.compare(this.sequence, other.sequence);
+		}
+	}
+
+	private final class Itr implements Iterator<Runnable> {
+		private final List<Runnable> snapshot;
+		private int cursor;
+		@Nullable
+		private Runnable last;
+
+		Itr(List<Runnable> snapshot) {
+			this.snapshot = snapshot;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.cursor < this.snapshot.size();
+		}
+
+		@Override
+		public Runnable next() {
+			if (this.cursor >= this.snapshot.size()) {
+				throw new NoSuchElementException();
+			}
+			this.last = this.snapshot.get(this.cursor++);
+			return this.last;
+		}
+
+		@Override
+		public void remove() {
+			Assert.state(this.last != null, "next() has not been called");
+			DeadlineTaskQueue.this.remove(this.last);
+			this.last = null;
+		}
+	}
+}
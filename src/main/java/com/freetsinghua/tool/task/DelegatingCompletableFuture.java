@@ -2,10 +2,17 @@ package com.freetsinghua.tool.task;
 
 import com.freetsinghua.tool.util.Assert;
 
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 /**
+ * 以{@link Future}为来源的{@link CompletableFuture}，取消时同时取消来源
+ *
+ * <li>来源是{@link ListenableFuture}时，通过回调在来源完成时完成，不需要轮询
+ * <li>来源是已经完成的普通{@link Future}时，立即复制它的结果；来源是未完成的普通{@link Future}时，需要由调用方完成
+ *
  * @author z.tsinghua
  * @date 2019/1/28
  */
@@ -16,6 +23,33 @@ public class DelegatingCompletableFuture<T> extends CompletableFuture<T> {
     public DelegatingCompletableFuture(Future<T> delegate) {
         Assert.notNull(delegate, "Delegate must not be null");
         this.delegate = delegate;
+
+        if (delegate instanceof ListenableFuture) {
+            ((ListenableFuture<T>) delegate).addCallback(this::complete, this::completeFrom);
+        } else if (delegate.isDone()) {
+            copyResult(delegate);
+        }
+    }
+
+    private void completeFrom(Throwable ex) {
+        if (ex instanceof CancellationException || this.delegate.isCancelled()) {
+            super.cancel(false);
+        } else {
+            completeExceptionally(ex);
+        }
+    }
+
+    private void copyResult(Future<T> future) {
+        try {
+            complete(future.get());
+        } catch (CancellationException e) {
+            super.cancel(false);
+        } catch (ExecutionException e) {
+            completeExceptionally(e.getCause() != null ? e.getCause() : e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            completeExceptionally(e);
+        }
     }
 
     @Override
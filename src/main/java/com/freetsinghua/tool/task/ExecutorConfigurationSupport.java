@@ -74,9 +74,7 @@ public abstract class ExecutorConfigurationSupport extends CustomizableThreadFac
 				this.executor.shutdown();
 			} else {
 				for (Runnable runnable : this.executor.shutdownNow()) {
-					if (runnable instanceof Future) {
-						((Future) runnable).cancel(true);
-					}
+					cancelRemainingTask(runnable);
 				}
 			}
 			awaitTerminationIfNecessary(this.executor);
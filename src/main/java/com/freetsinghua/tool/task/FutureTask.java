@@ -1,5 +1,7 @@
 package com.freetsinghua.tool.task;
 
+import com.freetsinghua.tool.util.UnsafeUtils;
+
 import sun.misc.Unsafe;
 
 import java.util.concurrent.*;
@@ -73,7 +75,7 @@ public class FutureTask<V> implements RunnableFuture<V> {
     public void run() {
 
         if (this.state != NEW
-                && !UNSAFE.compareAndSwapObject(
+                || !UNSAFE.compareAndSwapObject(
                         this, RUNNER_OFF_SET, null, Thread.currentThread())) {
             return;
         }
@@ -115,7 +117,7 @@ public class FutureTask<V> implements RunnableFuture<V> {
      */
     protected boolean runAndSet() {
         if (this.state != NEW
-                && !UNSAFE.compareAndSwapObject(
+                || !UNSAFE.compareAndSwapObject(
                         this, RUNNER_OFF_SET, null, Thread.currentThread())) {
             return false;
         }
@@ -233,7 +235,7 @@ public class FutureTask<V> implements RunnableFuture<V> {
         int s = this.state;
 
         if (s <= COMPLETING) {
-            awaitDone(false, 0L);
+            s = awaitDone(false, 0L);
         }
 
         return report(s);
@@ -281,9 +283,8 @@ public class FutureTask<V> implements RunnableFuture<V> {
             if (s > COMPLETING) {
                 if (q != null) {
                     q.thread = null;
-
-                    return s;
                 }
+                return s;
             } else if (s == COMPLETING) {
                 Thread.yield();
             } else if (q == null) {
@@ -332,7 +333,7 @@ public class FutureTask<V> implements RunnableFuture<V> {
      * @param v 值
      */
     protected void set(V v) {
-        if (UNSAFE.compareAndSwapObject(this, STATE_OFF_SET, NEW, COMPLETING)) {
+        if (UNSAFE.compareAndSwapInt(this, STATE_OFF_SET, NEW, COMPLETING)) {
             outCome = v;
             UNSAFE.putOrderedInt(this, STATE_OFF_SET, NORMAL);
             finishCompletion();
@@ -360,7 +361,11 @@ public class FutureTask<V> implements RunnableFuture<V> {
 
     static {
         try {
-            UNSAFE = Unsafe.getUnsafe();
+            // Unsafe.getUnsafe()只允许引导类加载器加载的类调用
+            UNSAFE = UnsafeUtils.getUnsafeInstance();
+            if (UNSAFE == null) {
+                throw new Error("Unable to obtain sun.misc.Unsafe");
+            }
 
             Class<?> clazz = FutureTask.class;
             STATE_OFF_SET = UNSAFE.objectFieldOffset(clazz.getDeclaredField("state"));
@@ -17,10 +17,8 @@ public interface ListenableFuture<T> extends Future<T> {
     /** 注册给定的回调 */
     void addCallback(SuccessCallback<? super T> successCallback, FailureCallback failureCallback);
 
-    /** 暴露{@link ListenableFuture} */
+    /** 暴露为{@link CompletableFuture}，在此future完成时完成，取消它时也会取消此future */
     default CompletableFuture<T> completable() {
-        CompletableFuture<T> completableFuture = new DelegatingCompletableFuture<>(this);
-        addCallback(completableFuture::complete, completableFuture::completeExceptionally);
-        return completableFuture;
+        return new DelegatingCompletableFuture<>(this);
     }
 }
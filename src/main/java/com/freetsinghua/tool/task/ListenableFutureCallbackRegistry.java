@@ -3,136 +3,150 @@ package com.freetsinghua.tool.task;
 import com.freetsinghua.tool.anotation.Nullable;
 import com.freetsinghua.tool.util.Assert;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * 管理{@link SuccessCallback} 和 {@link FailureCallback}
  *
+ * <li>未完成时，回调保存在一个通过CAS压入的无锁栈中，每次注册只分配一个节点
+ * <li>完成是一次CAS，把栈替换为最终结果，之后不再接受新节点；只有第一次{@link #success(Object)}或{@link #failure(Throwable)}生效
+ * <li>完成的线程在不持有任何锁的情况下按注册顺序调用取出的回调；完成之后注册的回调在注册的线程中立即调用
+ * <li>与结果不对应的回调（例如失败之后注册的{@link SuccessCallback}）会被忽略
+ *
  * @author z.tsinghua
  * @date 2019/1/29
  */
 public class ListenableFutureCallbackRegistry<T> {
-    private final Queue<SuccessCallback<? super T>> successCallbacks = new LinkedList<>();
-    private final Queue<FailureCallback> failureCallbacks = new LinkedList<>();
-
-    private State state = State.NEW;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ListenableFutureCallbackRegistry, Object>
+            STATE_UPDATER =
+                    AtomicReferenceFieldUpdater.newUpdater(
+                            ListenableFutureCallbackRegistry.class, Object.class, "state");
 
-    @Nullable private Object result;
-
-    private final Object mutex = new Object();
+    /** {@code null}或{@link Node}表示尚未完成，{@link Outcome}表示已经完成 */
+    @Nullable private volatile Object state;
 
     public void addCallback(ListenableFutureCallback<? super T> callback) {
         Assert.notNull(callback, "'callback' must not be null");
-
-        synchronized (this.mutex) {
-            switch (state) {
-                case NEW:
-                    {
-                        this.successCallbacks.add(callback);
-                        this.failureCallbacks.add(callback);
-                        break;
-                    }
-                case SUCCESS:
-                    {
-                        notifySuccess(callback);
-                        break;
-                    }
-                case FAILURE:
-                    {
-                        notifyFailure(callback);
-                        break;
-                    }
-                default:
-                    throw new UnsupportedOperationException();
-            }
-        }
+        push(callback, callback);
     }
 
-    private void notifyFailure(FailureCallback callback) {
-        Assert.isTrue(
-                this.result instanceof Throwable, "no Throwable result set for failure state");
-        try {
-            callback.onFailure((Throwable) this.result);
-        } catch (Throwable ex) {
-            // 忽略
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    private void notifySuccess(SuccessCallback<? super T> callback) {
-        try {
-            callback.onSuccess((T) this.result);
-        } catch (Throwable ex) {
-            // 忽略
-        }
+    /** 注册一对回调，只占用一个节点 */
+    public void addCallback(
+            SuccessCallback<? super T> successCallback, FailureCallback failureCallback) {
+        Assert.notNull(successCallback, "'successCallback' must not be null");
+        Assert.notNull(failureCallback, "'failureCallback' must not be null");
+        push(successCallback, failureCallback);
     }
 
     public void addFailureCallback(FailureCallback failureCallback) {
         Assert.notNull(failureCallback, "'failureCallback' must not be null");
-        synchronized (this.mutex) {
-            switch (this.state) {
-                case NEW:
-                    {
-                        this.failureCallbacks.add(failureCallback);
-                        break;
-                    }
-                case FAILURE:
-                    {
-                        notifyFailure(failureCallback);
-                        break;
-                    }
-                default:
-                    throw new UnsupportedOperationException();
-            }
-        }
+        push(null, failureCallback);
     }
 
     public void addSuccessCallback(SuccessCallback<? super T> successCallback) {
         Assert.notNull(successCallback, "'successCallback' must not be null");
-        synchronized (this.mutex) {
-            switch (this.state) {
-                case NEW:
-                    {
-                        this.successCallbacks.add(successCallback);
-                        break;
-                    }
-                case SUCCESS:
-                    {
-                        notifySuccess(successCallback);
-                        break;
-                    }
-                default:
-                    throw new UnsupportedOperationException();
+        push(successCallback, null);
+    }
+
+    public void success(@Nullable T result) {
+        complete(new Outcome(result, true));
+    }
+
+    public void failure(Throwable thx) {
+        complete(new Outcome(thx, false));
+    }
+
+    private void push(
+            @Nullable SuccessCallback<? super T> successCallback,
+            @Nullable FailureCallback failureCallback) {
+        Node<T> node = null;
+        for (; ; ) {
+            Object current = this.state;
+            if (current instanceof Outcome) {
+                invoke((Outcome) current, successCallback, failureCallback);
+                return;
+            }
+
+            if (node == null) {
+                node = new Node<>(successCallback, failureCallback);
+            }
+            node.next = castNode(current);
+            if (STATE_UPDATER.compareAndSet(this, current, node)) {
+                return;
             }
         }
     }
 
-    public void success(@Nullable T result) {
-        synchronized (this.mutex) {
-            this.state = State.SUCCESS;
-            this.result = result;
-            SuccessCallback<? super T> callback;
-            while ((callback = successCallbacks.poll()) != null) {
-                notifySuccess(callback);
+    private void complete(Outcome outcome) {
+        Object current;
+        do {
+            current = this.state;
+            if (current instanceof Outcome) {
+                // 已经完成
+                return;
             }
+        } while (!STATE_UPDATER.compareAndSet(this, current, outcome));
+
+        // 栈中的顺序与注册顺序相反，先反转再调用
+        Node<T> reversed = null;
+        Node<T> node = castNode(current);
+        while (node != null) {
+            Node<T> next = node.next;
+            node.next = reversed;
+            reversed = node;
+            node = next;
+        }
+        for (node = reversed; node != null; node = node.next) {
+            invoke(outcome, node.successCallback, node.failureCallback);
         }
     }
 
-    public void failure(Throwable thx) {
-        synchronized (this.mutex) {
-            this.state = State.FAILURE;
-            this.result = thx;
-            FailureCallback callback;
-            while ((callback = failureCallbacks.poll()) != null) {
-                notifyFailure(callback);
+    @SuppressWarnings("unchecked")
+    private void invoke(
+            Outcome outcome,
+            @Nullable SuccessCallback<? super T> successCallback,
+            @Nullable FailureCallback failureCallback) {
+        try {
+            if (outcome.success) {
+                if (successCallback != null) {
+                    successCallback.onSuccess((T) outcome.result);
+                }
+            } else if (failureCallback != null) {
+                failureCallback.onFailure((Throwable) outcome.result);
             }
+        } catch (Throwable ex) {
+            // 忽略
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T> castNode(@Nullable Object state) {
+        return (Node<T>) state;
+    }
+
+    private static final class Node<T> {
+        @Nullable final SuccessCallback<? super T> successCallback;
+        @Nullable final FailureCallback failureCallback;
+        /** 压入时指向栈中的下一个节点，完成之后由完成的线程反转 */
+        @Nullable Node<T> next;
+
+        Node(
+                @Nullable SuccessCallback<? super T> successCallback,
+                @Nullable FailureCallback failureCallback) {
+            this.successCallback = successCallback;
+            this.failureCallback = failureCallback;
         }
     }
 
-    private enum State {
-        NEW,
-        SUCCESS,
-        FAILURE
+    private static final class Outcome {
+        @Nullable final Object result;
+        final boolean success;
+
+        Outcome(@Nullable Object result, boolean success) {
+            this.result = result;
+            this.success = success;
+        }
     }
 }
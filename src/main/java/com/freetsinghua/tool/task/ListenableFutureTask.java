@@ -3,7 +3,6 @@ package com.freetsinghua.tool.task;
 import com.freetsinghua.tool.anotation.Nullable;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -30,16 +29,7 @@ public class ListenableFutureTask<T> extends FutureTask<T> implements Listenable
     @Override
     public void addCallback(
             SuccessCallback<? super T> successCallback, FailureCallback failureCallback) {
-        this.registry.addSuccessCallback(successCallback);
-        this.registry.addFailureCallback(failureCallback);
-    }
-
-    @Override
-    public CompletableFuture<T> completable() {
-        CompletableFuture<T> completableFuture = new DelegatingCompletableFuture<>(this);
-        this.registry.addSuccessCallback(completableFuture::complete);
-        this.registry.addFailureCallback(completableFuture::completeExceptionally);
-        return completableFuture;
+        this.registry.addCallback(successCallback, failureCallback);
     }
 
     @Override
@@ -0,0 +1,62 @@
+package com.freetsinghua.tool.task;
+
+import com.freetsinghua.tool.util.Assert;
+
+/**
+ * 为普通的{@link Runnable}指定优先级和截止时间
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+public class PrioritizedRunnable implements Runnable, PrioritizedTask {
+    private final Runnable delegate;
+    private final int priority;
+    private final long deadline;
+
+    /**
+     * @param delegate 任务
+     * @param priority 优先级，数值越大越先执行
+     * @param deadline 截止时间，{@link System#currentTimeMillis()}的毫秒数
+     */
+    public PrioritizedRunnable(Runnable delegate, int priority, long deadline) {
+        Assert.notNull(delegate, "Delegate must not be null");
+        this.delegate = delegate;
+        this.priority = priority;
+        this.deadline = deadline;
+    }
+
+    /** 默认优先级，在{@code timeoutMillis}毫秒内开始执行，否则丢弃 */
+    public static PrioritizedRunnable withTimeout(Runnable delegate, long timeoutMillis) {
+        return new PrioritizedRunnable(
+                delegate, DEFAULT_PRIORITY, System.currentTimeMillis() + timeoutMillis);
+    }
+
+    /** 给定优先级，没有截止时间 */
+    public static PrioritizedRunnable withPriority(Runnable delegate, int priority) {
+        return new PrioritizedRunnable(delegate, priority, NO_DEADLINE);
+    }
+
+    public Runnable getDelegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public int getPriority() {
+        return this.priority;
+    }
+
+    @Override
+    public long getDeadline() {
+        return this.deadline;
+    }
+
+    @Override
+    public void run() {
+        this.delegate.run();
+    }
+
+    @Override
+    public String toString() {
+        return this.delegate + " [priority=" + this.priority + ", deadline=" + this.deadline + "]";
+    }
+}
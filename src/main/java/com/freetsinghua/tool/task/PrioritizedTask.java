@@ -0,0 +1,28 @@
+package com.freetsinghua.tool.task;
+
+/**
+ * 带有优先级和截止时间的任务，可以由{@link Runnable}或{@link java.util.concurrent.Callable}实现
+ *
+ * <p>在开启了优先级队列的{@link ThreadPoolTaskExecutor}中，优先级高的任务先执行，同一优先级按截止时间从早到晚执行；
+ * 开始执行前已经超过截止时间的任务会被丢弃
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ * @see ThreadPoolTaskExecutor#setPrioritizedQueue(boolean)
+ */
+public interface PrioritizedTask {
+
+    /** 没有实现此接口的任务使用的优先级 */
+    int DEFAULT_PRIORITY = 0;
+
+    /** 没有截止时间 */
+    long NO_DEADLINE = Long.MAX_VALUE;
+
+    /** 优先级，数值越大越先执行 */
+    int getPriority();
+
+    /** 截止时间，{@link System#currentTimeMillis()}的毫秒数，默认没有截止时间 */
+    default long getDeadline() {
+        return NO_DEADLINE;
+    }
+}
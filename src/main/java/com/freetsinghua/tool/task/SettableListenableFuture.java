@@ -0,0 +1,128 @@
+package com.freetsinghua.tool.task;
+
+import com.freetsinghua.tool.anotation.NotNull;
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.Assert;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 可以通过{@link #set(Object)}或{@link #setException(Throwable)}手动完成的{@link ListenableFuture}
+ *
+ * <p>结果只能设置一次，之后的设置和取消都不生效
+ *
+ * @author z.tsinghua
+ * @date 2019/3/6
+ */
+public class SettableListenableFuture<T> implements ListenableFuture<T> {
+    private static final Callable<Object> DUMMY_CALLABLE =
+            () -> {
+                throw new IllegalStateException("Should never be called");
+            };
+
+    private final SettableTask<T> settableTask = new SettableTask<>();
+
+    /**
+     * 设置结果
+     *
+     * @param value 结果
+     * @return 是否设置成功，已经完成或者已经取消时返回{@code false}
+     */
+    public boolean set(@Nullable T value) {
+        return this.settableTask.setResultValue(value);
+    }
+
+    /**
+     * 设置异常，{@link #get()}会抛出以它为原因的{@link ExecutionException}
+     *
+     * @param exception 异常
+     * @return 是否设置成功，已经完成或者已经取消时返回{@code false}
+     */
+    public boolean setException(Throwable exception) {
+        Assert.notNull(exception, "Exception must not be null");
+        return this.settableTask.setExceptionResult(exception);
+    }
+
+    @Override
+    public void addCallback(ListenableFutureCallback<? super T> callback) {
+        this.settableTask.addCallback(callback);
+    }
+
+    @Override
+    public void addCallback(
+            SuccessCallback<? super T> successCallback, FailureCallback failureCallback) {
+        this.settableTask.addCallback(successCallback, failureCallback);
+    }
+
+    @Override
+    public CompletableFuture<T> completable() {
+        return this.settableTask.completable();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return this.settableTask.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return this.settableTask.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return this.settableTask.isDone();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        return this.settableTask.get();
+    }
+
+    @Override
+    public T get(long timeout, @NotNull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return this.settableTask.get(timeout, unit);
+    }
+
+    private static class SettableTask<T> extends ListenableFutureTask<T> {
+        /** 完成此任务的线程，{@link #done()}总是在完成它的线程中调用 */
+        @Nullable private volatile Thread completingThread;
+
+        @SuppressWarnings("unchecked")
+        SettableTask() {
+            super((Callable<T>) DUMMY_CALLABLE);
+        }
+
+        boolean setResultValue(@Nullable T value) {
+            set(value);
+            return checkCompletingThread();
+        }
+
+        boolean setExceptionResult(Throwable exception) {
+            setExceptional(exception);
+            return checkCompletingThread();
+        }
+
+        @Override
+        protected void done() {
+            if (!isCancelled()) {
+                // 取消时不记录，取消的线程之后再调用set时不会被误认为设置成功
+                this.completingThread = Thread.currentThread();
+            }
+            super.done();
+        }
+
+        private boolean checkCompletingThread() {
+            boolean check = (this.completingThread == Thread.currentThread());
+            if (check) {
+                this.completingThread = null;
+            }
+            return check;
+        }
+    }
+}
@@ -25,28 +25,12 @@ public class TaskExecutorAdapter implements AsyncListenableTaskExecutor {
 
     @Override
     public ListenableFuture<?> submitListenable(Runnable task) {
-
-        try {
-            ListenableFutureTask<Object> future = new ListenableFutureTask<>(task, null);
-            doExecute(this.currentExecutor, this.taskDecorator, future);
-            return future;
-        } catch (RejectedExecutionException ex) {
-            throw new TaskRejectedException(
-                    "Executor [" + this.currentExecutor + "] did not accept task " + task, ex);
-        }
+        return doSubmit(new ListenableFutureTask<>(task, null), task);
     }
 
     @Override
     public <T> ListenableFuture<T> submitListenable(Callable<T> task) {
-        try {
-            ListenableFutureTask<T> future = new ListenableFutureTask<>(task);
-            doExecute(this.currentExecutor, this.taskDecorator, future);
-
-            return future;
-        } catch (RejectedExecutionException ex) {
-            throw new TaskRejectedException(
-                    "Executor [ " + this.currentExecutor + "] did not accept task " + task, ex);
-        }
+        return doSubmit(new ListenableFutureTask<>(task), task);
     }
 
     @Override
@@ -54,36 +38,28 @@ public class TaskExecutorAdapter implements AsyncListenableTaskExecutor {
         execute(task);
     }
 
+    /** 返回的{@link Future}同时是{@link ListenableFuture}，可以不阻塞地转换为{@link CompletableFuture} */
     @Override
     public Future<?> submit(Runnable task) {
-        try {
-            if (this.taskDecorator == null && this.currentExecutor instanceof ExecutorService) {
-                return ((ExecutorService) this.currentExecutor).submit(task);
-            } else {
-                FutureTask<Object> futureTask = new FutureTask<>(task, null);
-                doExecute(this.currentExecutor, this.taskDecorator, futureTask);
-
-                return futureTask;
-            }
-        } catch (RejectedExecutionException ex) {
-            throw new TaskRejectedException(
-                    "Executor [ " + this.currentExecutor + "] did not accept task " + task, ex);
-        }
+        return doSubmit(new ListenableFutureTask<>(task, null), task);
     }
 
+    /** 返回的{@link Future}同时是{@link ListenableFuture}，可以不阻塞地转换为{@link CompletableFuture} */
     @Override
     public <T> Future<T> submit(Callable<T> task) {
+        return doSubmit(new ListenableFutureTask<>(task), task);
+    }
+
+    private <T> ListenableFutureTask<T> doSubmit(ListenableFutureTask<T> future, Object task) {
         try {
-            if (this.taskDecorator == null && this.currentExecutor instanceof ExecutorService) {
-                return ((ExecutorService) this.currentExecutor).submit(task);
-            } else {
-                FutureTask<T> futureTask = new FutureTask<>(task);
-                doExecute(this.currentExecutor, this.taskDecorator, futureTask);
-                return futureTask;
-            }
+            doExecute(this.currentExecutor, this.taskDecorator, future);
+            return future;
+        } catch (TaskRejectedException ex) {
+            // 已经说明了拒绝原因，不再包装
+            throw ex;
         } catch (RejectedExecutionException ex) {
             throw new TaskRejectedException(
-                    "Executor [ " + this.currentExecutor + "] did not accept task " + task, ex);
+                    "Executor [" + this.currentExecutor + "] did not accept task " + task, ex);
         }
     }
 
@@ -91,6 +67,8 @@ public class TaskExecutorAdapter implements AsyncListenableTaskExecutor {
     public void execute(Runnable task) {
         try {
             doExecute(this.currentExecutor, this.taskDecorator, task);
+        } catch (TaskRejectedException e) {
+            throw e;
         } catch (RejectedExecutionException e) {
             throw new TaskRejectedException(
                     "Executor [ " + this.currentExecutor + "] did not accept task " + task, e);
@@ -0,0 +1,316 @@
+package com.freetsinghua.tool.task;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.Assert;
+import com.freetsinghua.tool.util.LatencyHistogram;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 通过{@link TaskDecorator}收集执行器的指标：每个任务在队列中等待的时间、执行的时间，以及拒绝次数
+ *
+ * <li>把实例设置为执行器的{@link TaskDecorator}，提交时记录入队时刻，执行时记录开始和结束时刻
+ * <li>用{@link #instrument(RejectedExecutionHandler)}包装拒绝策略以统计拒绝次数和由调用线程执行的次数；
+ *     调用线程开始执行任务说明线程池已经饱和，在此之前可以从队列等待时间和{@link #getQueuedCount()}看出趋势
+ * <li>计数和直方图都是无锁的，可以通过{@link #snapshot()}拉取，也可以用{@link #registerMBean(String)}导出到JMX
+ * <li>通过{@code submit}提交的任务的异常由{@link java.util.concurrent.Future}捕获，不会计入失败次数
+ *
+ * @author z.tsinghua
+ * @date 2019/3/4
+ */
+@Slf4j
+public class TaskMetrics implements TaskDecorator, TaskMetricsMXBean {
+    private static final String DOMAIN = "com.freetsinghua.tool.task";
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    @Nullable private volatile ObjectName objectName;
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        this.submitted.increment();
+        return new InstrumentedRunnable(runnable, System.nanoTime());
+    }
+
+    /**
+     * 包装拒绝策略，统计拒绝次数；{@link ThreadPoolExecutor.CallerRunsPolicy}还会统计由调用线程执行的次数
+     *
+     * @param handler 原来的拒绝策略
+     * @return 包装之后的拒绝策略
+     */
+    public RejectedExecutionHandler instrument(RejectedExecutionHandler handler) {
+        Assert.notNull(handler, "handler must not be null");
+        boolean callerRunsPolicy = handler instanceof ThreadPoolExecutor.CallerRunsPolicy;
+        return (task, executor) -> {
+            this.rejected.increment();
+            if (callerRunsPolicy && !executor.isShutdown()) {
+                this.callerRuns.increment();
+            }
+            handler.rejectedExecution(task, executor);
+        };
+    }
+
+    /**
+     * 返回当前的指标快照
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(
+                this.submitted.sum(),
+                this.completed.sum(),
+                this.failed.sum(),
+                this.rejected.sum(),
+                this.callerRuns.sum(),
+                getActiveCount(),
+                getQueuedCount(),
+                this.queueWait.snapshot(),
+                this.runTime.snapshot());
+    }
+
+    /**
+     * 把指标注册到平台MBeanServer，名称为{@code com.freetsinghua.tool.task:type=Executor,name=...}
+     *
+     * @param name 名称
+     * @throws IllegalStateException 如果名称不合法或者已经被注册
+     */
+    public void registerMBean(String name) {
+        Assert.notNull(name, "name must not be null");
+        try {
+            ObjectName objectName =
+                    new ObjectName(DOMAIN + ":type=Executor,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register executor MBean " + name, e);
+        }
+    }
+
+    public void unregisterMBean() {
+        ObjectName objectName = this.objectName;
+        if (objectName == null) {
+            return;
+        }
+        this.objectName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // 已经被注销
+        } catch (JMException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Failed to unregister executor MBean {}", objectName, e);
+            }
+        }
+    }
+
+    @Override
+    public long getSubmittedCount() {
+        return this.submitted.sum();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return this.completed.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    @Override
+    public long getCallerRunsCount() {
+        return this.callerRuns.sum();
+    }
+
+    /** 正在执行的任务数 */
+    @Override
+    public long getActiveCount() {
+        return Math.max(this.started.sum() - this.completed.sum() - this.failed.sum(), 0L);
+    }
+
+    /** 已提交但还没有开始执行的任务数，不包括被拒绝的任务 */
+    @Override
+    public long getQueuedCount() {
+        long dropped = this.rejected.sum() - this.callerRuns.sum();
+        return Math.max(this.submitted.sum() - this.started.sum() - dropped, 0L);
+    }
+
+    @Override
+    public long getQueueWait50thPercentile() {
+        return this.queueWait.snapshot().getPercentile(50.0d);
+    }
+
+    @Override
+    public long getQueueWait99thPercentile() {
+        return this.queueWait.snapshot().getPercentile(99.0d);
+    }
+
+    @Override
+    public long getQueueWaitMax() {
+        return this.queueWait.snapshot().getMax();
+    }
+
+    @Override
+    public long getRunTime50thPercentile() {
+        return this.runTime.snapshot().getPercentile(50.0d);
+    }
+
+    @Override
+    public long getRunTime99thPercentile() {
+        return this.runTime.snapshot().getPercentile(99.0d);
+    }
+
+    @Override
+    public long getRunTimeMax() {
+        return this.runTime.snapshot().getMax();
+    }
+
+    private final class InstrumentedRunnable implements Runnable {
+        private final Runnable delegate;
+        private final long enqueuedNanos;
+
+        InstrumentedRunnable(Runnable delegate, long enqueuedNanos) {
+            this.delegate = delegate;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            queueWait.record(start - this.enqueuedNanos);
+            started.increment();
+            boolean success = false;
+            try {
+                this.delegate.run();
+                success = true;
+            } finally {
+                runTime.record(System.nanoTime() - start);
+                if (success) {
+                    completed.increment();
+                } else {
+                    failed.increment();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.delegate.toString();
+        }
+    }
+
+    /**
+     * 不可变的指标快照，时间单位为纳秒
+     */
+    public static final class Snapshot {
+        private final long submittedCount;
+        private final long completedCount;
+        private final long failedCount;
+        private final long rejectedCount;
+        private final long callerRunsCount;
+        private final long activeCount;
+        private final long queuedCount;
+        private final LatencyHistogram.Snapshot queueWait;
+        private final LatencyHistogram.Snapshot runTime;
+
+        Snapshot(
+                long submittedCount,
+                long completedCount,
+                long failedCount,
+                long rejectedCount,
+                long callerRunsCount,
+                long activeCount,
+                long queuedCount,
+                LatencyHistogram.Snapshot queueWait,
+                LatencyHistogram.Snapshot runTime) {
+            this.submittedCount = submittedCount;
+            this.completedCount = completedCount;
+            this.failedCount = failedCount;
+            this.rejectedCount = rejectedCount;
+            this.callerRunsCount = callerRunsCount;
+            this.activeCount = activeCount;
+            this.queuedCount = queuedCount;
+            this.queueWait = queueWait;
+            this.runTime = runTime;
+        }
+
+        public long getSubmittedCount() {
+            return this.submittedCount;
+        }
+
+        public long getCompletedCount() {
+            return this.completedCount;
+        }
+
+        public long getFailedCount() {
+            return this.failedCount;
+        }
+
+        public long getRejectedCount() {
+            return this.rejectedCount;
+        }
+
+        public long getCallerRunsCount() {
+            return this.callerRunsCount;
+        }
+
+        public long getActiveCount() {
+            return this.activeCount;
+        }
+
+        public long getQueuedCount() {
+            return this.queuedCount;
+        }
+
+        /** 从提交到开始执行的时间 */
+        public LatencyHistogram.Snapshot getQueueWait() {
+            return this.queueWait;
+        }
+
+        /** 从开始执行到结束的时间 */
+        public LatencyHistogram.Snapshot getRunTime() {
+            return this.runTime;
+        }
+
+        @Override
+        public String toString() {
+            return "TaskMetrics{submitted="
+                    + this.submittedCount
+                    + ", completed="
+                    + this.completedCount
+                    + ", failed="
+                    + this.failedCount
+                    + ", rejected="
+                    + this.rejectedCount
+                    + ", callerRuns="
+                    + this.callerRunsCount
+                    + ", active="
+                    + this.activeCount
+                    + ", queued="
+                    + this.queuedCount
+                    + ", queueWait="
+                    + this.queueWait
+                    + ", runTime="
+                    + this.runTime
+                    + '}';
+        }
+    }
+}
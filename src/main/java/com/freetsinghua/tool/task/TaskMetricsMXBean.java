@@ -0,0 +1,36 @@
+package com.freetsinghua.tool.task;
+
+/**
+ * 通过JMX暴露的执行器指标，时间单位为纳秒
+ *
+ * @author z.tsinghua
+ * @date 2019/3/4
+ */
+public interface TaskMetricsMXBean {
+
+    long getSubmittedCount();
+
+    long getCompletedCount();
+
+    long getFailedCount();
+
+    long getRejectedCount();
+
+    long getCallerRunsCount();
+
+    long getActiveCount();
+
+    long getQueuedCount();
+
+    long getQueueWait50thPercentile();
+
+    long getQueueWait99thPercentile();
+
+    long getQueueWaitMax();
+
+    long getRunTime50thPercentile();
+
+    long getRunTime99thPercentile();
+
+    long getRunTimeMax();
+}
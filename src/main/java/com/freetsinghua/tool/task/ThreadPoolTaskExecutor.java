@@ -1,5 +1,7 @@
 package com.freetsinghua.tool.task;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
@@ -16,6 +18,8 @@ import java.util.concurrent.TimeUnit;
 import com.freetsinghua.tool.anotation.Nullable;
 import com.freetsinghua.tool.util.Assert;
 import com.freetsinghua.tool.util.ConcurrentReferenceHashMap;
+import com.freetsinghua.tool.util.LatencyHistogram;
+import com.freetsinghua.tool.util.LockFreeReferenceHashMap;
 
 /**
  * @author z.tsinghua
@@ -33,8 +37,16 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport
 	private TaskDecorator taskDecorator;
 	@Nullable
 	private ThreadPoolExecutor threadPoolExecutor;
-	private final Map<Runnable, Object> decoratedTaskMap = new ConcurrentReferenceHashMap<>(16,
+	private final Map<Runnable, Object> decoratedTaskMap = new LockFreeReferenceHashMap<>(16,
 			ConcurrentReferenceHashMap.ReferenceType.WEAK);
+	private boolean adaptiveSizing = false;
+	private long adaptiveIntervalMillis = 1000L;
+	private long adaptiveTargetWaitMillis = 100L;
+	@Nullable
+	private AdaptivePoolSizer poolSizer;
+	private boolean prioritizedQueue = false;
+	@Nullable
+	private DeadlineTaskQueue deadlineTaskQueue;
 
 
 	/**
@@ -75,9 +87,15 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport
 				public void execute(Runnable command) {
 					Runnable decorate = taskDecorator.decorate(command);
 					if (decorate != command) {
+						if (command instanceof PrioritizedTask) {
+							// 装饰后的任务需要保留优先级和截止时间
+							PrioritizedTask prioritized = (PrioritizedTask) command;
+							decorate = new PrioritizedRunnable(decorate, prioritized.getPriority(),
+									prioritized.getDeadline());
+						}
 						decoratedTaskMap.put(decorate, command);
 					}
-					super.execute(command);
+					super.execute(decorate);
 				}
 			};
 		} else {
@@ -89,18 +107,110 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport
 			executor.allowCoreThreadTimeOut(true);
 		}
 
+		if (this.adaptiveSizing) {
+			Assert.state(this.maxPoolSize < Integer.MAX_VALUE, "maxPoolSize must be bounded for adaptive sizing");
+			this.poolSizer = new AdaptivePoolSizer(executor, Math.max(this.corePoolSize, 1), this.maxPoolSize,
+					this.adaptiveIntervalMillis, this.adaptiveTargetWaitMillis, getThreadNamePrefix() + "sizer");
+			this.poolSizer.start();
+		}
+
 		this.threadPoolExecutor = executor;
 		return executor;
 	}
 
 	private BlockingQueue<Runnable> createQueue(int queueCapacity) {
-		if (queueCapacity > 0) {
+		if (this.prioritizedQueue) {
+			Assert.state(queueCapacity > 0, "queueCapacity must be positive for prioritized queue");
+			this.deadlineTaskQueue = new DeadlineTaskQueue(queueCapacity, this::onDeadlineMissed);
+			return this.deadlineTaskQueue;
+		} else if (queueCapacity > 0) {
 			return new LinkedBlockingDeque<>(queueCapacity);
 		} else {
 			return new SynchronousQueue<>();
 		}
 	}
 
+	/**
+	 * 使用按优先级和截止时间排序的队列：实现了{@link PrioritizedTask}的任务按优先级从高到低、同一优先级按截止时间从早到晚执行，
+	 * 开始执行前已经超过截止时间的任务被丢弃，通过{@code submit}提交的任务会被取消。用于让交互请求不排在批量任务之后。
+	 * 必须在{@link #afterPropertiesSet()}之前设置，并且{@code queueCapacity}必须大于0
+	 *
+	 * @param prioritizedQueue 是否开启
+	 * @see DeadlineTaskQueue
+	 * @see PrioritizedRunnable
+	 */
+	public void setPrioritizedQueue(boolean prioritizedQueue) {
+		this.prioritizedQueue = prioritizedQueue;
+	}
+
+	/**
+	 * 返回因为超过截止时间而被丢弃的任务数，没有开启优先级队列时返回0
+	 */
+	public long getDeadlineMissCount() {
+		DeadlineTaskQueue queue = this.deadlineTaskQueue;
+		return queue == null ? 0L : queue.getExpiredCount();
+	}
+
+	/**
+	 * 返回被丢弃的任务超过截止时间多久，单位纳秒，没有开启优先级队列时返回空的快照
+	 */
+	public LatencyHistogram.Snapshot getDeadlineLateness() {
+		DeadlineTaskQueue queue = this.deadlineTaskQueue;
+		return queue == null ? LatencyHistogram.Snapshot.empty() : queue.getLateness();
+	}
+
+	private void onDeadlineMissed(Runnable task) {
+		Object original = unwrap(task);
+		if (original instanceof Future) {
+			((Future<?>) original).cancel(false);
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Dropped task {} after its deadline passed", original);
+		}
+	}
+
+	/**
+	 * 开启自适应线程数：按队列长度、完成速率估算需要的线程数，在[{@code corePoolSize}, {@code maxPoolSize}]之间
+	 * 调整核心线程数，适合队列无界、流量突发的场景。必须在{@link #afterPropertiesSet()}之前设置，
+	 * 并且{@code maxPoolSize}必须有界
+	 *
+	 * @param adaptiveSizing 是否开启
+	 * @see AdaptivePoolSizer
+	 */
+	public void setAdaptiveSizing(boolean adaptiveSizing) {
+		this.adaptiveSizing = adaptiveSizing;
+	}
+
+	/**
+	 * 设置自适应调整的采样周期，默认1000毫秒
+	 */
+	public void setAdaptiveIntervalMillis(long adaptiveIntervalMillis) {
+		this.adaptiveIntervalMillis = adaptiveIntervalMillis;
+	}
+
+	/**
+	 * 设置自适应调整期望的队列等待时间，默认100毫秒
+	 */
+	public void setAdaptiveTargetWaitMillis(long adaptiveTargetWaitMillis) {
+		this.adaptiveTargetWaitMillis = adaptiveTargetWaitMillis;
+	}
+
+	/**
+	 * 返回最近的自适应调整记录，没有开启时返回空列表
+	 */
+	public List<AdaptivePoolSizer.Decision> getSizingDecisions() {
+		AdaptivePoolSizer sizer = this.poolSizer;
+		return sizer == null ? Collections.emptyList() : sizer.getDecisions();
+	}
+
+	@Override
+	public void shutdown() {
+		if (this.poolSizer != null) {
+			this.poolSizer.stop();
+		}
+		super.shutdown();
+	}
+
 	public void setTaskDecorator(TaskDecorator taskDecorator) {
 		this.taskDecorator = taskDecorator;
 	}
@@ -169,7 +279,7 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport
 		ThreadPoolExecutor executor = getThreadPoolExecutor();
 		try {
 			ListenableFutureTask<Object> future = new ListenableFutureTask<>(task, null);
-			executor.execute(future);
+			executor.execute(prioritize(future, task));
 			return future;
 		} catch (RejectedExecutionException ex) {
 			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
@@ -187,7 +297,7 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport
 		ThreadPoolExecutor executor = getThreadPoolExecutor();
 		try {
 			ListenableFutureTask<T> future = new ListenableFutureTask<>(task);
-			executor.execute(future);
+			executor.execute(prioritize(future, task));
 			return future;
 		} catch (RejectedExecutionException ex) {
 			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
@@ -213,6 +323,9 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport
 	 */
 	@Override
 	public Future<?> submit(Runnable task) {
+		if (task instanceof PrioritizedTask) {
+			return submitListenable(task);
+		}
 		Object invoke = new RunnableOrCallable<>(null, task).invoke();
 		return getFuture(invoke);
 	}
@@ -226,6 +339,9 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> Future<T> submit(Callable<T> task) {
+		if (task instanceof PrioritizedTask) {
+			return submitListenable(task);
+		}
 		Object invoke = new RunnableOrCallable<T>(task, null).invoke();
 		return (Future<T>) getFuture(invoke);
 	}
@@ -263,6 +379,17 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport
 		}
 	}
 
+	/**
+	 * 包装提交的任务时保留原任务的优先级和截止时间
+	 */
+	private Runnable prioritize(Runnable queued, Object task) {
+		if (task instanceof PrioritizedTask) {
+			PrioritizedTask prioritized = (PrioritizedTask) task;
+			return new PrioritizedRunnable(queued, prioritized.getPriority(), prioritized.getDeadline());
+		}
+		return queued;
+	}
+
 	private class RunnableOrCallable<T> {
 		private Callable<T> cTask;
 		private Runnable rTask;
@@ -286,13 +413,28 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport
 		}
 	}
 
+	/**
+	 * 找到队列中的任务对应的提交的任务：去掉{@link TaskDecorator}的装饰和{@link PrioritizedRunnable}的包装，
+	 * 通过{@code submit}提交的任务返回对应的{@link Future}
+	 */
+	private Object unwrap(Runnable task) {
+		Object original = this.decoratedTaskMap.get(task);
+		if (original == null) {
+			original = task;
+		}
+		while (original instanceof PrioritizedRunnable) {
+			original = ((PrioritizedRunnable) original).getDelegate();
+		}
+		return original;
+	}
+
 	@Override
 	protected void cancelRemainingTask(Runnable task) {
 		super.cancelRemainingTask(task);
 
-		Object original = this.decoratedTaskMap.get(task);
+		Object original = unwrap(task);
 
-		if (original instanceof Future) {
+		if (original != task && original instanceof Future) {
 			((Future) original).cancel(true);
 		}
 	}
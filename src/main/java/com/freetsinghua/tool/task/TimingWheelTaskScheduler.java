@@ -0,0 +1,330 @@
+package com.freetsinghua.tool.task;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.freetsinghua.tool.anotation.NotNull;
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.cache.TimingWheel;
+import com.freetsinghua.tool.util.Assert;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于{@link TimingWheel}的{@link TaskScheduler}，适合大量周期任务和{@link Trigger}
+ *
+ * <li>所有任务的计时由时间轮的一个tick线程负责，登记和取消都是O(1)，不会随任务数增长而变慢；
+ *     到期后tick线程只把任务交给工作执行器，任务本身在工作线程中执行
+ * <li>任务执行结束后在工作线程中计算下一次执行时间并重新登记，同一个任务不会重叠执行；
+ *     固定频率的任务落后时会立即补上一次，而不是连续补上所有错过的执行
+ * <li>触发时间按tick对齐，精度为tick的时长（默认10毫秒）
+ * <li>{@link Trigger}的上下文只保存毫秒数，只有在{@link Trigger}读取时才创建{@link Date}
+ * <li>周期任务的异常交给{@link ErrorHandler}处理，不会终止后续执行；一次性任务的异常通过{@link ScheduledFuture#get()}抛出
+ *
+ * @author z.tsinghua
+ * @date 2019/3/5
+ */
+@Slf4j
+public class TimingWheelTaskScheduler implements TaskScheduler {
+	private static final long DEFAULT_TICK_MILLIS = 10L;
+	private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+	private final Executor workerExecutor;
+	private final TimingWheel timingWheel;
+	private volatile ErrorHandler errorHandler = ConcurrentTaskScheduler.getDefaultErrorHandler(true);
+
+	/**
+	 * @param workerExecutor 执行任务的执行器
+	 */
+	public TimingWheelTaskScheduler(Executor workerExecutor) {
+		this(workerExecutor, DEFAULT_TICK_MILLIS, DEFAULT_TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * @param workerExecutor 执行任务的执行器
+	 * @param tickMillis     每个tick的时长，单位毫秒
+	 * @param ticksPerWheel  时间轮的桶数
+	 */
+	public TimingWheelTaskScheduler(Executor workerExecutor, long tickMillis, int ticksPerWheel) {
+		Assert.notNull(workerExecutor, "workerExecutor must not be null");
+		this.workerExecutor = workerExecutor;
+		this.timingWheel = new TimingWheel(tickMillis, TimeUnit.MILLISECONDS, ticksPerWheel,
+				new ThreadFactoryBuilder().setNameFormat("trigger-dispatcher-%d").setDaemon(true).build());
+	}
+
+	/**
+	 * 设置周期任务的异常处理器，默认记录日志后忽略
+	 */
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		Assert.notNull(errorHandler, "errorHandler must not be null");
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * 返回等待触发的任务数
+	 */
+	public long getScheduledCount() {
+		return this.timingWheel.pendingTimeouts();
+	}
+
+	@Nullable
+	@Override
+	public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+		Assert.notNull(trigger, "trigger must not be null");
+		TriggerTask scheduled = new TriggerTask(task, trigger);
+		return scheduled.scheduleNext(System.currentTimeMillis()) ? scheduled : null;
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+		ScheduledTask scheduled = new ScheduledTask(task, false);
+		scheduled.scheduleAt(startTime.getTime(), System.currentTimeMillis());
+		return scheduled;
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+		return schedulePeriodic(task, startTime.getTime(), period, true);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+		return schedulePeriodic(task, System.currentTimeMillis(), period, true);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+		return schedulePeriodic(task, startTime.getTime(), delay, false);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+		return schedulePeriodic(task, System.currentTimeMillis(), delay, false);
+	}
+
+	private ScheduledFuture<?> schedulePeriodic(Runnable task, long startMillis, long period, boolean fixedRate) {
+		Assert.isTrue(period > 0, "period must be positive");
+		PeriodicTask scheduled = new PeriodicTask(task, period, fixedRate);
+		scheduled.scheduleAt(startMillis, System.currentTimeMillis());
+		return scheduled;
+	}
+
+	/**
+	 * 停止计时，尚未触发的任务不再执行；已经交给工作执行器的任务会执行完这一次，之后周期任务的future被取消
+	 */
+	public void shutdown() {
+		this.timingWheel.stop();
+	}
+
+	/**
+	 * 一次性任务，也是周期任务的基类：到期时由tick线程交给工作执行器，在工作线程中执行
+	 */
+	private class ScheduledTask implements ScheduledFuture<Object>, Runnable {
+		private final Runnable delegate;
+		private final boolean repeating;
+		private final CompletableFuture<Object> completion = new CompletableFuture<>();
+		@Nullable
+		private volatile TimingWheel.Timeout timeout;
+		/** 当前这次执行计划的时刻，毫秒 */
+		volatile long scheduledMillis;
+
+		ScheduledTask(Runnable delegate, boolean repeating) {
+			Assert.notNull(delegate, "task must not be null");
+			this.delegate = delegate;
+			this.repeating = repeating;
+		}
+
+		final void scheduleAt(long millis, long now) {
+			this.scheduledMillis = millis;
+			this.timeout = timingWheel.newTimeout(this::dispatch, Math.max(millis - now, 0L), TimeUnit.MILLISECONDS);
+			// 登记与取消并发时，保证取消生效
+			if (this.completion.isCancelled()) {
+				this.timeout.cancel();
+			}
+		}
+
+		private void dispatch() {
+			if (this.completion.isDone()) {
+				return;
+			}
+			try {
+				workerExecutor.execute(this);
+			} catch (RejectedExecutionException e) {
+				if (log.isWarnEnabled()) {
+					log.warn("Worker executor rejected scheduled task {}", this.delegate, e);
+				}
+				this.completion.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public final void run() {
+			if (this.completion.isDone()) {
+				return;
+			}
+
+			long start = System.currentTimeMillis();
+			try {
+				this.delegate.run();
+			} catch (Throwable t) {
+				if (!this.repeating) {
+					ConcurrentTaskScheduler.getDefaultErrorHandler(true).handleError(t);
+					this.completion.completeExceptionally(t);
+					return;
+				}
+				errorHandler.handleError(t);
+			}
+
+			boolean hasNext;
+			try {
+				hasNext = this.repeating && afterRun(start, System.currentTimeMillis());
+			} catch (IllegalStateException e) {
+				// 已经shutdown，时间轮不再接受登记，不会再有下一次执行
+				this.completion.cancel(false);
+				return;
+			}
+			if (!hasNext) {
+				this.completion.complete(null);
+			}
+		}
+
+		/**
+		 * 执行结束后调用，安排下一次执行
+		 *
+		 * @return 是否还有下一次执行
+		 */
+		boolean afterRun(long startMillis, long completionMillis) {
+			return false;
+		}
+
+		@Override
+		public long getDelay(@NotNull TimeUnit unit) {
+			return unit.convert(this.scheduledMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			if (this == o) {
+				return 0;
+			}
+			return Long.compare(getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = this.completion.cancel(mayInterruptIfRunning);
+			TimingWheel.Timeout current = this.timeout;
+			if (current != null) {
+				current.cancel();
+			}
+			return cancelled;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return this.completion.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return this.completion.isDone();
+		}
+
+		@Override
+		public Object get() throws InterruptedException, ExecutionException {
+			return this.completion.get();
+		}
+
+		@Override
+		public Object get(long timeout, @NotNull TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+			return this.completion.get(timeout, unit);
+		}
+
+		@Override
+		public String toString() {
+			return this.delegate.toString();
+		}
+	}
+
+	private final class PeriodicTask extends ScheduledTask {
+		private final long period;
+		private final boolean fixedRate;
+
+		PeriodicTask(Runnable delegate, long period, boolean fixedRate) {
+			super(delegate, true);
+			this.period = period;
+			this.fixedRate = fixedRate;
+		}
+
+		@Override
+		boolean afterRun(long startMillis, long completionMillis) {
+			// 固定频率落后时从完成时刻起立即补一次，之后按新的时刻继续，不连续补上所有错过的执行
+			long next = this.fixedRate ? Math.max(this.scheduledMillis + this.period, completionMillis)
+					: completionMillis + this.period;
+			scheduleAt(next, completionMillis);
+			return true;
+		}
+	}
+
+	private final class TriggerTask extends ScheduledTask implements TriggerContext {
+		private final Trigger trigger;
+		/** 以下字段只在任务自己的执行过程中修改，0表示还没有执行过 */
+		private volatile long lastScheduledMillis;
+		private volatile long lastActualMillis;
+		private volatile long lastCompletionMillis;
+
+		TriggerTask(Runnable delegate, Trigger trigger) {
+			super(delegate, true);
+			this.trigger = trigger;
+		}
+
+		boolean scheduleNext(long now) {
+			Date next = this.trigger.nextExecutionTime(this);
+			if (next == null) {
+				return false;
+			}
+			scheduleAt(next.getTime(), now);
+			return true;
+		}
+
+		@Override
+		boolean afterRun(long startMillis, long completionMillis) {
+			this.lastScheduledMillis = this.scheduledMillis;
+			this.lastActualMillis = startMillis;
+			this.lastCompletionMillis = completionMillis;
+			return scheduleNext(completionMillis);
+		}
+
+		@Nullable
+		@Override
+		public Date lastScheduledExecutionTime() {
+			return toDate(this.lastScheduledMillis);
+		}
+
+		@Nullable
+		@Override
+		public Date lastActualExecutionTime() {
+			return toDate(this.lastActualMillis);
+		}
+
+		@Nullable
+		@Override
+		public Date lastCompletionTime() {
+			return toDate(this.lastCompletionMillis);
+		}
+
+		@Nullable
+		private Date toDate(long millis) {
+			return millis == 0L ? null : new Date(millis);
+		}
+	}
+}
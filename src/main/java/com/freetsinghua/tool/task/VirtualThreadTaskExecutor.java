@@ -0,0 +1,126 @@
+package com.freetsinghua.tool.task;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.Assert;
+
+/**
+ * 为每个任务启动一个虚拟线程的{@link AsyncListenableTaskExecutor}，适合FTP传输、JDBC查询这类阻塞在I/O上的任务
+ *
+ * <li>没有队列也没有线程数上限，不会因为线程池满而让调用线程执行任务
+ * <li>{@code concurrencyLimit}大于0时，用信号量限制同时执行的任务数；等待许可的是任务自己的虚拟线程，
+ *     提交任务的线程不会被阻塞
+ * <li>需要JDK 21及以上，可以先用{@link VirtualThreads#isSupported()}判断
+ *
+ * @author z.tsinghua
+ * @date 2019/3/2
+ */
+public class VirtualThreadTaskExecutor implements AsyncListenableTaskExecutor {
+	private final ThreadFactory threadFactory;
+	private final int concurrencyLimit;
+	@Nullable
+	private final Semaphore permits;
+	private final TaskExecutorAdapter adapterExecutor;
+	private volatile boolean shutdown;
+
+	public VirtualThreadTaskExecutor(String threadNamePrefix) {
+		this(threadNamePrefix, 0);
+	}
+
+	/**
+	 * @param threadNamePrefix 线程名前缀
+	 * @param concurrencyLimit 同时执行的任务数上限，小于等于0表示不限制
+	 * @throws IllegalStateException 如果运行时不支持虚拟线程
+	 */
+	public VirtualThreadTaskExecutor(String threadNamePrefix, int concurrencyLimit) {
+		Assert.notNull(threadNamePrefix, "threadNamePrefix must not be null");
+		this.threadFactory = VirtualThreads.newThreadFactory(threadNamePrefix);
+		this.concurrencyLimit = concurrencyLimit > 0 ? concurrencyLimit : -1;
+		this.permits = concurrencyLimit > 0 ? new Semaphore(concurrencyLimit) : null;
+		this.adapterExecutor = new TaskExecutorAdapter(this::startVirtualThread);
+	}
+
+	public final void setTaskDecorator(TaskDecorator taskDecorator) {
+		this.adapterExecutor.setTaskDecorator(taskDecorator);
+	}
+
+	/**
+	 * 返回同时执行的任务数上限，不限制时返回-1
+	 */
+	public int getConcurrencyLimit() {
+		return this.concurrencyLimit;
+	}
+
+	/**
+	 * 返回正在等待许可的任务数的估计值
+	 */
+	public int getWaitingCount() {
+		return this.permits == null ? 0 : this.permits.getQueueLength();
+	}
+
+	private void startVirtualThread(Runnable task) {
+		if (this.shutdown) {
+			throw new RejectedExecutionException("Executor has been shut down");
+		}
+
+		Semaphore semaphore = this.permits;
+		Runnable runnable = task;
+		if (semaphore != null) {
+			runnable = () -> {
+				semaphore.acquireUninterruptibly();
+				try {
+					task.run();
+				} finally {
+					semaphore.release();
+				}
+			};
+		}
+		this.threadFactory.newThread(runnable).start();
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		this.adapterExecutor.execute(task);
+	}
+
+	@Override
+	public void execute(Runnable task, long startTime) {
+		this.adapterExecutor.execute(task, startTime);
+	}
+
+	@Override
+	public Future<?> submit(Runnable task) {
+		return this.adapterExecutor.submit(task);
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+		return this.adapterExecutor.submit(task);
+	}
+
+	@Override
+	public ListenableFuture<?> submitListenable(Runnable task) {
+		return this.adapterExecutor.submitListenable(task);
+	}
+
+	@Override
+	public <T> ListenableFuture<T> submitListenable(Callable<T> task) {
+		return this.adapterExecutor.submitListenable(task);
+	}
+
+	/**
+	 * 拒绝之后提交的任务，已经启动的虚拟线程会继续执行直到结束
+	 */
+	public void shutdown() {
+		this.shutdown = true;
+	}
+
+	public boolean isShutdown() {
+		return this.shutdown;
+	}
+}
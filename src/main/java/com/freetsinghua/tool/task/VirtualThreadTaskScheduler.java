@@ -0,0 +1,292 @@
+package com.freetsinghua.tool.task;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.freetsinghua.tool.anotation.NotNull;
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.Assert;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * 在虚拟线程上执行定时任务的{@link TaskScheduler}
+ *
+ * <li>计时由一个平台守护线程负责，到期后只把任务交给虚拟线程，不会因为任务阻塞而推迟其他任务
+ * <li>一次性任务和固定频率任务返回的{@link ScheduledFuture}在任务被交给虚拟线程时完成；固定频率的任务如果执行时间超过周期，
+ *     相邻两次执行可能重叠，需要互斥的任务应当自行加锁或者使用{@code concurrencyLimit}
+ * <li>固定延迟的任务和{@link Trigger}任务在虚拟线程中执行结束后才计算并登记下一次执行，延迟从执行结束开始计算，
+ *     同一个任务不会重叠执行，{@link TriggerContext#lastCompletionTime()}是真实的完成时刻
+ * <li>任务抛出的异常会被记录并忽略，不会取消周期任务
+ *
+ * @author z.tsinghua
+ * @date 2019/3/2
+ */
+public class VirtualThreadTaskScheduler extends VirtualThreadTaskExecutor implements TaskScheduler {
+	private final ScheduledThreadPoolExecutor timerExecutor;
+	private final ConcurrentTaskScheduler timer;
+
+	public VirtualThreadTaskScheduler(String threadNamePrefix) {
+		this(threadNamePrefix, 0);
+	}
+
+	/**
+	 * @param threadNamePrefix 线程名前缀
+	 * @param concurrencyLimit 同时执行的任务数上限，小于等于0表示不限制
+	 * @throws IllegalStateException 如果运行时不支持虚拟线程
+	 */
+	public VirtualThreadTaskScheduler(String threadNamePrefix, int concurrencyLimit) {
+		super(threadNamePrefix, concurrencyLimit);
+		this.timerExecutor = new ScheduledThreadPoolExecutor(1,
+				new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + "timer").setDaemon(true).build());
+		this.timerExecutor.setRemoveOnCancelPolicy(true);
+		this.timer = new ConcurrentTaskScheduler(this.timerExecutor);
+	}
+
+	private Runnable dispatch(Runnable task) {
+		Runnable runnable = new DelegatingErrorHandlingRunnable(task,
+				ConcurrentTaskScheduler.getDefaultErrorHandler(true));
+		return () -> execute(runnable);
+	}
+
+	@Nullable
+	@Override
+	public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+		Assert.notNull(trigger, "trigger must not be null");
+		TriggerTask scheduled = new TriggerTask(task, trigger);
+		return scheduled.scheduleNext(System.currentTimeMillis()) ? scheduled : null;
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+		return this.timer.schedule(dispatch(task), startTime);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+		return this.timer.scheduleAtFixedRate(dispatch(task), startTime, period);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+		return this.timer.scheduleAtFixedRate(dispatch(task), period);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+		return scheduleWithFixedDelay(task, startTime.getTime(), delay);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+		return scheduleWithFixedDelay(task, System.currentTimeMillis(), delay);
+	}
+
+	private ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long startMillis, long delay) {
+		Assert.isTrue(delay > 0, "delay must be positive");
+		FixedDelayTask scheduled = new FixedDelayTask(task, delay);
+		scheduled.scheduleAt(startMillis, System.currentTimeMillis());
+		return scheduled;
+	}
+
+	/**
+	 * 停止计时并拒绝之后提交的任务
+	 */
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		this.timerExecutor.shutdownNow();
+	}
+
+	/**
+	 * 在虚拟线程中执行结束后才登记下一次执行的任务：计时线程到期后只把它交给虚拟线程
+	 */
+	private abstract class ReschedulingTask implements ScheduledFuture<Object>, Runnable {
+		private final Runnable delegate;
+		private final CompletableFuture<Object> completion = new CompletableFuture<>();
+		@Nullable
+		private volatile ScheduledFuture<?> timeout;
+		/** 当前这次执行计划的时刻，毫秒 */
+		volatile long scheduledMillis;
+
+		ReschedulingTask(Runnable delegate) {
+			Assert.notNull(delegate, "task must not be null");
+			this.delegate = delegate;
+		}
+
+		final void scheduleAt(long millis, long now) {
+			this.scheduledMillis = millis;
+			try {
+				this.timeout = timerExecutor.schedule(this::dispatch, Math.max(millis - now, 0L),
+						TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// 已经shutdown，不会再有下一次执行
+				this.completion.cancel(false);
+				return;
+			}
+			// 登记与取消并发时，保证取消生效
+			if (this.completion.isCancelled()) {
+				this.timeout.cancel(false);
+			}
+		}
+
+		private void dispatch() {
+			if (this.completion.isDone()) {
+				return;
+			}
+			try {
+				execute(this);
+			} catch (RejectedExecutionException e) {
+				this.completion.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public final void run() {
+			if (this.completion.isDone()) {
+				return;
+			}
+
+			long start = System.currentTimeMillis();
+			try {
+				this.delegate.run();
+			} catch (Throwable t) {
+				ConcurrentTaskScheduler.getDefaultErrorHandler(true).handleError(t);
+			}
+
+			if (!afterRun(start, System.currentTimeMillis())) {
+				this.completion.complete(null);
+			}
+		}
+
+		/**
+		 * 在虚拟线程中执行结束后调用，安排下一次执行
+		 *
+		 * @return 是否还有下一次执行
+		 */
+		abstract boolean afterRun(long startMillis, long completionMillis);
+
+		@Override
+		public long getDelay(@NotNull TimeUnit unit) {
+			return unit.convert(this.scheduledMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			if (this == o) {
+				return 0;
+			}
+			return Long.compare(getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = this.completion.cancel(mayInterruptIfRunning);
+			ScheduledFuture<?> current = this.timeout;
+			if (current != null) {
+				current.cancel(false);
+			}
+			return cancelled;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return this.completion.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return this.completion.isDone();
+		}
+
+		@Override
+		public Object get() throws InterruptedException, ExecutionException {
+			return this.completion.get();
+		}
+
+		@Override
+		public Object get(long timeout, @NotNull TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+			return this.completion.get(timeout, unit);
+		}
+
+		@Override
+		public String toString() {
+			return this.delegate.toString();
+		}
+	}
+
+	private final class FixedDelayTask extends ReschedulingTask {
+		private final long delay;
+
+		FixedDelayTask(Runnable delegate, long delay) {
+			super(delegate);
+			this.delay = delay;
+		}
+
+		@Override
+		boolean afterRun(long startMillis, long completionMillis) {
+			scheduleAt(completionMillis + this.delay, completionMillis);
+			return true;
+		}
+	}
+
+	private final class TriggerTask extends ReschedulingTask implements TriggerContext {
+		private final Trigger trigger;
+		/** 以下字段只在任务自己的执行过程中修改，0表示还没有执行过 */
+		private volatile long lastScheduledMillis;
+		private volatile long lastActualMillis;
+		private volatile long lastCompletionMillis;
+
+		TriggerTask(Runnable delegate, Trigger trigger) {
+			super(delegate);
+			this.trigger = trigger;
+		}
+
+		boolean scheduleNext(long now) {
+			Date next = this.trigger.nextExecutionTime(this);
+			if (next == null) {
+				return false;
+			}
+			scheduleAt(next.getTime(), now);
+			return true;
+		}
+
+		@Override
+		boolean afterRun(long startMillis, long completionMillis) {
+			this.lastScheduledMillis = this.scheduledMillis;
+			this.lastActualMillis = startMillis;
+			this.lastCompletionMillis = completionMillis;
+			return scheduleNext(completionMillis);
+		}
+
+		@Nullable
+		@Override
+		public Date lastScheduledExecutionTime() {
+			return toDate(this.lastScheduledMillis);
+		}
+
+		@Nullable
+		@Override
+		public Date lastActualExecutionTime() {
+			return toDate(this.lastActualMillis);
+		}
+
+		@Nullable
+		@Override
+		public Date lastCompletionTime() {
+			return toDate(this.lastCompletionMillis);
+		}
+
+		@Nullable
+		private Date toDate(long millis) {
+			return millis == 0L ? null : new Date(millis);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.freetsinghua.tool.task;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import com.freetsinghua.tool.anotation.Nullable;
+
+/**
+ * 通过反射创建虚拟线程，使项目仍然可以在JDK 8上编译和运行
+ *
+ * <p>运行时不支持虚拟线程（JDK 21之前，或者预览特性没有开启）时{@link #isSupported()}返回{@code false}，
+ * 调用方应当回退到平台线程池
+ *
+ * @author z.tsinghua
+ * @date 2019/3/2
+ */
+public final class VirtualThreads {
+	private static final boolean SUPPORTED = newThreadFactoryOrNull("virtual-probe-") != null;
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * 当前运行时是否支持虚拟线程
+	 */
+	public static boolean isSupported() {
+		return SUPPORTED;
+	}
+
+	/**
+	 * 返回创建虚拟线程的{@link ThreadFactory}，线程名为前缀加上从0开始的序号
+	 *
+	 * @param namePrefix 线程名前缀
+	 * @return 结果
+	 * @throws IllegalStateException 如果运行时不支持虚拟线程
+	 */
+	public static ThreadFactory newThreadFactory(String namePrefix) {
+		ThreadFactory threadFactory = newThreadFactoryOrNull(namePrefix);
+		if (threadFactory == null) {
+			throw new IllegalStateException("Virtual threads are not supported by " + System.getProperty(
+					"java.version"));
+		}
+		return threadFactory;
+	}
+
+	@Nullable
+	private static ThreadFactory newThreadFactoryOrNull(String namePrefix) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method name = builderClass.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, namePrefix, 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// JDK 19/20 在没有开启预览特性时会抛出UnsupportedOperationException
+			return null;
+		}
+	}
+}
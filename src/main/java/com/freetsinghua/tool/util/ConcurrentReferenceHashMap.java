@@ -21,7 +21,8 @@ import java.util.concurrent.locks.ReentrantLock;
  * @author z.tsinghua
  * @date 2019/1/30
  */
-public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V>
+        implements ConcurrentMap<K, V>, ReferenceQueueDrainer.Purgeable {
     private static final int DEFAULT_INITIAL_CAPACITY = 16;
     private static final float DEFAULT_LOAD_FACTOR = 0.75f;
     private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
@@ -175,6 +176,22 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
         return shift;
     }
 
+    /**
+     * Purge references that have been garbage collected, one segment at a time. Normally this
+     * happens as a side effect of access; {@link ReferenceQueueDrainer} calls it in the background
+     * for maps that are mostly read.
+     *
+     * @return the number of references purged
+     */
+    @Override
+    public int purge() {
+        int purged = 0;
+        for (Segment segment : this.segments) {
+            purged += segment.purge();
+        }
+        return purged;
+    }
+
     protected final float getLoadFactor() {
         return this.loadFactor;
     }
@@ -207,6 +224,48 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
         return entry != null ? entry.getValue() : defaultValue;
     }
 
+    @Override
+    @Nullable
+    public V get(@Nullable Object key) {
+        Entry<K, V> entry = getEntryIfAvailable(key);
+        return entry != null ? entry.getValue() : null;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return getEntryIfAvailable(key) != null;
+    }
+
+    /**
+     * Return the number of references in all segments. This includes references that have been
+     * garbage collected but not yet purged.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            size += segment.getCount();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment segment : this.segments) {
+            if (segment.getCount() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : this.segments) {
+            segment.clear();
+        }
+    }
+
     @Nullable
     private Entry<K, V> getEntryIfAvailable(@Nullable Object key) {
         Reference<K, V> ref = getReference(key, Restructure.WHEN_NECESSARY);
@@ -711,6 +770,19 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
          * @param allowResize if resizing is permitted
          */
         protected final void restructureIfNecessary(boolean allowResize) {
+            restructure(allowResize);
+        }
+
+        /**
+         * Purge any references that have been garbage collected without resizing.
+         *
+         * @return the number of references purged
+         */
+        public final int purge() {
+            return restructure(false);
+        }
+
+        private int restructure(boolean allowResize) {
             boolean needsResize = (this.count > 0 && this.count >= this.resizeThreshold);
             Reference<K, V> ref = this.referenceManager.pollForPurge();
             if (ref != null || (needsResize && allowResize)) {
@@ -766,10 +838,12 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
                         this.resizeThreshold = (int) (this.references.length * getLoadFactor());
                     }
                     this.count = Math.max(countAfterRestructure, 0);
+                    return toPurge.size();
                 } finally {
                     unlock();
                 }
             }
+            return 0;
         }
 
         @Nullable
@@ -0,0 +1,175 @@
+package com.freetsinghua.tool.util;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 并发的耗时直方图，单位纳秒
+ *
+ * <li>桶按2的幂分段，每段再等分为8个子桶，相对误差不超过12.5%
+ * <li>每个桶是一个{@link LongAdder}，多线程记录时没有竞争
+ * <li>{@link #snapshot()}不加锁，与并发的记录之间是弱一致的
+ * <li>快照的{@link Snapshot#toString()}中的数值单位都是纳秒
+ *
+ * @author z.tsinghua
+ * @date 2019/2/25
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 纳秒，负数按0记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0L);
+        this.buckets[indexOf(value)].increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    /** 清空所有记录，与并发的记录之间不是原子的 */
+    public void reset() {
+        for (LongAdder bucket : this.buckets) {
+            bucket.reset();
+        }
+        this.sum.reset();
+        this.max.reset();
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets[i].sum();
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, this.sum.sum(), this.max.get());
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /** 返回桶{@code index}能容纳的最大值 */
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        int subBucket = index & (SUB_BUCKETS - 1);
+        long lower = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /** 直方图的不可变快照 */
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new long[BUCKET_COUNT], 0L, 0L, 0L);
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /** 返回没有任何记录的快照 */
+        public static Snapshot empty() {
+            return EMPTY;
+        }
+
+        /** 返回记录的次数 */
+        public long getCount() {
+            return this.count;
+        }
+
+        /** 返回平均耗时，没有记录时为0 */
+        public double getMean() {
+            return this.count == 0L ? 0.0d : (double) this.sum / this.count;
+        }
+
+        /** 返回最大耗时 */
+        public long getMax() {
+            return this.max;
+        }
+
+        /**
+         * 返回百分位耗时，结果是所在桶的上界，不会超过最大值
+         *
+         * @param percentile 百分位，取值0到100
+         * @return 纳秒，没有记录时为0
+         */
+        public long getPercentile(double percentile) {
+            Assert.isTrue(
+                    percentile >= 0.0d && percentile <= 100.0d,
+                    "percentile must be between 0 and 100");
+            if (this.count == 0L) {
+                return 0L;
+            }
+
+            long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0d * this.count));
+            long seen = 0L;
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), this.max);
+                }
+            }
+            return this.max;
+        }
+
+        /**
+         * 返回两个快照之间的增量，用于计算一段时间内的分布
+         *
+         * @param previous 较早的快照
+         * @return 结果，最大值取当前快照的最大值
+         */
+        public Snapshot minus(Snapshot previous) {
+            long[] delta = new long[this.counts.length];
+            long total = 0L;
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] = Math.max(0L, this.counts[i] - previous.counts[i]);
+                total += delta[i];
+            }
+            return new Snapshot(delta, total, Math.max(0L, this.sum - previous.sum), this.max);
+        }
+
+        @Override
+        public String toString() {
+            return "LatencyHistogram.Snapshot{count="
+                    + this.count
+                    + ", mean="
+                    + getMean()
+                    + ", p50="
+                    + getPercentile(50.0d)
+                    + ", p99="
+                    + getPercentile(99.0d)
+                    + ", max="
+                    + this.max
+                    + '}';
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.freetsinghua.tool.util;
+
+import com.freetsinghua.tool.anotation.Nullable;
+import com.freetsinghua.tool.util.ConcurrentReferenceHashMap.ReferenceType;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link ConcurrentReferenceHashMap}的高并发版本，语义相同：条目被软引用或者弱引用持有，
+ * 被垃圾回收之后从映射中消失，键和值都可以为{@code null}
+ *
+ * <li>条目保存在{@link ConcurrentHashMap}中，读操作不加锁
+ * <li>条目不可变，所有写操作都是"读取引用，再按引用比较并替换"的重试循环，
+ *     不会像分段版本那样为每次写入获取段锁
+ * <li>被回收的引用不会触发整段重建，写操作结束时由抢到清理权的线程最多清理{@link #PURGE_BATCH_SIZE}个，
+ *     其他线程不会等待；也可以调用{@link #purge()}主动清理
+ *
+ * @author z.tsinghua
+ * @date 2019/2/28
+ */
+public class LockFreeReferenceHashMap<K, V> extends AbstractMap<K, V>
+        implements ConcurrentMap<K, V>, ReferenceQueueDrainer.Purgeable {
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final ReferenceType DEFAULT_REFERENCE_TYPE = ReferenceType.SOFT;
+
+    /** 单次清理的最大引用数，避免某次写入承担过多的清理工作 */
+    static final int PURGE_BATCH_SIZE = 64;
+
+    /** 代替{@code null}键 */
+    private static final Object NULL_KEY = new Object();
+
+    private final ConcurrentHashMap<Object, EntryReference<K, V>> table;
+    private final ReferenceType referenceType;
+    private final ReferenceQueue<Entry<K, V>> queue = new ReferenceQueue<>();
+    private final AtomicBoolean purging = new AtomicBoolean();
+    private volatile Set<Map.Entry<K, V>> entrySet;
+
+    public LockFreeReferenceHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_REFERENCE_TYPE);
+    }
+
+    public LockFreeReferenceHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_REFERENCE_TYPE);
+    }
+
+    public LockFreeReferenceHashMap(int initialCapacity, ReferenceType referenceType) {
+        Assert.isTrue(initialCapacity >= 0, "Initial capacity must not be negative");
+        Assert.notNull(referenceType, "Reference type must not be null");
+        this.table = new ConcurrentHashMap<>(initialCapacity);
+        this.referenceType = referenceType;
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable Object key) {
+        Entry<K, V> entry = getEntry(key);
+        return entry != null ? entry.value : null;
+    }
+
+    @Override
+    public V getOrDefault(@Nullable Object key, V defaultValue) {
+        Entry<K, V> entry = getEntry(key);
+        return entry != null ? entry.value : defaultValue;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return getEntry(key) != null;
+    }
+
+    @Nullable
+    private Entry<K, V> getEntry(@Nullable Object key) {
+        EntryReference<K, V> ref = this.table.get(mask(key));
+        return ref != null ? ref.get() : null;
+    }
+
+    @Override
+    @Nullable
+    public V put(@Nullable K key, @Nullable V value) {
+        return put(key, value, true);
+    }
+
+    @Override
+    @Nullable
+    public V putIfAbsent(@Nullable K key, @Nullable V value) {
+        return put(key, value, false);
+    }
+
+    @Nullable
+    private V put(@Nullable K key, @Nullable V value, boolean overwriteExisting) {
+        Object mapKey = mask(key);
+        EntryReference<K, V> created = null;
+        try {
+            for (; ; ) {
+                EntryReference<K, V> ref = this.table.get(mapKey);
+                Entry<K, V> entry = ref != null ? ref.get() : null;
+                if (entry != null && !overwriteExisting) {
+                    return entry.value;
+                }
+
+                if (created == null) {
+                    created = createReference(mapKey, new Entry<>(key, value));
+                }
+                if (ref == null) {
+                    if (this.table.putIfAbsent(mapKey, created) == null) {
+                        return null;
+                    }
+                } else if (this.table.replace(mapKey, ref, created)) {
+                    ref.clear();
+                    return entry != null ? entry.value : null;
+                }
+            }
+        } finally {
+            purgeIfNecessary();
+        }
+    }
+
+    @Override
+    @Nullable
+    public V remove(@Nullable Object key) {
+        EntryReference<K, V> ref = this.table.remove(mask(key));
+        if (ref == null) {
+            return null;
+        }
+
+        Entry<K, V> entry = ref.get();
+        ref.clear();
+        purgeIfNecessary();
+        return entry != null ? entry.value : null;
+    }
+
+    @Override
+    public boolean remove(@Nullable Object key, @Nullable Object value) {
+        Object mapKey = mask(key);
+        try {
+            for (; ; ) {
+                EntryReference<K, V> ref = this.table.get(mapKey);
+                Entry<K, V> entry = ref != null ? ref.get() : null;
+                if (entry == null || !ObjectUtils.nullSafeEquals(entry.value, value)) {
+                    return false;
+                }
+                if (this.table.remove(mapKey, ref)) {
+                    ref.clear();
+                    return true;
+                }
+            }
+        } finally {
+            purgeIfNecessary();
+        }
+    }
+
+    @Override
+    public boolean replace(@Nullable K key, @Nullable V oldValue, @Nullable V newValue) {
+        Object mapKey = mask(key);
+        EntryReference<K, V> created = null;
+        try {
+            for (; ; ) {
+                EntryReference<K, V> ref = this.table.get(mapKey);
+                Entry<K, V> entry = ref != null ? ref.get() : null;
+                if (entry == null || !ObjectUtils.nullSafeEquals(entry.value, oldValue)) {
+                    return false;
+                }
+
+                if (created == null) {
+                    created = createReference(mapKey, new Entry<>(key, newValue));
+                }
+                if (this.table.replace(mapKey, ref, created)) {
+                    ref.clear();
+                    return true;
+                }
+            }
+        } finally {
+            purgeIfNecessary();
+        }
+    }
+
+    @Override
+    @Nullable
+    public V replace(@Nullable K key, @Nullable V value) {
+        Object mapKey = mask(key);
+        EntryReference<K, V> created = null;
+        try {
+            for (; ; ) {
+                EntryReference<K, V> ref = this.table.get(mapKey);
+                Entry<K, V> entry = ref != null ? ref.get() : null;
+                if (entry == null) {
+                    return null;
+                }
+
+                if (created == null) {
+                    created = createReference(mapKey, new Entry<>(key, value));
+                }
+                if (this.table.replace(mapKey, ref, created)) {
+                    ref.clear();
+                    return entry.value;
+                }
+            }
+        } finally {
+            purgeIfNecessary();
+        }
+    }
+
+    /** 包括已被回收但尚未清理的条目 */
+    @Override
+    public int size() {
+        return this.table.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.table.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        this.table.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> entrySet = this.entrySet;
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+            this.entrySet = entrySet;
+        }
+
+        return entrySet;
+    }
+
+    /**
+     * 清理所有已被回收的引用
+     *
+     * @return 清理的引用数
+     */
+    @Override
+    public int purge() {
+        int purged = 0;
+        int batch;
+        do {
+            batch = purgeBatch();
+            purged += batch;
+        } while (batch == PURGE_BATCH_SIZE);
+        return purged;
+    }
+
+    /** 有待清理的引用并且没有其他线程正在清理时，清理一批 */
+    private void purgeIfNecessary() {
+        if (!this.purging.get()) {
+            purgeBatch();
+        }
+    }
+
+    /** 最多清理{@link #PURGE_BATCH_SIZE}个引用，其他线程正在清理时立即返回0 */
+    @SuppressWarnings("unchecked")
+    private int purgeBatch() {
+        if (!this.purging.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        try {
+            int purged = 0;
+            EntryReference<K, V> ref;
+            while (purged < PURGE_BATCH_SIZE
+                    && (ref = (EntryReference<K, V>) this.queue.poll()) != null) {
+                // 引用可能已经被替换，只移除仍然指向它的映射
+                this.table.remove(ref.getMapKey(), ref);
+                purged++;
+            }
+            return purged;
+        } finally {
+            this.purging.set(false);
+        }
+    }
+
+    private EntryReference<K, V> createReference(Object mapKey, Entry<K, V> entry) {
+        if (this.referenceType == ReferenceType.WEAK) {
+            return new WeakEntryReference<>(mapKey, entry, this.queue);
+        }
+        return new SoftEntryReference<>(mapKey, entry, this.queue);
+    }
+
+    private static Object mask(@Nullable Object key) {
+        return key != null ? key : NULL_KEY;
+    }
+
+    /** 持有条目的引用，同时记住映射中的键以便清理 */
+    private interface EntryReference<K, V> {
+
+        @Nullable
+        Entry<K, V> get();
+
+        Object getMapKey();
+
+        void clear();
+    }
+
+    private static final class SoftEntryReference<K, V> extends SoftReference<Entry<K, V>>
+            implements EntryReference<K, V> {
+        private final Object mapKey;
+
+        SoftEntryReference(Object mapKey, Entry<K, V> entry, ReferenceQueue<Entry<K, V>> queue) {
+            super(entry, queue);
+            this.mapKey = mapKey;
+        }
+
+        @Override
+        public Object getMapKey() {
+            return this.mapKey;
+        }
+    }
+
+    private static final class WeakEntryReference<K, V> extends WeakReference<Entry<K, V>>
+            implements EntryReference<K, V> {
+        private final Object mapKey;
+
+        WeakEntryReference(Object mapKey, Entry<K, V> entry, ReferenceQueue<Entry<K, V>> queue) {
+            super(entry, queue);
+            this.mapKey = mapKey;
+        }
+
+        @Override
+        public Object getMapKey() {
+            return this.mapKey;
+        }
+    }
+
+    /** 不可变的条目，修改时整体替换 */
+    private static final class Entry<K, V> {
+        @Nullable private final K key;
+        @Nullable private final V value;
+
+        Entry(@Nullable K key, @Nullable V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(@Nullable Object o) {
+            if (o instanceof Map.Entry<?, ?>) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                Entry<K, V> current = getEntry(entry.getKey());
+                return current != null && ObjectUtils.nullSafeEquals(current.value, entry.getValue());
+            }
+            return false;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (o instanceof Map.Entry<?, ?>) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                return LockFreeReferenceHashMap.this.remove(entry.getKey(), entry.getValue());
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return LockFreeReferenceHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            LockFreeReferenceHashMap.this.clear();
+        }
+    }
+
+    /** 跳过已被回收的条目，{@link Map.Entry#setValue}写回映射 */
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Iterator<EntryReference<K, V>> delegate =
+                LockFreeReferenceHashMap.this.table.values().iterator();
+
+        @Nullable private Entry<K, V> next;
+        @Nullable private Entry<K, V> last;
+
+        @Override
+        public boolean hasNext() {
+            while (this.next == null && this.delegate.hasNext()) {
+                this.next = this.delegate.next().get();
+            }
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> entry = this.next;
+            this.last = entry;
+            this.next = null;
+            return new AbstractMap.SimpleEntry<K, V>(entry.key, entry.value) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public V setValue(V value) {
+                    put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            Assert.state(this.last != null, "No element to remove");
+            LockFreeReferenceHashMap.this.remove(this.last.key, this.last.value);
+            this.last = null;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.freetsinghua.tool.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 在后台清理引用映射中已被垃圾回收的条目
+ *
+ * <li>{@link ConcurrentReferenceHashMap}只在访问时清理，很少写入的映射会长期保留失效的条目和过长的链表；
+ *     注册到这里之后，由一个守护线程每隔固定时间依次清理每个映射
+ * <li>映射被弱引用持有，注册不会阻止映射本身被回收，被回收的映射会自动注销
+ * <li>{@link #getInstance()}返回共享的实例，首次注册时启动线程并注册到平台MBeanServer
+ *
+ * @author z.tsinghua
+ * @date 2019/3/1
+ */
+@Slf4j
+public class ReferenceQueueDrainer implements ReferenceQueueDrainerMXBean {
+    private static final long DEFAULT_INTERVAL_MILLIS = 1000L;
+    private static final String OBJECT_NAME =
+            "com.freetsinghua.tool.util:type=ReferenceQueueDrainer";
+
+    private static final class Holder {
+        private static final ReferenceQueueDrainer INSTANCE = new ReferenceQueueDrainer();
+    }
+
+    private final long intervalMillis;
+    private final List<WeakReference<Purgeable>> registered = new CopyOnWriteArrayList<>();
+    private final Object startMonitor = new Object();
+    private volatile Thread thread;
+
+    /** 以下字段在startMonitor下写入 */
+    private volatile long purgedCount;
+    private volatile long cycleCount;
+    private volatile long lastCyclePurgedCount;
+    private volatile long lastCycleNanos;
+    private volatile long maxCycleNanos;
+    private volatile long lastCycleEndMillis;
+
+    private ReferenceQueueDrainer() {
+        this(DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param intervalMillis 两次清理之间的间隔，单位毫秒
+     */
+    public ReferenceQueueDrainer(long intervalMillis) {
+        Assert.isTrue(intervalMillis > 0, "intervalMillis must be positive");
+        this.intervalMillis = intervalMillis;
+    }
+
+    public static ReferenceQueueDrainer getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * 注册一个需要后台清理的映射，重复注册会被忽略
+     *
+     * @param map 映射
+     */
+    public void register(Purgeable map) {
+        Assert.notNull(map, "map must not be null");
+        for (WeakReference<Purgeable> ref : this.registered) {
+            if (ref.get() == map) {
+                return;
+            }
+        }
+        this.registered.add(new WeakReference<>(map));
+        startIfNecessary();
+    }
+
+    public void unregister(Purgeable map) {
+        this.registered.removeIf(ref -> ref.get() == map || ref.get() == null);
+    }
+
+    private void startIfNecessary() {
+        if (this.thread != null) {
+            return;
+        }
+
+        synchronized (this.startMonitor) {
+            if (this.thread == null) {
+                Thread thread = new Thread(this::run, "reference-queue-drainer");
+                thread.setDaemon(true);
+                this.lastCycleEndMillis = System.currentTimeMillis();
+                thread.start();
+                this.thread = thread;
+                if (this == Holder.INSTANCE) {
+                    registerMBean();
+                }
+            }
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Failed to register MBean {}", OBJECT_NAME, e);
+            }
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(this.intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            drain();
+        }
+    }
+
+    /**
+     * 依次清理所有注册的映射，通常由后台线程调用
+     *
+     * @return 本次清理的引用数
+     */
+    public long drain() {
+        long start = System.nanoTime();
+        long purged = 0L;
+        boolean stale = false;
+        for (WeakReference<Purgeable> ref : this.registered) {
+            Purgeable map = ref.get();
+            if (map == null) {
+                stale = true;
+                continue;
+            }
+            try {
+                purged += map.purge();
+            } catch (RuntimeException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Failed to purge {}", map.getClass().getName(), e);
+                }
+            }
+        }
+        if (stale) {
+            this.registered.removeIf(ref -> ref.get() == null);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        synchronized (this.startMonitor) {
+            this.purgedCount += purged;
+            this.cycleCount++;
+            this.lastCyclePurgedCount = purged;
+            this.lastCycleNanos = elapsed;
+            this.maxCycleNanos = Math.max(this.maxCycleNanos, elapsed);
+            this.lastCycleEndMillis = System.currentTimeMillis();
+        }
+        return purged;
+    }
+
+    @Override
+    public int getRegisteredCount() {
+        return this.registered.size();
+    }
+
+    /** 累计清理的引用数 */
+    @Override
+    public long getPurgedCount() {
+        return this.purgedCount;
+    }
+
+    @Override
+    public long getCycleCount() {
+        return this.cycleCount;
+    }
+
+    @Override
+    public long getLastCyclePurgedCount() {
+        return this.lastCyclePurgedCount;
+    }
+
+    @Override
+    public long getLastCycleNanos() {
+        return this.lastCycleNanos;
+    }
+
+    @Override
+    public long getMaxCycleNanos() {
+        return this.maxCycleNanos;
+    }
+
+    /**
+     * 距离上一次清理完成的时间，一个已被回收的条目最多在映射中停留这么久再加上一次清理的耗时
+     *
+     * @return 毫秒数，线程尚未启动时为0
+     */
+    @Override
+    public long getLagMillis() {
+        if (this.thread == null) {
+            return 0L;
+        }
+        return Math.max(System.currentTimeMillis() - this.lastCycleEndMillis, 0L);
+    }
+
+    @Override
+    public String toString() {
+        return "ReferenceQueueDrainer{registered="
+                + getRegisteredCount()
+                + ", purged="
+                + this.purgedCount
+                + ", cycles="
+                + this.cycleCount
+                + ", lastCycle="
+                + TimeUnit.NANOSECONDS.toMicros(this.lastCycleNanos)
+                + "us, lag="
+                + getLagMillis()
+                + "ms}";
+    }
+
+    /** 可以被{@link ReferenceQueueDrainer}清理的映射 */
+    public interface Purgeable {
+
+        /**
+         * 清理已被垃圾回收的条目，必须是线程安全的
+         *
+         * @return 清理的条目数
+         */
+        int purge();
+    }
+}
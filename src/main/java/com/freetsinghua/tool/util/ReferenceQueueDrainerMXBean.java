@@ -0,0 +1,24 @@
+package com.freetsinghua.tool.util;
+
+/**
+ * 通过JMX暴露的{@link ReferenceQueueDrainer}指标
+ *
+ * @author z.tsinghua
+ * @date 2019/3/1
+ */
+public interface ReferenceQueueDrainerMXBean {
+
+    int getRegisteredCount();
+
+    long getPurgedCount();
+
+    long getCycleCount();
+
+    long getLastCyclePurgedCount();
+
+    long getLastCycleNanos();
+
+    long getMaxCycleNanos();
+
+    long getLagMillis();
+}
@@ -1,11 +1,24 @@
 package com.freetsinghua.tool.util;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
@@ -15,30 +28,87 @@ import java.util.concurrent.TimeUnit;
 import com.freetsinghua.tool.anotation.Nullable;
 import com.freetsinghua.tool.common.CommonConstant;
 import com.freetsinghua.tool.core.io.ClassPathResource;
+import com.freetsinghua.tool.task.AsyncListenableTaskExecutor;
+import com.freetsinghua.tool.task.BatchingTaskExecutor;
+import com.freetsinghua.tool.task.Bulkhead;
 import com.freetsinghua.tool.task.ConcurrentTaskExecutor;
 import com.freetsinghua.tool.task.ConcurrentTaskScheduler;
+import com.freetsinghua.tool.task.ListenableFuture;
+import com.freetsinghua.tool.task.TaskMetrics;
+import com.freetsinghua.tool.task.TaskScheduler;
 import com.freetsinghua.tool.task.Trigger;
+import com.freetsinghua.tool.task.VirtualThreadTaskScheduler;
+import com.freetsinghua.tool.task.VirtualThreads;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import lombok.extern.slf4j.Slf4j;
+
 /**
  * 线程池
  *
  * <p>配置文件：threadpool.properties 使用guava的{@link ThreadFactoryBuilder}
  *
+ * <p>{@code threadpool.mode=virtual}时每个任务在一个虚拟线程上执行，
+ * 并用{@code threadpool.virtual.concurrencyLimit}限制并发数；运行时不支持虚拟线程时回退到平台线程池
+ *
+ * <p>{@code threadpool.mode=forkjoin}时使用异步模式的{@link ForkJoinPool}，每个工作线程有自己的队列并互相窃取任务，
+ * 适合拆分成大量小任务的计算；并行度由{@code threadpool.forkjoin.parallelism}指定，默认为CPU核数。
+ * 此模式下队列没有上限，不会由调用线程执行任务
+ *
+ * <p>{@code threadpool.metrics.enabled=true}时收集任务的排队时间、执行时间和拒绝次数，
+ * 通过{@link #getMetrics()}获取，并以{@code com.freetsinghua.tool.task:type=Executor,name="ThreadPool"}导出到JMX
+ *
+ * <p>{@code threadpool.bulkhead.<name>.maxConcurrent}和{@code threadpool.bulkhead.<name>.queueCapacity}定义名为name的舱壁，
+ * 通过{@link #bulkhead(String)}获取；舱壁在共享的执行器上执行任务，但有自己的并发上限和队列，一类任务饱和时不影响其他任务。
+ * 开启指标时每个舱壁以{@code com.freetsinghua.tool.task:type=Bulkhead,name="..."}导出到JMX
+ *
  * @author z.tsinghua
  * @date 2019/1/28
  */
+@Slf4j
 public final class ThreadPool {
-	private final ConcurrentTaskExecutor executor;
-	private final ConcurrentTaskScheduler scheduler;
+	private static final String MODE_VIRTUAL = "virtual";
+	private static final String MODE_FORK_JOIN = "forkjoin";
+
+	private static final String BULKHEAD_PREFIX = "threadpool.bulkhead.";
+	private static final String BULKHEAD_MAX_CONCURRENT = ".maxConcurrent";
+	private static final String BULKHEAD_QUEUE_CAPACITY = ".queueCapacity";
+
+	private final AsyncListenableTaskExecutor executor;
+	private final TaskScheduler scheduler;
+	private final Map<String, Bulkhead> bulkheads;
 	/**
 	 * 核心线程数，用于配置{@link java.util.concurrent.ScheduledThreadPoolExecutor}
 	 */
 	private static int coreSize;
+	/**
+	 * virtual模式下同时作为执行器和调度器
+	 */
+	@Nullable
+	private static VirtualThreadTaskScheduler virtualScheduler;
+	/**
+	 * forkjoin模式下的执行器
+	 */
+	@Nullable
+	private static ForkJoinPool forkJoinPool;
+	/**
+	 * 开启指标时的执行器指标
+	 */
+	@Nullable
+	private static TaskMetrics taskMetrics;
+	/**
+	 * 读取到的配置
+	 */
+	@Nullable
+	private static Properties configuration;
 
 	@Nullable
-	private static ConcurrentTaskScheduler getScheduler() {
+	private static TaskScheduler getScheduler() {
+		if (virtualScheduler != null) {
+			return virtualScheduler;
+		}
+
 		try {
 			ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("scheduled-%d").setDaemon(false)
 					.build();
@@ -55,11 +125,12 @@ public final class ThreadPool {
 	}
 
 	@Nullable
-	private static ConcurrentTaskExecutor getExecutor() {
+	private static AsyncListenableTaskExecutor getExecutor() {
 		try {
 			ClassPathResource resource = new ClassPathResource("threadpool.properties");
 			Properties properties = new Properties();
 			properties.load(resource.getInputStream());
+			configuration = properties;
 
 			String coreSizeStr = properties.getProperty("threadpool.corePoolSize",
 					String.valueOf(CommonConstant.AVAILABLE_PROCESSORS));
@@ -70,25 +141,106 @@ public final class ThreadPool {
 			int size = Integer.parseInt(coreSizeStr);
 			// 设置核心线程数
 			setCoreSize(size);
+
+			if (PropertiesUtils.getBooleanValue(properties, "threadpool.metrics.enabled", false)) {
+				taskMetrics = new TaskMetrics();
+				taskMetrics.registerMBean("ThreadPool");
+			}
+
+			String mode = properties.getProperty("threadpool.mode", "platform");
+			if (MODE_VIRTUAL.equalsIgnoreCase(mode.trim())) {
+				if (VirtualThreads.isSupported()) {
+					int concurrencyLimit = PropertiesUtils.getIntValue(properties,
+							"threadpool.virtual.concurrencyLimit", 0);
+					virtualScheduler = new VirtualThreadTaskScheduler("virtual-", concurrencyLimit);
+					if (taskMetrics != null) {
+						virtualScheduler.setTaskDecorator(taskMetrics);
+					}
+					return virtualScheduler;
+				}
+				if (log.isWarnEnabled()) {
+					log.warn("Virtual threads are not supported by Java {}, falling back to platform threads",
+							System.getProperty("java.version"));
+				}
+			} else if (MODE_FORK_JOIN.equalsIgnoreCase(mode.trim())) {
+				int parallelism = PropertiesUtils.getIntValue(properties, "threadpool.forkjoin.parallelism",
+						CommonConstant.AVAILABLE_PROCESSORS);
+				forkJoinPool = new ForkJoinPool(parallelism, pool -> {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setName("forkjoin-" + thread.getPoolIndex());
+					return thread;
+				}, null, true);
+				return instrument(new ConcurrentTaskExecutor(forkJoinPool));
+			}
+
 			int maximumPoolSize = Integer.parseInt(maximumPoolSizeStr);
 			long keepAliveTime = Long.parseLong(keepAliveTimeStr);
 
 			ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("pool-%d").setDaemon(false).build();
 
+			RejectedExecutionHandler rejectedExecutionHandler = new ThreadPoolExecutor.CallerRunsPolicy();
+			if (taskMetrics != null) {
+				rejectedExecutionHandler = taskMetrics.instrument(rejectedExecutionHandler);
+			}
 			ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(size, maximumPoolSize, keepAliveTime,
 					TimeUnit.SECONDS, new LinkedBlockingQueue<>(CommonConstant.K * 5), threadFactory,
-					new ThreadPoolExecutor.CallerRunsPolicy());
-			return new ConcurrentTaskExecutor(threadPoolExecutor);
+					rejectedExecutionHandler);
+			return instrument(new ConcurrentTaskExecutor(threadPoolExecutor));
 		} catch (IOException e) {
 			return null;
 		}
 	}
 
-	private ThreadPool(ConcurrentTaskExecutor executor, ConcurrentTaskScheduler scheduler) {
+	private static ConcurrentTaskExecutor instrument(ConcurrentTaskExecutor executor) {
+		if (taskMetrics != null) {
+			executor.setTaskDecorator(taskMetrics);
+		}
+		return executor;
+	}
+
+	private ThreadPool(AsyncListenableTaskExecutor executor, TaskScheduler scheduler) {
 		Assert.state(executor != null, "Executor must not be null");
 		Assert.state(scheduler != null, "Executor must not be null");
 		this.executor = executor;
 		this.scheduler = scheduler;
+		this.bulkheads = createBulkheads(executor);
+	}
+
+	private static Map<String, Bulkhead> createBulkheads(AsyncListenableTaskExecutor executor) {
+		if (configuration == null) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, Bulkhead> bulkheads = new HashMap<>(8);
+		for (String key : configuration.stringPropertyNames()) {
+			if (!key.startsWith(BULKHEAD_PREFIX) || !key.endsWith(BULKHEAD_MAX_CONCURRENT)) {
+				continue;
+			}
+			String name = key.substring(BULKHEAD_PREFIX.length(), key.length() - BULKHEAD_MAX_CONCURRENT.length());
+			int maxConcurrent = PropertiesUtils.getIntValue(configuration, key, 0);
+			int queueCapacity = PropertiesUtils.getIntValue(configuration,
+					BULKHEAD_PREFIX + name + BULKHEAD_QUEUE_CAPACITY, CommonConstant.K);
+			// 配置错误的舱壁只记录日志，不能让ThreadPool初始化失败
+			if (name.isEmpty() || maxConcurrent <= 0 || queueCapacity < 0) {
+				if (log.isWarnEnabled()) {
+					log.warn("Ignoring invalid bulkhead '{}': maxConcurrent={}, queueCapacity={}", name,
+							maxConcurrent, queueCapacity);
+				}
+				continue;
+			}
+			Bulkhead bulkhead = new Bulkhead(name, executor, maxConcurrent, queueCapacity);
+			if (taskMetrics != null) {
+				try {
+					bulkhead.registerMBean();
+				} catch (IllegalStateException e) {
+					if (log.isWarnEnabled()) {
+						log.warn("Failed to register MBean of bulkhead '{}'", name, e);
+					}
+				}
+			}
+			bulkheads.put(name, bulkhead);
+		}
+		return Collections.unmodifiableMap(bulkheads);
 	}
 
 	private static final ThreadPool THREAD_POOL = new ThreadPool(getExecutor(), getScheduler());
@@ -97,6 +249,37 @@ public final class ThreadPool {
 		return THREAD_POOL;
 	}
 
+	/**
+	 * 返回{@code threadpool.properties}中定义的舱壁
+	 *
+	 * @param name 舱壁的名称
+	 * @return 舱壁
+	 * @throws IllegalArgumentException 如果没有定义这个舱壁
+	 */
+	public Bulkhead bulkhead(String name) {
+		Bulkhead bulkhead = this.bulkheads.get(name);
+		if (bulkhead == null) {
+			throw new IllegalArgumentException("No bulkhead named '" + name + "' in threadpool.properties, defined: "
+					+ this.bulkheads.keySet());
+		}
+		return bulkhead;
+	}
+
+	/**
+	 * 返回所有舱壁，键为名称
+	 */
+	public Map<String, Bulkhead> getBulkheads() {
+		return this.bulkheads;
+	}
+
+	/**
+	 * 返回执行器的指标，没有开启{@code threadpool.metrics.enabled}时返回{@code null}
+	 */
+	@Nullable
+	public TaskMetrics getMetrics() {
+		return taskMetrics;
+	}
+
 	public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
 		return this.scheduler.schedule(task, trigger);
 	}
@@ -141,4 +324,101 @@ public final class ThreadPool {
 	public <T> Future<T> submit(Callable<T> task) {
 		return this.executor.submit(task);
 	}
+
+	public ListenableFuture<?> submitListenable(Runnable task) {
+		return this.executor.submitListenable(task);
+	}
+
+	public <T> ListenableFuture<T> submitListenable(Callable<T> task) {
+		return this.executor.submitListenable(task);
+	}
+
+	public CompletableFuture<Void> submitCompletable(Runnable task) {
+		return this.executor.submitCompletable(task);
+	}
+
+	public <T> CompletableFuture<T> submitCompletable(Callable<T> task) {
+		return this.executor.submitCompletable(task);
+	}
+
+	/**
+	 * 提交一个任务，超时后返回的{@link CompletableFuture}以{@link java.util.concurrent.TimeoutException}完成，同时取消任务
+	 */
+	public <T> CompletableFuture<T> submitCompletable(Callable<T> task, long timeout, TimeUnit unit) {
+		return this.executor.submitCompletable(task, timeout, unit);
+	}
+
+	/**
+	 * 提交所有任务，不阻塞地汇总结果，任意一个失败时立即以它的异常完成
+	 */
+	public <T> CompletableFuture<List<T>> submitAllCompletable(Collection<? extends Callable<T>> tasks) {
+		return this.executor.submitAllCompletable(tasks);
+	}
+
+	/**
+	 * 创建一个在此线程池上执行批次的{@link BatchingTaskExecutor}，适合大量很小的任务
+	 *
+	 * @param handler         批次处理器
+	 * @param maxBatchSize    每个批次最多的元素数
+	 * @param maxLingerMillis 批次中第一个元素最多等待的时间，单位毫秒
+	 */
+	public <T, R> BatchingTaskExecutor<T, R> newBatchingExecutor(BatchingTaskExecutor.BatchHandler<T, R> handler,
+			int maxBatchSize, long maxLingerMillis) {
+		return new BatchingTaskExecutor<>(this.executor, handler, maxBatchSize, maxLingerMillis);
+	}
+
+	/**
+	 * 执行所有任务并等待它们完成
+	 *
+	 * @param tasks 任务
+	 * @return 与任务顺序相同的结果，都已经完成
+	 * @throws InterruptedException 如果等待时被中断，此时未完成的任务会被取消
+	 */
+	public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+		if (forkJoinPool != null) {
+			return forkJoinPool.invokeAll(tasks);
+		}
+
+		List<Future<T>> futures = new ArrayList<>(tasks.size());
+		try {
+			for (Callable<T> task : tasks) {
+				futures.add(this.executor.submit(task));
+			}
+			for (Future<T> future : futures) {
+				try {
+					future.get();
+				} catch (CancellationException | ExecutionException e) {
+					// 由调用方从Future中获取
+				}
+			}
+			return futures;
+		} catch (InterruptedException | RuntimeException e) {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 执行一个可以递归拆分的任务并返回结果，非forkjoin模式下使用{@link ForkJoinPool#commonPool()}
+	 *
+	 * @param task 任务，通常是{@link java.util.concurrent.RecursiveTask}
+	 * @return 结果
+	 */
+	public <T> T invoke(ForkJoinTask<T> task) {
+		ForkJoinPool pool = forkJoinPool != null ? forkJoinPool : ForkJoinPool.commonPool();
+		return pool.invoke(task);
+	}
+
+	/**
+	 * 提交一个可以递归拆分的任务，非forkjoin模式下使用{@link ForkJoinPool#commonPool()}
+	 *
+	 * @param task 任务
+	 * @return 传入的任务，可以用来等待结果
+	 */
+	public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+		ForkJoinPool pool = forkJoinPool != null ? forkJoinPool : ForkJoinPool.commonPool();
+		return pool.submit(task);
+	}
 }